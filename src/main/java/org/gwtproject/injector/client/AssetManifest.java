@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import elemental2.core.Global;
+import elemental2.dom.DomGlobal;
+import elemental2.promise.Promise;
+import jsinterop.base.Js;
+import jsinterop.base.JsPropertyMap;
+
+/**
+ * Maps logical script names to content-hashed URLs, so the scripts can be
+ * served with long-term {@code immutable} caching.
+ * <p>
+ * The manifest is a JSON object such as
+ * {@code {"widget.js": "js/widget.3f2a9c1e07b4d5a6.js"}}, generated at build
+ * time by {@code org.gwtproject.injector.tools.AssetManifestGenerator}. It is
+ * either embedded with {@link #set(String)} or downloaded once with
+ * {@link #load(String)}. {@link ScriptInjector.FromUrl} resolves its URLs
+ * against the manifest when injecting, so a deployment changes only the
+ * URLs of the scripts which actually changed and all others stay cached:
+ * <p>
+ * 
+ * <pre>
+ *   AssetManifest.load("manifest.json").then(ignored -&gt;
+ *       ScriptInjector.fromUrl("widget.js").injectAsync());
+ * </pre>
+ * <p>
+ * URLs not listed in the manifest are used as they are. Injections started
+ * before the manifest has been loaded are not resolved. Applications which
+ * never set or load a manifest do not compile in the lookup.
+ */
+public class AssetManifest {
+
+  private static AssetManifest current;
+
+  private static Promise<Void> loading;
+  private static String loadingUrl;
+
+  /**
+   * Replaces the manifest with an embedded one.
+   * 
+   * @param json the manifest, a JSON object mapping names to URLs
+   * @throws IllegalArgumentException if the manifest is not a JSON object
+   */
+  public static void set(String json) {
+    Object parsed;
+    try {
+      parsed = Global.JSON.parse(json);
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException("Invalid asset manifest", e);
+    }
+    if (parsed == null || !"object".equals(Js.typeof(parsed))) {
+      throw new IllegalArgumentException("Invalid asset manifest");
+    }
+    AssetManifest manifest = new AssetManifest();
+    JsPropertyMap<Object> map = Js.asPropertyMap(parsed);
+    map.forEach(name -> manifest.urls.put(name, Js.asString(map.get(name))));
+    current = manifest;
+  }
+
+  /**
+   * Downloads the manifest and replaces the current one with it. Loading the
+   * same URL again returns the same promise, unless the download failed.
+   * 
+   * @param manifestUrl the URL of the manifest
+   * @return a promise which resolves once the manifest is in use, rejected
+   *         with {@link CodeDownloadException} if it could not be loaded
+   */
+  public static Promise<Void> load(String manifestUrl) {
+    if (loading != null && manifestUrl.equals(loadingUrl)) {
+      return loading;
+    }
+    Promise<Void> promise = new Promise<>((resolve, reject) -> DomGlobal.fetch(manifestUrl)
+        .then(response -> {
+          if (!response.ok) {
+            reject.onInvoke(new CodeDownloadException("Failed to load " + manifestUrl + ": "
+                + response.status + " " + response.statusText));
+            return null;
+          }
+          return response.text().then(json -> {
+            try {
+              set(json);
+            } catch (IllegalArgumentException e) {
+              reject.onInvoke(new CodeDownloadException("Invalid asset manifest " + manifestUrl));
+              return null;
+            }
+            resolve.onInvoke((Void) null);
+            return null;
+          });
+        }).catch_(error -> {
+          reject.onInvoke(new CodeDownloadException("Failed to load " + manifestUrl));
+          return null;
+        }));
+
+    loading = promise;
+    loadingUrl = manifestUrl;
+    // Failed downloads are not cached, next load tries again
+    promise.catch_(error -> {
+      if (loading == promise) {
+        loading = null;
+        loadingUrl = null;
+      }
+      return null;
+    });
+    return promise;
+  }
+
+  /**
+   * @param name a logical name or URL
+   * @return the hashed URL of the name, the name itself if it is not listed
+   */
+  public static String resolve(String name) {
+    if (current == null || name == null) {
+      return name;
+    }
+    String url = current.urls.get(name);
+    return url == null ? name : url;
+  }
+
+  /**
+   * Removes all entries of the manifest.
+   */
+  public static void clear() {
+    current = null;
+    loading = null;
+    loadingUrl = null;
+  }
+
+  private final Map<String, String> urls = new HashMap<>();
+
+  private AssetManifest() {
+  }
+}
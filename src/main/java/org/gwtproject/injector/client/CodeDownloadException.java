@@ -33,6 +33,17 @@ public final class CodeDownloadException extends RuntimeException {
      * Generic code for terminating the download.
      */
     TERMINATED,
+    /**
+     * The download was not started because the {@link LoadingPolicy} dropped
+     * an optional script.
+     */
+    SKIPPED,
+    /**
+     * The injection was cancelled after its script element had been added to
+     * the document. Removing the element does not stop a download already in
+     * progress, so the browser may still execute the script.
+     */
+    DETACHED,
   }
 
   private final Reason reason;
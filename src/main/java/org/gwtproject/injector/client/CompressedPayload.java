@@ -0,0 +1,142 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import java.nio.charset.StandardCharsets;
+
+import elemental2.core.Uint8Array;
+import elemental2.dom.DomGlobal;
+import elemental2.dom.Response;
+import elemental2.promise.Promise;
+import jsinterop.base.Js;
+
+/**
+ * Decoder for base64 encoded, compressed CSS and script payloads, as produced
+ * at build time by {@code org.gwtproject.injector.tools.PayloadCompressor}.
+ * <p>
+ * Compressed payloads shrink the compiled JavaScript considerably. They are
+ * decompressed off the main thread with {@code DecompressionStream} where
+ * available, and synchronously in script otherwise.
+ * 
+ * @see StyleInjector#injectCompressed(String, String)
+ * @see ScriptInjector.FromString#setCompression(String)
+ */
+public class CompressedPayload {
+
+  /**
+   * gzip format (RFC 1952).
+   */
+  public static final String GZIP = "gzip";
+
+  /**
+   * zlib format (RFC 1950), called {@code "deflate"} by
+   * {@code DecompressionStream}.
+   */
+  public static final String DEFLATE = "deflate";
+
+  /**
+   * DEFLATE format without framing (RFC 1951).
+   */
+  public static final String DEFLATE_RAW = "deflate-raw";
+
+  private static final String BASE64 =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+  /**
+   * @return {@code true} if the browser can decompress asynchronously
+   */
+  public static boolean isStreamSupported() {
+    return "function".equals(
+        Js.typeof(Js.asPropertyMap(DomGlobal.window).get("DecompressionStream")));
+  }
+
+  /**
+   * Decodes a payload, asynchronously if possible.
+   * 
+   * @param base64 the base64 encoded, compressed UTF-8 text
+   * @param format one of {@link #GZIP}, {@link #DEFLATE} or
+   *          {@link #DEFLATE_RAW}
+   * @return the promise of the text, rejected if the payload is malformed
+   */
+  public static Promise<String> decode(String base64, String format) {
+    if (!isStreamSupported()) {
+      return new Promise<>((resolve, reject) -> {
+        try {
+          resolve.onInvoke(decodeSync(base64, format));
+        } catch (IllegalArgumentException e) {
+          reject.onInvoke(e);
+        }
+      });
+    }
+
+    // decoded within the chain, so malformed base64 rejects instead of throwing
+    return Promise.resolve(base64).then(payload -> {
+      Uint8Array bytes = new Uint8Array(
+          Uint8Array.ConstructorLengthUnionType.of(decodeBase64(payload)));
+      return new Response(new Response(bytes).body.pipeThrough(new DecompressionStream(format)))
+          .text();
+    });
+  }
+
+  /**
+   * Decodes a payload synchronously.
+   * 
+   * @param base64 the base64 encoded, compressed UTF-8 text
+   * @param format one of {@link #GZIP}, {@link #DEFLATE} or
+   *          {@link #DEFLATE_RAW}
+   * @return the text
+   * @throws IllegalArgumentException if the payload is malformed
+   */
+  public static String decodeSync(String base64, String format) {
+    return new String(Inflate.inflate(decodeBase64(base64), format), StandardCharsets.UTF_8);
+  }
+
+  static byte[] decodeBase64(String base64) {
+    byte[] buffer = new byte[base64.length() * 3 / 4];
+    int length = 0;
+    int bits = 0;
+    int bitCount = 0;
+    for (int i = 0; i < base64.length(); i++) {
+      char c = base64.charAt(i);
+      if (c == '=') {
+        break;
+      }
+      int value = BASE64.indexOf(c);
+      if (value < 0) {
+        if (Character.isWhitespace(c)) {
+          continue;
+        }
+        throw new IllegalArgumentException("Invalid base64 character " + c);
+      }
+      bits = bits << 6 | value;
+      bitCount += 6;
+      if (bitCount >= 8) {
+        bitCount -= 8;
+        buffer[length++] = (byte) (bits >> bitCount);
+        bits &= (1 << bitCount) - 1;
+      }
+    }
+    byte[] result = new byte[length];
+    System.arraycopy(buffer, 0, result, 0, length);
+    return result;
+  }
+
+  /**
+   * Utility class.
+   */
+  private CompressedPayload() {
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+/**
+ * Stable short identifier of injected content, used to recognize the same
+ * script or stylesheet across page loads.
+ */
+final class ContentHash {
+
+  /**
+   * Computes a 32-bit FNV-1a hash of the content, suffixed with its length to
+   * make collisions even less likely.
+   */
+  static String of(String content) {
+    int hash = 0x811c9dc5;
+    for (int i = 0; i < content.length(); i++) {
+      hash ^= content.charAt(i);
+      // hash * 0x01000193, split up so the product stays exact in JavaScript
+      hash = (hash << 24) + hash * 0x193;
+    }
+    return Integer.toHexString(hash) + "-" + Integer.toHexString(content.length());
+  }
+
+  private ContentHash() {
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import elemental2.core.JsRegExp;
+
+/**
+ * Font and image URLs referenced by a stylesheet, found by a lightweight scan
+ * rather than a full CSS parser.
+ */
+final class CssAssets {
+
+  private static final String URL =
+      "url\\(\\s*(?:\"([^\"]*)\"|'([^']*)'|([^)\\s]*))\\s*\\)\\s*(format\\([^)]*\\))?";
+
+  /**
+   * Scans a stylesheet.
+   */
+  static CssAssets scan(String css) {
+    CssAssets assets = new CssAssets();
+    String text = css.replaceAll("/\\*[\\s\\S]*?\\*/", "");
+
+    JsRegExp fontFace = new JsRegExp("@font-face\\s*\\{([^}]*)\\}", "gi");
+    for (String[] match = fontFace.exec(text); match != null; match = fontFace.exec(text)) {
+      String[] src = new JsRegExp("(?:^|[;\\s])src\\s*:([^;]*)", "i").exec(match[1]);
+      String font = src == null ? null : preferredFont(src[1]);
+      if (font != null && !assets.fonts.contains(font)) {
+        assets.fonts.add(font);
+      }
+    }
+    text = text.replaceAll("@font-face\\s*\\{[^}]*\\}", "");
+
+    JsRegExp rule = new JsRegExp("([^{}]+)\\{([^{}]*)\\}", "g");
+    for (String[] match = rule.exec(text); match != null; match = rule.exec(text)) {
+      JsRegExp background = new JsRegExp("background(?:-image)?\\s*:([^;]*)", "gi");
+      for (String[] declaration = background.exec(match[2]); declaration != null;
+          declaration = background.exec(match[2])) {
+        JsRegExp url = new JsRegExp(URL, "gi");
+        for (String[] image = url.exec(declaration[1]); image != null;
+            image = url.exec(declaration[1])) {
+          String imageUrl = urlOf(image);
+          if (imageUrl != null && !assets.images.containsKey(imageUrl)) {
+            assets.images.put(imageUrl, match[1].trim());
+          }
+        }
+      }
+    }
+    return assets;
+  }
+
+  /**
+   * Returns the first WOFF2 source of a {@code src} descriptor, or the first
+   * source if none is declared as WOFF2. Browsers use the first supported
+   * one, so preloading the others would waste bandwidth.
+   */
+  private static String preferredFont(String src) {
+    String first = null;
+    JsRegExp url = new JsRegExp(URL, "gi");
+    for (String[] match = url.exec(src); match != null; match = url.exec(src)) {
+      String font = urlOf(match);
+      if (font == null) {
+        continue;
+      }
+      if (match[4] != null && match[4].toLowerCase().contains("woff2")) {
+        return font;
+      }
+      if (first == null) {
+        first = font;
+      }
+    }
+    return first;
+  }
+
+  private static String urlOf(String[] match) {
+    String value = match[1] != null ? match[1] : match[2] != null ? match[2] : match[3];
+    if (value == null || value.isEmpty() || value.startsWith("data:")
+        || value.startsWith("#")) {
+      return null;
+    }
+    return value;
+  }
+
+  /**
+   * URLs of the fonts, in order of appearance.
+   */
+  final List<String> fonts = new ArrayList<>();
+
+  /**
+   * URLs of the background images with the selector of their rule, in order
+   * of appearance.
+   */
+  final Map<String, String> images = new LinkedHashMap<>();
+
+  private CssAssets() {
+  }
+}
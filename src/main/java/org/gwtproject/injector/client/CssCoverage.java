@@ -0,0 +1,359 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import elemental2.dom.DomGlobal;
+import elemental2.dom.Element;
+import elemental2.dom.Node;
+import jsinterop.base.Js;
+
+/**
+ * Opt-in tracker of the CSS rules injected by {@link StyleInjector} and
+ * {@link StyleScope} which never matched any element, to find dead CSS.
+ * <p>
+ * While tracking, every injected stylesheet is split into its style rules,
+ * including those nested in {@code @media}, {@code @supports} and similar
+ * blocks, and each rule is remembered with the bucket it was injected
+ * through, e.g. {@code "inject"} or {@code "injectAtStart"}. In idle time,
+ * every {@code interval} milliseconds, the selectors of the rules which did
+ * not match so far are sampled with {@code querySelector}. Dynamic pseudo
+ * classes like {@code :hover} and pseudo elements are ignored, so a rule
+ * counts as matched when its element is in the document. Rules whose
+ * selectors the browser does not support are not reported.
+ * <p>
+ * Usage, first thing in the entry point:
+ * <p>
+ * 
+ * <pre>
+ *   CssCoverage.start(5000);
+ *   ...
+ *   for (CssCoverage.Rule rule : CssCoverage.getUnmatchedRules()) {
+ *     DomGlobal.console.log(rule.getSource(), rule.getSelector(), rule.getSize());
+ *   }
+ * </pre>
+ * <p>
+ * Sampling costs time on the main thread, so this is meant for diagnostic
+ * builds or a small share of sessions. Applications which never start
+ * tracking do not compile in the parser.
+ */
+public class CssCoverage {
+
+  /**
+   * A style rule which has not matched any element so far.
+   */
+  public static final class Rule {
+    /**
+     * Pseudo classes depending on user interaction or navigation, which would
+     * hide matching elements from {@code querySelector}.
+     */
+    private static final Set<String> DYNAMIC = new HashSet<>(Arrays.asList("hover",
+        "active", "focus", "focus-within", "focus-visible", "visited", "link", "any-link", "target",
+        "checked", "indeterminate", "placeholder-shown", "autofill", "before", "after",
+        "first-line", "first-letter"));
+
+    private final String selector;
+    private final int size;
+    private final String source;
+    private final String stylesheetId;
+    private final Node root;
+    private final String[] queries;
+
+    Rule(String selector, int size, String source, String stylesheetId, Node root) {
+      this.selector = selector;
+      this.size = size;
+      this.source = source;
+      this.stylesheetId = stylesheetId;
+      this.root = root;
+      this.queries = toQueries(selector);
+    }
+
+    /**
+     * @return the selector list of the rule, as written
+     */
+    public String getSelector() {
+      return selector;
+    }
+
+    /**
+     * @return the length of the rule text in characters, selector and
+     *         declarations included
+     */
+    public int getSize() {
+      return size;
+    }
+
+    /**
+     * @return the bucket the rule was injected through
+     */
+    public String getSource() {
+      return source;
+    }
+
+    /**
+     * @return the ID of the stylesheet containing the rule, see
+     *         {@link Hydration#idOf(String)}
+     */
+    public String getStylesheetId() {
+      return stylesheetId;
+    }
+  }
+
+  /**
+   * Time spent sampling per idle callback, in milliseconds.
+   */
+  private static final double SLICE = 5;
+
+  private static final List<Rule> unmatched = new ArrayList<>();
+
+  /**
+   * The running tracking session, {@code null} unless tracking.
+   */
+  private static CssCoverage tracker;
+  private static int cursor;
+  private static boolean scheduled;
+  private static int trackedRules;
+
+  /**
+   * Starts tracking the stylesheets injected from now on and sampling them
+   * periodically.
+   * 
+   * @param interval milliseconds between sampling passes
+   */
+  public static void start(int interval) {
+    boolean started = tracker != null;
+    tracker = new CssCoverage(interval);
+    if (!started) {
+      scheduleSampling();
+    }
+  }
+
+  /**
+   * Stops tracking and sampling. The rules found so far are kept.
+   */
+  public static void stop() {
+    tracker = null;
+  }
+
+  /**
+   * @return {@code true} between {@link #start(int)} and {@link #stop()}
+   */
+  public static boolean isTracking() {
+    return tracker != null;
+  }
+
+  /**
+   * Samples all unmatched rules right away, e.g. before reading the report
+   * when leaving the page.
+   */
+  public static void sample() {
+    for (int i = unmatched.size() - 1; i >= 0; i--) {
+      if (matches(unmatched.get(i))) {
+        unmatched.remove(i);
+      }
+    }
+    cursor = 0;
+  }
+
+  /**
+   * @return the rules which never matched an element, in injection order
+   */
+  public static List<Rule> getUnmatchedRules() {
+    return Collections.unmodifiableList(new ArrayList<>(unmatched));
+  }
+
+  /**
+   * @return the total size of the rules which never matched, by source, see
+   *         {@link Rule#getSize()}
+   */
+  public static Map<String, Integer> getUnmatchedSize() {
+    Map<String, Integer> sizes = new LinkedHashMap<>();
+    for (Rule rule : unmatched) {
+      Integer size = sizes.get(rule.source);
+      sizes.put(rule.source, size == null ? rule.size : size + rule.size);
+    }
+    return sizes;
+  }
+
+  /**
+   * @return the number of rules tracked so far, matched or not
+   */
+  public static int getTrackedRules() {
+    return trackedRules;
+  }
+
+  /**
+   * Forgets all tracked rules.
+   */
+  public static void reset() {
+    unmatched.clear();
+    cursor = 0;
+    trackedRules = 0;
+  }
+
+  /**
+   * Tracks the rules of an injected stylesheet.
+   * 
+   * @param root the container the stylesheet is injected into, {@code null}
+   *          for the document
+   */
+  static void track(String css, String id, String source, Node root) {
+    List<int[]> rules = new ArrayList<>();
+    CssParser.parse(css, 0, css.length(), rules);
+    for (int[] rule : rules) {
+      unmatched.add(new Rule(css.substring(rule[0], rule[1]).trim(), rule[2] - rule[0],
+          source, id, root));
+    }
+    trackedRules += rules.size();
+  }
+
+  /**
+   * Splits a selector list and removes the dynamic pseudo classes and pseudo
+   * elements of each selector.
+   */
+  static String[] toQueries(String selector) {
+    List<String> queries = new ArrayList<>();
+    StringBuilder query = new StringBuilder();
+    int depth = 0;
+    int i = 0;
+    while (i < selector.length()) {
+      char c = selector.charAt(i);
+      if (c == ',' && depth == 0) {
+        queries.add(complete(query));
+        query.setLength(0);
+        i++;
+      } else if (c == ':' && depth == 0) {
+        int end = i + 1;
+        boolean element = end < selector.length() && selector.charAt(end) == ':';
+        if (element) {
+          end++;
+        }
+        int nameStart = end;
+        while (end < selector.length() && isNameChar(selector.charAt(end))) {
+          end++;
+        }
+        String name = selector.substring(nameStart, end).toLowerCase();
+        if (end < selector.length() && selector.charAt(end) == '(') {
+          end = skipParentheses(selector, end);
+        }
+        if (!element && !Rule.DYNAMIC.contains(name) && !name.startsWith("-")) {
+          query.append(selector, i, end);
+        }
+        i = end;
+      } else {
+        if (c == '(' || c == '[') {
+          depth++;
+        } else if (c == ')' || c == ']') {
+          depth--;
+        }
+        int next = CssParser.skip(selector, i, selector.length());
+        query.append(selector, i, next);
+        i = next;
+      }
+    }
+    queries.add(complete(query));
+    return queries.toArray(new String[queries.size()]);
+  }
+
+  private static String complete(StringBuilder query) {
+    String trimmed = query.toString().trim();
+    if (trimmed.isEmpty() || ">+~".indexOf(trimmed.charAt(trimmed.length() - 1)) >= 0
+        || Character.isWhitespace(query.charAt(query.length() - 1))) {
+      return trimmed + (trimmed.isEmpty() ? "*" : " *");
+    }
+    return trimmed;
+  }
+
+  private static boolean isNameChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '-' || c == '_';
+  }
+
+  private static int skipParentheses(String selector, int i) {
+    int depth = 0;
+    while (i < selector.length()) {
+      char c = selector.charAt(i);
+      if (c == '(') {
+        depth++;
+      } else if (c == ')' && --depth == 0) {
+        return i + 1;
+      }
+      i = CssParser.skip(selector, i, selector.length());
+    }
+    return i;
+  }
+
+  /**
+   * @return {@code true} if the rule matched or cannot be sampled
+   */
+  private static boolean matches(Rule rule) {
+    for (String query : rule.queries) {
+      try {
+        Element found = rule.root == null ? DomGlobal.document.querySelector(query)
+            : Js.<Element>uncheckedCast(rule.root).querySelector(query);
+        if (found != null) {
+          return true;
+        }
+      } catch (RuntimeException e) {
+        // unsupported selector, e.g. a vendor prefixed pseudo class
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void scheduleSampling() {
+    if (scheduled) {
+      return;
+    }
+    scheduled = true;
+    DomGlobal.setTimeout(ignored -> HasIdleCallback.schedule(CssCoverage::sampleSlice),
+        tracker.interval);
+  }
+
+  private static void sampleSlice() {
+    double start = TimeSlicing.now();
+    while (cursor < unmatched.size() && TimeSlicing.now() - start < SLICE) {
+      if (matches(unmatched.get(cursor))) {
+        unmatched.remove(cursor);
+      } else {
+        cursor++;
+      }
+    }
+    if (cursor < unmatched.size()) {
+      HasIdleCallback.schedule(CssCoverage::sampleSlice);
+      return;
+    }
+    cursor = 0;
+    scheduled = false;
+    if (tracker != null) {
+      scheduleSampling();
+    }
+  }
+
+  private final int interval;
+
+  private CssCoverage(int interval) {
+    this.interval = interval;
+  }
+}
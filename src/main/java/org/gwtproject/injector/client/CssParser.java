@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal CSS scanner for the diagnostics of injected stylesheets, see
+ * {@link CssCoverage} and {@link SelectorAnalyzer}.
+ */
+class CssParser {
+
+  /**
+   * Collects the style rules between {@code from} and {@code to}, as start
+   * of the selector, end of the selector and end of the rule.
+   */
+  static void parse(String css, int from, int to, List<int[]> rules) {
+    int i = from;
+    while (i < to) {
+      i = skipSpace(css, i, to);
+      if (i >= to) {
+        break;
+      }
+      int start = i;
+      while (i < to && css.charAt(i) != '{' && css.charAt(i) != ';') {
+        i = skip(css, i, to);
+      }
+      if (i >= to || css.charAt(i) == ';') {
+        // statement at-rule, e.g. @import, or a stray declaration
+        i++;
+        continue;
+      }
+      int open = i;
+      int depth = 0;
+      while (i < to) {
+        char c = css.charAt(i);
+        if (c == '{') {
+          depth++;
+        } else if (c == '}' && --depth == 0) {
+          break;
+        }
+        i = skip(css, i, to);
+      }
+      String prelude = css.substring(start, open).trim();
+      if (!prelude.startsWith("@")) {
+        if (!prelude.isEmpty()) {
+          rules.add(new int[] {start, open, Math.min(i + 1, to)});
+        }
+      } else if (isGroupingRule(prelude)) {
+        parse(css, open + 1, i, rules);
+      }
+      i++;
+    }
+  }
+
+  private static boolean isGroupingRule(String prelude) {
+    String name = prelude.toLowerCase();
+    return name.startsWith("@media") || name.startsWith("@supports")
+        || name.startsWith("@layer") || name.startsWith("@container")
+        || name.startsWith("@document") || name.startsWith("@-moz-document");
+  }
+
+  /**
+   * @return the index after the character, string or comment at {@code i}
+   */
+  static int skip(String css, int i, int to) {
+    char c = css.charAt(i);
+    if (c == '/' && i + 1 < to && css.charAt(i + 1) == '*') {
+      int end = css.indexOf("*/", i + 2);
+      return end < 0 || end + 2 > to ? to : end + 2;
+    }
+    if (c == '"' || c == '\'') {
+      for (i++; i < to && css.charAt(i) != c; i++) {
+        if (css.charAt(i) == '\\') {
+          i++;
+        }
+      }
+      return Math.min(i + 1, to);
+    }
+    if (c == '\\') {
+      return Math.min(i + 2, to);
+    }
+    return i + 1;
+  }
+
+  private static int skipSpace(String css, int i, int to) {
+    while (i < to) {
+      char c = css.charAt(i);
+      if (c == '/' && i + 1 < to && css.charAt(i + 1) == '*') {
+        i = skip(css, i, to);
+      } else if (Character.isWhitespace(c)) {
+        i++;
+      } else {
+        break;
+      }
+    }
+    return i;
+  }
+
+  /**
+   * Splits a selector list at its top level commas.
+   */
+  static List<String> split(String selectorList) {
+    List<String> selectors = new ArrayList<>();
+    int depth = 0;
+    int start = 0;
+    int i = 0;
+    while (i < selectorList.length()) {
+      char c = selectorList.charAt(i);
+      if (c == '(' || c == '[') {
+        depth++;
+      } else if (c == ')' || c == ']') {
+        depth--;
+      } else if (c == ',' && depth == 0) {
+        selectors.add(selectorList.substring(start, i).trim());
+        start = i + 1;
+      }
+      i = skip(selectorList, i, selectorList.length());
+    }
+    selectors.add(selectorList.substring(start).trim());
+    return selectors;
+  }
+
+  private CssParser() {
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import elemental2.dom.ReadableStream;
+import elemental2.dom.TransformStream;
+import elemental2.dom.WritableStream;
+import jsinterop.annotations.JsPackage;
+import jsinterop.annotations.JsProperty;
+import jsinterop.annotations.JsType;
+
+/**
+ * Helper class for the Compression Streams API which is missing in
+ * elemental2-dom.
+ */
+@JsType(isNative = true, namespace = JsPackage.GLOBAL)
+class DecompressionStream implements TransformStream {
+
+  DecompressionStream(String format) {
+  }
+
+  @JsProperty
+  @Override
+  public native ReadableStream getReadable();
+
+  @JsProperty
+  @Override
+  public native WritableStream getWritable();
+
+  @JsProperty
+  @Override
+  public native void setReadable(ReadableStream readable);
+
+  @JsProperty
+  @Override
+  public native void setWritable(WritableStream writable);
+}
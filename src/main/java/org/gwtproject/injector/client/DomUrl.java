@@ -0,0 +1,38 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import elemental2.dom.Blob;
+import jsinterop.annotations.JsPackage;
+import jsinterop.annotations.JsType;
+
+/**
+ * Helper class for the URL API which is missing in elemental2-dom.
+ */
+@JsType(isNative = true, name = "URL", namespace = JsPackage.GLOBAL)
+class DomUrl {
+
+  public static native String createObjectURL(Blob blob);
+
+  public static native void revokeObjectURL(String url);
+
+  public String href;
+
+  public String origin;
+
+  DomUrl(String url, String base) {
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import elemental2.dom.DomGlobal;
+
+/**
+ * Limits the number of scripts downloading in parallel to
+ * {@link LoadingPolicy#getMaxConcurrentDownloads()}. A download releases its
+ * slot once it finished, or after
+ * {@link LoadingPolicy#getDownloadSlotTimeout()}. Only used while a
+ * {@link LoadingPolicy} is set; once it is reset, queued downloads start
+ * right away.
+ */
+class DownloadQueue {
+
+  private static DownloadQueue instance;
+
+  /**
+   * @return the queue, created on the first call
+   */
+  static DownloadQueue get() {
+    if (instance == null) {
+      instance = new DownloadQueue();
+    }
+    return instance;
+  }
+
+  private final LinkedList<Runnable> pending = new LinkedList<>();
+
+  /**
+   * Started downloads holding a slot, with the timer releasing it.
+   */
+  private final Map<Runnable, Double> running = new HashMap<>();
+
+  /**
+   * Runs the start of a download now or once a slot is free. Every started
+   * download has to call {@link #finished(Runnable)} exactly once.
+   * 
+   * @throws RuntimeException if a download started by this call threw, after
+   *           releasing its slot
+   */
+  void add(Runnable start) {
+    pending.add(start);
+    drain();
+  }
+
+  /**
+   * Removes a download which has not been started yet.
+   * 
+   * @return {@code true} if the download was still queued
+   */
+  boolean remove(Runnable start) {
+    return pending.remove(start);
+  }
+
+  /**
+   * Releases the slot of a download, unless its timeout already did.
+   */
+  void finished(Runnable start) {
+    if (release(start)) {
+      drain();
+    }
+  }
+
+  private boolean release(Runnable start) {
+    Double timer = running.remove(start);
+    if (timer == null) {
+      return false;
+    }
+    DomGlobal.clearTimeout(timer);
+    return true;
+  }
+
+  private void drain() {
+    RuntimeException failure = null;
+    while (!pending.isEmpty()) {
+      LoadingPolicy policy = LoadingPolicy.get();
+      if (policy != null && running.size() >= policy.getMaxConcurrentDownloads()) {
+        break;
+      }
+      Runnable start = pending.removeFirst();
+      if (policy != null) {
+        running.put(start, DomGlobal.setTimeout(ignored -> finished(start),
+            policy.getDownloadSlotTimeout()));
+      }
+      try {
+        start.run();
+      } catch (RuntimeException e) {
+        // keep the slot free and the queue moving, report the first failure
+        release(start);
+        if (failure == null) {
+          failure = e;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private DownloadQueue() {
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import elemental2.core.Function;
+import elemental2.dom.Blob;
+import elemental2.dom.BlobPropertyBag;
+import elemental2.dom.Document;
+import elemental2.dom.DomGlobal;
+import elemental2.dom.HTMLScriptElement;
+import elemental2.dom.Window;
+import jsinterop.base.Js;
+
+/**
+ * The built-in {@link EvaluationStrategy evaluation strategies}.
+ */
+class EvaluationStrategies {
+
+  static class ScriptElement implements EvaluationStrategy {
+    @Override
+    public HTMLScriptElement evaluate(Window window, String body, boolean removeTag,
+        Callback<Void, Exception> callback) {
+      Document doc = documentOf(window);
+      HTMLScriptElement scriptElement = Js.uncheckedCast(doc.createElement("script"));
+      scriptElement.text = body;
+      doc.head.appendChild(scriptElement);
+
+      if (removeTag) {
+        scriptElement.parentNode.removeChild(scriptElement);
+      } else {
+        RetainedScripts.retain(scriptElement);
+      }
+
+      if (callback != null) {
+        callback.onSuccess(null);
+      }
+      return scriptElement;
+    }
+  }
+
+  static class BlobUrl implements EvaluationStrategy {
+    /**
+     * Number of object URLs kept for reuse, older ones are revoked.
+     */
+    static final int CACHE_SIZE = 16;
+
+    /**
+     * An object URL with the number of script elements loading it.
+     */
+    private static class ObjectUrl {
+      final String url;
+      int loading;
+      boolean evicted;
+
+      ObjectUrl(String url) {
+        this.url = url;
+      }
+
+      void release() {
+        if (evicted && loading == 0) {
+          DomUrl.revokeObjectURL(url);
+        }
+      }
+    }
+
+    /**
+     * Object URLs by body, least recently used first.
+     */
+    private final Map<String, ObjectUrl> urls =
+        new LinkedHashMap<String, ObjectUrl>(CACHE_SIZE, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, ObjectUrl> eldest) {
+            if (size() <= CACHE_SIZE) {
+              return false;
+            }
+            eldest.getValue().evicted = true;
+            eldest.getValue().release();
+            return true;
+          }
+        };
+
+    @Override
+    public HTMLScriptElement evaluate(Window window, String body, boolean removeTag,
+        Callback<Void, Exception> callback) {
+      if (!isSupported()) {
+        return EvaluationStrategy.SCRIPT_ELEMENT.evaluate(window, body, removeTag, callback);
+      }
+      ObjectUrl url = urls.get(body);
+      if (url == null) {
+        BlobPropertyBag options = BlobPropertyBag.create();
+        options.setType("text/javascript");
+        url = new ObjectUrl(DomUrl.createObjectURL(new Blob(
+            new Blob.ConstructorBlobPartsArrayUnionType[] {
+                Blob.ConstructorBlobPartsArrayUnionType.of(body)}, options)));
+        urls.put(body, url);
+      }
+
+      ObjectUrl loaded = url;
+      loaded.loading++;
+      Document doc = documentOf(window);
+      HTMLScriptElement scriptElement = Js.uncheckedCast(doc.createElement("script"));
+      ScriptInjector.attachListeners(scriptElement, new Callback<Void, Exception>() {
+        @Override
+        public void onFailure(Exception reason) {
+          done();
+          if (callback != null) {
+            callback.onFailure(reason);
+          }
+        }
+
+        @Override
+        public void onSuccess(Void result) {
+          done();
+          if (callback != null) {
+            callback.onSuccess(result);
+          }
+        }
+
+        private void done() {
+          loaded.loading--;
+          loaded.release();
+        }
+      }, removeTag);
+      scriptElement.src = url.url;
+      doc.head.appendChild(scriptElement);
+      return scriptElement;
+    }
+
+    @Override
+    public boolean isSynchronous() {
+      return !isSupported();
+    }
+
+    int size() {
+      return urls.size();
+    }
+
+    static boolean isSupported() {
+      Object url = Js.asPropertyMap(DomGlobal.window).get("URL");
+      return !"undefined".equals(Js.typeof(url))
+          && "function".equals(Js.typeof(Js.asPropertyMap(url).get("createObjectURL")));
+    }
+  }
+
+  static class FunctionCall implements EvaluationStrategy {
+    @Override
+    public HTMLScriptElement evaluate(Window window, String body, boolean removeTag,
+        Callback<Void, Exception> callback) {
+      Function constructor = Js.uncheckedCast(Js.asPropertyMap(window).get("Function"));
+      try {
+        Function function = Js.uncheckedCast(constructor.call(window, body));
+        function.call(window);
+      } catch (RuntimeException e) {
+        fail(callback, e);
+        return null;
+      }
+      if (callback != null) {
+        callback.onSuccess(null);
+      }
+      return null;
+    }
+  }
+
+  static class IndirectEval implements EvaluationStrategy {
+    @Override
+    public HTMLScriptElement evaluate(Window window, String body, boolean removeTag,
+        Callback<Void, Exception> callback) {
+      Function eval = Js.uncheckedCast(Js.asPropertyMap(window).get("eval"));
+      try {
+        // called as a method of the window, not by name, eval runs in global scope
+        eval.call(window, body);
+      } catch (RuntimeException e) {
+        fail(callback, e);
+        return null;
+      }
+      if (callback != null) {
+        callback.onSuccess(null);
+      }
+      return null;
+    }
+  }
+
+  private static Document documentOf(Window window) {
+    HasDocument hasDoc = Js.uncheckedCast(window);
+    return hasDoc.document;
+  }
+
+  private static void fail(Callback<Void, Exception> callback, RuntimeException e) {
+    if (callback == null) {
+      throw e;
+    }
+    callback.onFailure(new CodeDownloadException("Script evaluation failed: "
+        + e.getMessage()));
+  }
+
+  private EvaluationStrategies() {
+  }
+}
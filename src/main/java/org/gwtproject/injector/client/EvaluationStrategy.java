@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import elemental2.dom.HTMLScriptElement;
+import elemental2.dom.Window;
+
+/**
+ * How {@link ScriptInjector.FromString} evaluates a script body in a window.
+ * Set per injection with
+ * {@link ScriptInjector.FromString#setEvaluationStrategy(EvaluationStrategy)}
+ * or, for synchronous strategies, for all injections with
+ * {@link ScriptInjector#setDefaultEvaluationStrategy(EvaluationStrategy)}.
+ * <p>
+ * The built-in strategies differ in cost and requirements:
+ * <ul>
+ * <li>{@link #SCRIPT_ELEMENT}: the default, an inline {@code <script>}.
+ * Works everywhere, the body is parsed on every injection.
+ * <li>{@link #BLOB_URL}: a {@code <script>} loading the body from a
+ * {@code blob:} URL, evaluated asynchronously. The URL is reused for the
+ * same body, so the browser can cache the compiled code of scripts which are
+ * evaluated repeatedly. The URLs of the 16 most recently evaluated bodies are
+ * kept, older ones are revoked. Needs {@code blob:} in a {@code script-src}
+ * Content Security Policy. Falls back to {@link #SCRIPT_ELEMENT} where object
+ * URLs are not supported.
+ * <li>{@link #FUNCTION}: {@code new Function(body)()}, without DOM mutation.
+ * Top level {@code var} and function declarations stay local to the
+ * function, use {@code window.name = ...} to define globals.
+ * <li>{@link #INDIRECT_EVAL}: {@code (0, eval)(body)}, without DOM mutation,
+ * in global scope like a script element.
+ * </ul>
+ * {@link #FUNCTION} and {@link #INDIRECT_EVAL} need {@code 'unsafe-eval'} in
+ * a Content Security Policy. Unlike a script element, they report exceptions
+ * thrown by the script to the callback, and rethrow them if there is none.
+ */
+public interface EvaluationStrategy {
+
+  EvaluationStrategy SCRIPT_ELEMENT = new EvaluationStrategies.ScriptElement();
+
+  EvaluationStrategy BLOB_URL = new EvaluationStrategies.BlobUrl();
+
+  EvaluationStrategy FUNCTION = new EvaluationStrategies.FunctionCall();
+
+  EvaluationStrategy INDIRECT_EVAL = new EvaluationStrategies.IndirectEval();
+
+  /**
+   * Evaluates a script body and invokes the callback once it ran.
+   * 
+   * @param window the window to evaluate in
+   * @param body the script text
+   * @param removeTag whether a script element should be removed after
+   *          evaluation
+   * @param callback invoked after the evaluation, may be {@code null}
+   * @return the script element created, {@code null} if there is none
+   */
+  HTMLScriptElement evaluate(Window window, String body, boolean removeTag,
+      Callback<Void, Exception> callback);
+
+  /**
+   * @return {@code true} if the script has been evaluated when
+   *         {@link #evaluate} returns
+   */
+  default boolean isSynchronous() {
+    return true;
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import elemental2.dom.DomGlobal;
+import elemental2.dom.Window;
+import jsinterop.annotations.JsFunction;
+import jsinterop.annotations.JsOverlay;
+import jsinterop.annotations.JsPackage;
+import jsinterop.annotations.JsType;
+import jsinterop.base.Js;
+
+/**
+ * Helper class for scheduling work when the browser is idle. Falls back to a
+ * timeout where {@code requestIdleCallback} is not supported.
+ */
+@JsType(isNative = true, name = "Window", namespace = JsPackage.GLOBAL)
+class HasIdleCallback extends Window {
+
+  /**
+   * Invoked when the browser is idle.
+   */
+  @JsFunction
+  interface IdleCallbackFn {
+    void onInvoke(Object deadline);
+  }
+
+  public native double requestIdleCallback(IdleCallbackFn callback);
+
+  @JsOverlay
+  static void schedule(Runnable task) {
+    HasIdleCallback wnd = Js.uncheckedCast(DomGlobal.window);
+    if ("function".equals(Js.typeof(Js.asPropertyMap(wnd).get("requestIdleCallback")))) {
+      wnd.requestIdleCallback(deadline -> task.run());
+    } else {
+      DomGlobal.setTimeout(ignored -> task.run(), 1);
+    }
+  }
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import elemental2.dom.Document;
+import elemental2.dom.DomGlobal;
+import elemental2.dom.Element;
+import elemental2.dom.Node;
+import elemental2.dom.NodeList;
+import jsinterop.base.Js;
+
+/**
+ * Registry of the styles and scripts which are already in the document, so
+ * injecting the same content again is a no-op.
+ * <p>
+ * Every {@code <style>} and {@code <link>} created by {@link StyleInjector}
+ * and every {@code <script>} kept in the document (see
+ * {@link ScriptInjector.FromString#setRemoveTag(boolean)}) is marked with the
+ * {@value #ATTRIBUTE} attribute. Its value lists the stable IDs of the
+ * content, i.e. content hashes for styles and inline scripts and the hash of
+ * the URL for links and external scripts. A pre-rendered snapshot of the page keeps
+ * these marks, so calling {@link #hydrate()} first thing on boot registers
+ * the elements of the snapshot as injected instead of injecting and parsing
+ * the same content twice.
+ * <p>
+ * The registry only keeps the IDs, and the URLs of links and external
+ * scripts. IDs are short hashes, so on a hit, content is only skipped if one
+ * of the elements marked with its ID still holds it. An ID only counts as
+ * injected while an element marked with it is in the document: once the
+ * application removes the element, the ID is dropped and injecting the same
+ * content again injects a new element. IDs whose elements are gone are also
+ * pruned whenever the registry has doubled in size, so it is bounded by the
+ * marked elements in the document.
+ * Only stylesheets and scripts injected with dedupe turned on are registered,
+ * see {@link StyleScope#setDedupe(boolean)},
+ * {@link ScriptInjector.FromString#setDedupe(boolean)} and
+ * {@link ScriptInjector.FromUrl#setDedupe(boolean)}.
+ * <p>
+ * Only injections into the window the GWT code runs in are registered.
+ * Changing a stylesheet with {@link StyleInjector#setContents} does not update
+ * its mark. A {@link StyleScope} with its own container looks up its
+ * stylesheets in the container instead.
+ * <p>
+ * The registry is created once dedupe is turned on or the document is
+ * hydrated. Applications doing neither do not compile it in.
+ */
+public class Hydration {
+
+  /**
+   * Attribute holding the space separated IDs of the injected content.
+   */
+  public static final String ATTRIBUTE = "data-gwt-injector";
+
+  /**
+   * Minimum size of the registry before IDs are pruned.
+   */
+  private static final int MIN_PRUNE = 64;
+
+  private static Hydration registry;
+
+  /**
+   * Registers all marked style, link and script elements of the document as
+   * injected. Scans the document of the window the GWT code runs in as well,
+   * if it differs.
+   * 
+   * @return the number of newly registered IDs
+   */
+  public static int hydrate() {
+    Hydration hydration = registry();
+    int count = hydration.hydrate(DomGlobal.document);
+    HasDocument current = Js.uncheckedCast(ScriptInjector.currentWindow());
+    if (current.document != DomGlobal.document) {
+      count += hydration.hydrate(current.document);
+    }
+    return count;
+  }
+
+  /**
+   * @return {@code true} if content with the given ID has been injected or
+   *         hydrated and its element is still in the document
+   */
+  public static boolean isInjected(String id) {
+    if (registry == null || !registry.injected.containsKey(id)) {
+      return false;
+    }
+    if (findMarked(id) == null) {
+      registry.injected.remove(id);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return the stable ID of a stylesheet or inline script
+   */
+  public static String idOf(String content) {
+    return ContentHash.of(content);
+  }
+
+  /**
+   * @return the registry, created on the first call. Injectors keep it while
+   *         dedupe is on.
+   */
+  static Hydration registry() {
+    if (registry == null) {
+      registry = new Hydration();
+    }
+    return registry;
+  }
+
+  /**
+   * @return the element marked with the given ID, {@code null} if there is
+   *         none
+   */
+  static Element find(Document doc, String id) {
+    return doc.querySelector(selectorOf(id));
+  }
+
+  /**
+   * @param root the document or container to search
+   * @return the element marked with the given ID which holds the content,
+   *         i.e. links or loads it as URL or has it in its text, {@code null}
+   *         if there is none
+   */
+  static Element find(Node root, String id, String content) {
+    Element scope = Js.uncheckedCast(root);
+    NodeList<Object> marked = Js.uncheckedCast(scope.querySelectorAll(selectorOf(id)));
+    for (int i = 0; i < marked.length; i++) {
+      Element element = Js.uncheckedCast(marked.item(i));
+      String url = urlOf(element);
+      if (url != null ? url.equals(content) : element.textContent.contains(content)) {
+        return element;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the element marked with the given ID in the document of the host
+   *         page or of the window the GWT code runs in, {@code null} if it has
+   *         been removed
+   */
+  private static Element findMarked(String id) {
+    Element element = find(DomGlobal.document, id);
+    HasDocument current = Js.uncheckedCast(ScriptInjector.currentWindow());
+    if (element == null && current.document != DomGlobal.document) {
+      element = Js.uncheckedCast(find(current.document, id));
+    }
+    return element;
+  }
+
+  /**
+   * @return a selector matching the element marked with the given ID
+   */
+  static String selectorOf(String id) {
+    return "[" + ATTRIBUTE + "~=\"" + id + "\"]";
+  }
+
+  static void mark(Element element, String ids) {
+    element.setAttribute(ATTRIBUTE, ids);
+  }
+
+  /**
+   * Drops the IDs of elements which are no longer in the document.
+   */
+  static void prune() {
+    if (registry != null) {
+      registry.pruneIds();
+    }
+  }
+
+  /**
+   * Unregisters the IDs an element is marked with, once it has been removed.
+   */
+  static void forget(Element element) {
+    String ids = element.getAttribute(ATTRIBUTE);
+    if (registry == null || ids == null) {
+      return;
+    }
+    for (String id : ids.split(" ")) {
+      registry.injected.remove(id);
+    }
+  }
+
+  /**
+   * @return the number of registered IDs
+   */
+  static int size() {
+    return registry == null ? 0 : registry.injected.size();
+  }
+
+  private static void collectIds(Document doc, Set<String> ids) {
+    NodeList<Object> marked = Js.uncheckedCast(doc.querySelectorAll("[" + ATTRIBUTE + "]"));
+    for (int i = 0; i < marked.length; i++) {
+      Element element = Js.uncheckedCast(marked.item(i));
+      for (String id : element.getAttribute(ATTRIBUTE).split(" ")) {
+        ids.add(id);
+      }
+    }
+  }
+
+  /**
+   * @return the URL a link or external script loads, {@code null} for other
+   *         elements
+   */
+  private static String urlOf(Element element) {
+    return element.getAttribute("link".equalsIgnoreCase(element.tagName) ? "href" : "src");
+  }
+
+  /**
+   * IDs of the injected and hydrated stylesheets and scripts, mapped to the
+   * URL for links and external scripts and to {@code null} otherwise.
+   */
+  private final Map<String, String> injected = new HashMap<>();
+
+  /**
+   * Size of the registry at which IDs whose elements are gone are pruned.
+   */
+  private int pruneAt = MIN_PRUNE;
+
+  private Hydration() {
+  }
+
+  /**
+   * @return {@code true} if the given content has been injected or hydrated
+   *         under the given ID and an element marked with the ID still holds
+   *         it
+   */
+  boolean isInjected(String id, String content) {
+    if (!injected.containsKey(id)) {
+      return false;
+    }
+    String url = injected.get(id);
+    if (url != null) {
+      if (!url.equals(content)) {
+        return false;
+      }
+      if (findMarked(id) != null) {
+        return true;
+      }
+    } else {
+      if (find(DomGlobal.document, id, content) != null) {
+        return true;
+      }
+      HasDocument current = Js.uncheckedCast(ScriptInjector.currentWindow());
+      if (current.document != DomGlobal.document
+          && find(current.document, id, content) != null) {
+        return true;
+      }
+      if (findMarked(id) != null) {
+        // different content with the same ID
+        return false;
+      }
+    }
+    injected.remove(id);
+    return false;
+  }
+
+  /**
+   * Registers an ID once its element is in the document. An ID which is
+   * already registered, e.g. by colliding content, is left as it is.
+   * 
+   * @param url the URL of a link or external script, {@code null} for a
+   *          stylesheet or inline script
+   */
+  void register(String id, String url) {
+    if (injected.containsKey(id)) {
+      return;
+    }
+    if (injected.size() >= pruneAt) {
+      pruneIds();
+    }
+    injected.put(id, url);
+  }
+
+  /**
+   * Registers the space separated IDs of a style element, see
+   * {@link #register(String, String)}.
+   */
+  void registerAll(String ids) {
+    if (injected.size() >= pruneAt) {
+      pruneIds();
+    }
+    for (String id : ids.split(" ")) {
+      if (!id.isEmpty() && !injected.containsKey(id)) {
+        injected.put(id, null);
+      }
+    }
+  }
+
+  /**
+   * Elements of the document the GWT code runs in are not instances of the
+   * host page's {@code Element}, so they are read with unchecked casts.
+   */
+  private int hydrate(Document doc) {
+    int count = 0;
+    NodeList<Object> marked = Js.uncheckedCast(doc.querySelectorAll(
+        "style[" + ATTRIBUTE + "],link[" + ATTRIBUTE + "],script[" + ATTRIBUTE + "]"));
+    for (int i = 0; i < marked.length; i++) {
+      Element element = Js.uncheckedCast(marked.item(i));
+      String url = urlOf(element);
+      for (String id : element.getAttribute(ATTRIBUTE).split(" ")) {
+        if (!id.isEmpty() && !injected.containsKey(id)) {
+          injected.put(id, url);
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  private void pruneIds() {
+    Set<String> live = new HashSet<>();
+    collectIds(DomGlobal.document, live);
+    HasDocument current = Js.uncheckedCast(ScriptInjector.currentWindow());
+    if (current.document != DomGlobal.document) {
+      collectIds(current.document, live);
+    }
+    injected.keySet().retainAll(live);
+    pruneAt = Math.max(MIN_PRUNE, 2 * injected.size());
+  }
+}
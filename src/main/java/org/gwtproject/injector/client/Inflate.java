@@ -0,0 +1,295 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+/**
+ * Decoder for the DEFLATE format (RFC 1951) with optional zlib (RFC 1950) or
+ * gzip (RFC 1952) framing, used where {@code DecompressionStream} is missing.
+ * Checksums are not verified.
+ */
+final class Inflate {
+
+  private static final int[] LENGTH_BASE = {
+      3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115,
+      131, 163, 195, 227, 258};
+  private static final int[] LENGTH_EXTRA = {
+      0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+  private static final int[] DISTANCE_BASE = {
+      1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537,
+      2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+  private static final int[] DISTANCE_EXTRA = {
+      0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12,
+      13, 13};
+  private static final int[] CODE_LENGTH_ORDER = {
+      16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+  private static final int MAX_BITS = 15;
+
+  private static Huffman fixedLiterals;
+  private static Huffman fixedDistances;
+
+  /**
+   * Canonical Huffman code as counts of codes per length and symbols ordered
+   * by code.
+   */
+  private static class Huffman {
+    private final int[] count = new int[MAX_BITS + 1];
+    private final int[] symbol;
+
+    Huffman(int[] lengths, int offset, int n) {
+      symbol = new int[n];
+      for (int i = 0; i < n; i++) {
+        count[lengths[offset + i]]++;
+      }
+      int[] next = new int[MAX_BITS + 1];
+      for (int len = 1; len < MAX_BITS; len++) {
+        next[len + 1] = next[len] + count[len];
+      }
+      for (int i = 0; i < n; i++) {
+        if (lengths[offset + i] != 0) {
+          symbol[next[lengths[offset + i]]++] = i;
+        }
+      }
+    }
+  }
+
+  /**
+   * @param data compressed bytes
+   * @param format {@code "gzip"}, {@code "deflate"} (zlib framing) or
+   *          {@code "deflate-raw"}
+   * @return the decompressed bytes
+   * @throws IllegalArgumentException if the data is malformed or the format
+   *           unknown
+   */
+  static byte[] inflate(byte[] data, String format) {
+    int start;
+    if ("gzip".equals(format)) {
+      if (data.length < 10 || (data[0] & 0xff) != 0x1f || (data[1] & 0xff) != 0x8b
+          || data[2] != 8) {
+        throw new IllegalArgumentException("Not a gzip stream");
+      }
+      int flags = data[3];
+      start = 10;
+      if ((flags & 4) != 0) {
+        start += 2 + ((data[start] & 0xff) | (data[start + 1] & 0xff) << 8);
+      }
+      if ((flags & 8) != 0) {
+        start = skipZeroTerminated(data, start);
+      }
+      if ((flags & 16) != 0) {
+        start = skipZeroTerminated(data, start);
+      }
+      if ((flags & 2) != 0) {
+        start += 2;
+      }
+    } else if ("deflate".equals(format)) {
+      if (data.length < 2 || (data[0] & 0x0f) != 8
+          || ((data[0] & 0xff) << 8 | (data[1] & 0xff)) % 31 != 0 || (data[1] & 0x20) != 0) {
+        throw new IllegalArgumentException("Not a zlib stream");
+      }
+      start = 2;
+    } else if ("deflate-raw".equals(format)) {
+      start = 0;
+    } else {
+      throw new IllegalArgumentException("Unknown format " + format);
+    }
+
+    Inflate inflate = new Inflate(data, start);
+    inflate.run();
+    byte[] result = new byte[inflate.outLength];
+    System.arraycopy(inflate.out, 0, result, 0, inflate.outLength);
+    return result;
+  }
+
+  private static int skipZeroTerminated(byte[] data, int pos) {
+    while (pos < data.length && data[pos] != 0) {
+      pos++;
+    }
+    return pos + 1;
+  }
+
+  private final byte[] in;
+  private int inPos;
+  private int bitBuffer;
+  private int bitCount;
+  private byte[] out;
+  private int outLength;
+
+  private Inflate(byte[] in, int start) {
+    this.in = in;
+    this.inPos = start;
+    this.out = new byte[Math.max(256, in.length * 4)];
+  }
+
+  private void run() {
+    int last;
+    do {
+      last = bits(1);
+      int type = bits(2);
+      if (type == 0) {
+        stored();
+      } else if (type == 1) {
+        if (fixedLiterals == null) {
+          int[] lengths = new int[288 + 30];
+          for (int i = 0; i < 288; i++) {
+            lengths[i] = i < 144 ? 8 : i < 256 ? 9 : i < 280 ? 7 : 8;
+          }
+          for (int i = 288; i < lengths.length; i++) {
+            lengths[i] = 5;
+          }
+          fixedLiterals = new Huffman(lengths, 0, 288);
+          fixedDistances = new Huffman(lengths, 288, 30);
+        }
+        codes(fixedLiterals, fixedDistances);
+      } else if (type == 2) {
+        dynamic();
+      } else {
+        throw new IllegalArgumentException("Invalid block type");
+      }
+    } while (last == 0);
+  }
+
+  private int bits(int n) {
+    while (bitCount < n) {
+      if (inPos >= in.length) {
+        throw new IllegalArgumentException("Unexpected end of compressed data");
+      }
+      bitBuffer |= (in[inPos++] & 0xff) << bitCount;
+      bitCount += 8;
+    }
+    int value = bitBuffer & ((1 << n) - 1);
+    bitBuffer >>>= n;
+    bitCount -= n;
+    return value;
+  }
+
+  private int decode(Huffman huffman) {
+    int code = 0;
+    int first = 0;
+    int index = 0;
+    for (int len = 1; len <= MAX_BITS; len++) {
+      code |= bits(1);
+      int count = huffman.count[len];
+      if (code - count < first) {
+        return huffman.symbol[index + (code - first)];
+      }
+      index += count;
+      first = (first + count) << 1;
+      code <<= 1;
+    }
+    throw new IllegalArgumentException("Invalid Huffman code");
+  }
+
+  private void stored() {
+    bitBuffer = 0;
+    bitCount = 0;
+    if (inPos + 4 > in.length) {
+      throw new IllegalArgumentException("Unexpected end of compressed data");
+    }
+    int len = (in[inPos] & 0xff) | (in[inPos + 1] & 0xff) << 8;
+    int nlen = (in[inPos + 2] & 0xff) | (in[inPos + 3] & 0xff) << 8;
+    inPos += 4;
+    if (len != (~nlen & 0xffff) || inPos + len > in.length) {
+      throw new IllegalArgumentException("Invalid stored block");
+    }
+    ensureCapacity(len);
+    System.arraycopy(in, inPos, out, outLength, len);
+    inPos += len;
+    outLength += len;
+  }
+
+  private void dynamic() {
+    int literalCount = bits(5) + 257;
+    int distanceCount = bits(5) + 1;
+    int codeLengthCount = bits(4) + 4;
+
+    int[] lengths = new int[literalCount + distanceCount];
+    int[] codeLengths = new int[19];
+    for (int i = 0; i < codeLengthCount; i++) {
+      codeLengths[CODE_LENGTH_ORDER[i]] = bits(3);
+    }
+    Huffman codeLengthCode = new Huffman(codeLengths, 0, 19);
+
+    for (int i = 0; i < lengths.length;) {
+      int symbol = decode(codeLengthCode);
+      if (symbol < 16) {
+        lengths[i++] = symbol;
+        continue;
+      }
+      int value = 0;
+      int repeat;
+      if (symbol == 16) {
+        if (i == 0) {
+          throw new IllegalArgumentException("Repeat without previous length");
+        }
+        value = lengths[i - 1];
+        repeat = 3 + bits(2);
+      } else if (symbol == 17) {
+        repeat = 3 + bits(3);
+      } else {
+        repeat = 11 + bits(7);
+      }
+      if (i + repeat > lengths.length) {
+        throw new IllegalArgumentException("Too many code lengths");
+      }
+      while (repeat-- > 0) {
+        lengths[i++] = value;
+      }
+    }
+
+    codes(new Huffman(lengths, 0, literalCount),
+        new Huffman(lengths, literalCount, distanceCount));
+  }
+
+  private void codes(Huffman literals, Huffman distances) {
+    while (true) {
+      int symbol = decode(literals);
+      if (symbol < 256) {
+        ensureCapacity(1);
+        out[outLength++] = (byte) symbol;
+      } else if (symbol == 256) {
+        return;
+      } else {
+        symbol -= 257;
+        if (symbol >= LENGTH_BASE.length) {
+          throw new IllegalArgumentException("Invalid length code");
+        }
+        int length = LENGTH_BASE[symbol] + bits(LENGTH_EXTRA[symbol]);
+        int distanceSymbol = decode(distances);
+        if (distanceSymbol >= DISTANCE_BASE.length) {
+          throw new IllegalArgumentException("Invalid distance code");
+        }
+        int distance = DISTANCE_BASE[distanceSymbol] + bits(DISTANCE_EXTRA[distanceSymbol]);
+        if (distance > outLength) {
+          throw new IllegalArgumentException("Distance too far back");
+        }
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+          out[outLength] = out[outLength - distance];
+          outLength++;
+        }
+      }
+    }
+  }
+
+  private void ensureCapacity(int extra) {
+    if (outLength + extra > out.length) {
+      byte[] grown = new byte[Math.max(out.length * 2, outLength + extra)];
+      System.arraycopy(out, 0, grown, 0, outLength);
+      out = grown;
+    }
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import elemental2.dom.Document;
+import elemental2.dom.HTMLScriptElement;
+import jsinterop.base.Js;
+
+/**
+ * Handle of a script injection started by
+ * {@link ScriptInjector.FromUrl#injectCancellable()}.
+ * <p>
+ * Cancelling an injection removes its script element, detaches its load and
+ * error listeners and fails the callback. Only injections which are still
+ * queued, e.g. by the {@link LoadingPolicy} or the {@link DownloadQueue}, are
+ * reliably prevented from running: they are dropped from the queue, never
+ * start downloading and fail with
+ * {@link CodeDownloadException.Reason#TERMINATED}. Once the element has been
+ * added to the document, the browser has started fetching the script and
+ * may still execute it after the element was removed. Such injections fail
+ * with {@link CodeDownloadException.Reason#DETACHED}.
+ */
+public final class Injection {
+
+  private final HTMLScriptElement element;
+  private Callback<Void, Exception> callback;
+  private InjectionGroup group;
+  private MirrorRace race;
+  private Runnable start;
+  private DownloadQueue queue;
+  private boolean started;
+  private boolean finished;
+
+  Injection(HTMLScriptElement element, Callback<Void, Exception> callback) {
+    this.element = element;
+    this.callback = callback;
+  }
+
+  /**
+   * Cancels the injection unless it already finished. The script is only
+   * guaranteed not to run if the injection was still queued, see
+   * {@link Injection}.
+   * 
+   * @return {@code true} if the injection was cancelled by this call
+   */
+  public boolean cancel() {
+    if (finished) {
+      return false;
+    }
+
+    boolean appended = element != null && element.parentNode != null;
+    if (queue != null && !started) {
+      queue.remove(start);
+    }
+    if (element != null) {
+      element.onload = null;
+      element.onerror = null;
+      if (element.parentNode != null) {
+        element.parentNode.removeChild(element);
+      }
+    }
+    onFailure(appended
+        ? new CodeDownloadException("Injection was cancelled after its script was appended",
+            CodeDownloadException.Reason.DETACHED)
+        : new CodeDownloadException("Injection was cancelled",
+            CodeDownloadException.Reason.TERMINATED));
+    return true;
+  }
+
+  boolean isQueued() {
+    return !finished && start != null && !started;
+  }
+
+  /**
+   * @return the script element created for the injection, {@code null} for
+   *         worker or skipped injections
+   */
+  public <T> T getElement() {
+    return Js.uncheckedCast(element);
+  }
+
+  /**
+   * @return {@code true} once the script loaded, failed or was cancelled
+   */
+  public boolean isFinished() {
+    return finished;
+  }
+
+  /**
+   * Callback to pass to the loading code. It drops results arriving after
+   * cancellation.
+   */
+  Callback<Void, Exception> asCallback() {
+    return new Callback<Void, Exception>() {
+      @Override
+      public void onFailure(Exception reason) {
+        Injection.this.onFailure(reason);
+      }
+
+      @Override
+      public void onSuccess(Void result) {
+        Callback<Void, Exception> target = callback;
+        if (finish() && target != null) {
+          target.onSuccess(null);
+        }
+      }
+    };
+  }
+
+  /**
+   * Appends the element to the head of the document, once the
+   * {@link DownloadQueue} has a free slot if a {@link LoadingPolicy} is set.
+   * If a {@link MirrorRace} was set, it runs in that slot and the element gets
+   * the URL of the winner.
+   * 
+   * @param deferred if {@code true} wait for {@link LoadingPolicy#defer(Runnable)}
+   *          before queueing, requires a policy
+   */
+  void enqueue(Document doc, boolean deferred) {
+    start = () -> {
+      started = true;
+      if (race == null) {
+        doc.head.appendChild(element);
+      } else {
+        race.start(url -> {
+          element.src = url;
+          doc.head.appendChild(element);
+        }, this::onFailure);
+      }
+    };
+
+    LoadingPolicy policy = LoadingPolicy.get();
+    if (policy == null) {
+      start.run();
+    } else if (deferred) {
+      policy.defer(() -> {
+        if (!finished) {
+          queue();
+        }
+      });
+    } else {
+      queue();
+    }
+  }
+
+  private void queue() {
+    queue = DownloadQueue.get();
+    queue.add(start);
+  }
+
+  /**
+   * @return {@code true} if the injection does not reference its callback,
+   *         group, race or queued start anymore
+   */
+  boolean isReleased() {
+    return callback == null && group == null && race == null && start == null;
+  }
+
+  void setGroup(InjectionGroup group) {
+    this.group = group;
+  }
+
+  void setRace(MirrorRace race) {
+    this.race = race;
+  }
+
+  private void onFailure(Exception reason) {
+    Callback<Void, Exception> target = callback;
+    if (finish() && target != null) {
+      target.onFailure(reason);
+    }
+  }
+
+  private boolean finish() {
+    if (finished) {
+      return false;
+    }
+    finished = true;
+
+    if (queue != null && started) {
+      queue.finished(start);
+    }
+    if (group != null) {
+      group.remove(this);
+    }
+    if (race != null) {
+      race.dispose();
+    }
+    // a finished injection may be kept for a long time, don't keep what it used
+    callback = null;
+    group = null;
+    race = null;
+    start = null;
+    return true;
+  }
+}
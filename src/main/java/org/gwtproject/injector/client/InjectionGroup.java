@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A set of {@link Injection injections} which can be cancelled at once, e.g.
+ * all scripts requested by a view the user navigated away from.
+ * <p>
+ * Injections leave the group once they finish.
+ */
+public class InjectionGroup {
+
+  private final List<Injection> injections = new ArrayList<>();
+
+  /**
+   * Adds an injection to the group, unless it already finished.
+   */
+  public void add(Injection injection) {
+    if (!injection.isFinished()) {
+      injections.add(injection);
+      injection.setGroup(this);
+    }
+  }
+
+  /**
+   * Cancels all injections in the group which have not finished yet. Queued
+   * injections are cancelled first, so slots freed by the others do not start
+   * them.
+   */
+  public void cancelAll() {
+    List<Injection> toCancel = new ArrayList<>(injections);
+    injections.clear();
+    for (Injection injection : toCancel) {
+      if (injection.isQueued()) {
+        injection.cancel();
+      }
+    }
+    for (Injection injection : toCancel) {
+      injection.cancel();
+    }
+  }
+
+  /**
+   * @return number of unfinished injections in the group
+   */
+  public int size() {
+    return injections.size();
+  }
+
+  void remove(Injection injection) {
+    injections.remove(injection);
+  }
+}
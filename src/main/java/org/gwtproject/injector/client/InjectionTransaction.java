@@ -0,0 +1,186 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import elemental2.dom.Document;
+import elemental2.dom.DocumentFragment;
+import elemental2.dom.DomGlobal;
+import elemental2.dom.HTMLStyleElement;
+import jsinterop.base.Js;
+
+/**
+ * Collects stylesheets and scripts and adds them to the document in a single
+ * DOM write, e.g. everything a view needs when it opens. This avoids repeated
+ * style invalidation and content flashing unstyled between writes.
+ * <p>
+ * On {@link #commit()} the stylesheets of the transaction are combined into
+ * one {@code <style>} element, together with the pending
+ * {@link StyleInjector} stylesheets: those injected normally come before the
+ * stylesheets of the transaction and those injected at the end after them.
+ * The element and the script elements, in the order they were added, are
+ * appended to the head in one {@link DocumentFragment}. Pending stylesheets
+ * injected at the start are still inserted at the start of the head on their
+ * own. Scripts injected into a window other than the host page get a
+ * fragment of their own.
+ * <p>
+ * Nothing is injected before the commit, and script callbacks are never
+ * invoked before the commit has completed. Scripts of a transaction bypass
+ * the {@link LoadingPolicy} download queue and mirror racing.
+ * <p>
+ * 
+ * <pre>
+ *   new InjectionTransaction()
+ *       .addStyle(css)
+ *       .addScript(ScriptInjector.fromUrl("view.js").setCallback(onLoaded))
+ *       .commit();
+ * </pre>
+ */
+public class InjectionTransaction {
+
+  /**
+   * Holds back results until the transaction has committed.
+   */
+  private class Deferred implements Callback<Void, Exception> {
+    private final Callback<Void, Exception> callback;
+
+    Deferred(Callback<Void, Exception> callback) {
+      this.callback = callback;
+    }
+
+    @Override
+    public void onFailure(Exception reason) {
+      if (committed) {
+        callback.onFailure(reason);
+      } else {
+        held.add(() -> callback.onFailure(reason));
+      }
+    }
+
+    @Override
+    public void onSuccess(Void result) {
+      if (committed) {
+        callback.onSuccess(result);
+      } else {
+        held.add(() -> callback.onSuccess(result));
+      }
+    }
+  }
+
+  private final List<String> styles = new ArrayList<>();
+  private final List<ScriptInjector.FromUrl> scripts = new ArrayList<>();
+  /**
+   * Documents and their fragments. The document the GWT code runs in is not
+   * an instance of the host page's {@code Document}, so they are read with
+   * unchecked casts.
+   */
+  private final List<Document> documents = new ArrayList<>();
+  private final List<DocumentFragment> fragments = new ArrayList<>();
+  private final List<Runnable> held = new ArrayList<>();
+  private boolean committed;
+
+  /**
+   * Adds a stylesheet, see {@link StyleInjector#inject(String)}.
+   * 
+   * @param css the CSS contents of the stylesheet
+   */
+  public InjectionTransaction addStyle(String css) {
+    checkNotCommitted();
+    styles.add(css);
+    return this;
+  }
+
+  /**
+   * Adds a script. The builder is injected on commit.
+   * 
+   * @param script the script to inject
+   */
+  public InjectionTransaction addScript(ScriptInjector.FromUrl script) {
+    checkNotCommitted();
+    scripts.add(script);
+    return this;
+  }
+
+  /**
+   * Injects everything added to the transaction.
+   * 
+   * @return the handles of the script injections, in the order the scripts
+   *         were added
+   * @throws IllegalStateException if the transaction already committed
+   */
+  public List<Injection> commit() {
+    checkNotCommitted();
+
+    List<Injection> injections = new ArrayList<>();
+    try {
+      HTMLStyleElement style = StyleInjector.createStylesheet(styles);
+      if (style != null) {
+        fragmentFor(DomGlobal.document).appendChild(style);
+      }
+      for (ScriptInjector.FromUrl script : scripts) {
+        injections.add(script.inject(this));
+      }
+    } finally {
+      // even if a script failed to inject, add what was created and report it
+      for (int i = 0; i < documents.size(); i++) {
+        Document doc = Js.uncheckedCast(documents.get(i));
+        doc.head.appendChild(Js.uncheckedCast(fragments.get(i)));
+      }
+      // the queues are empty, so this only completes whenInjected()
+      StyleInjector.flush();
+
+      committed = true;
+      for (Runnable result : held) {
+        result.run();
+      }
+      held.clear();
+    }
+    return Collections.unmodifiableList(injections);
+  }
+
+  /**
+   * @return {@code true} once {@link #commit()} has been called
+   */
+  public boolean isCommitted() {
+    return committed;
+  }
+
+  Callback<Void, Exception> defer(Callback<Void, Exception> callback) {
+    return callback == null ? null : new Deferred(callback);
+  }
+
+  DocumentFragment fragmentFor(Document doc) {
+    int index = documents.indexOf(doc);
+    if (index >= 0) {
+      return Js.uncheckedCast(fragments.get(index));
+    }
+    DocumentFragment fragment = doc.createDocumentFragment();
+    documents.add(doc);
+    fragments.add(fragment);
+    return fragment;
+  }
+
+  private void checkNotCommitted() {
+    if (committed) {
+      throw new IllegalStateException("The transaction has already been committed");
+    }
+  }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import elemental2.dom.DomGlobal;
+import elemental2.dom.Element;
+import elemental2.dom.Event;
+import elemental2.dom.EventListener;
+import jsinterop.annotations.JsFunction;
+import jsinterop.base.Js;
+
+/**
+ * Starts script and style downloads on user intent instead of on click, to
+ * hide network latency.
+ * <p>
+ * An {@link Intent} ties a pending {@link ScriptInjector.FromUrl} injection,
+ * or a preload hint, to a DOM element. The load starts when the element enters
+ * the viewport, or is hovered or focused for the dwell time. User signals only
+ * load, callbacks are held back until the real action commits the intent with
+ * {@link Intent#inject(Callback)}, which reuses the load if it already started
+ * and waits for it to finish:
+ * <p>
+ * 
+ * <pre>
+ *   final Intent intent = new IntentLoader().attach(button,
+ *       ScriptInjector.fromUrl("editor.js"));
+ *   button.onclick = e -&gt; { intent.inject(openEditor); return null; };
+ * </pre>
+ */
+public class IntentLoader {
+
+  /**
+   * User signals that start a speculative load.
+   */
+  public enum Trigger {
+    /**
+     * The element enters the viewport. Ignored where IntersectionObserver is
+     * not supported.
+     */
+    VIEWPORT,
+    /**
+     * The pointer rests over the element for the dwell time, or the element is
+     * touched.
+     */
+    HOVER,
+    /**
+     * The element has focus for the dwell time.
+     */
+    FOCUS,
+  }
+
+  /**
+   * A load attached to an element.
+   */
+  public static final class Intent {
+    private final Consumer<Callback<Void, Exception>> load;
+    private final List<Runnable> detachers = new ArrayList<>();
+    private final List<Callback<Void, Exception>> waiting = new ArrayList<>();
+    private Callback<Void, Exception> onCommit;
+    private double dwellTimer;
+    private boolean started;
+    private boolean committed;
+    private boolean finished;
+    private Exception failure;
+
+    private Intent(Consumer<Callback<Void, Exception>> load) {
+      this.load = load;
+    }
+
+    /**
+     * Commits the intent, see {@link #inject(Callback)}.
+     */
+    public void inject() {
+      inject(null);
+    }
+
+    /**
+     * Commits the intent: starts the load unless a user signal already did,
+     * and stops watching the element. The callback, and the callback of the
+     * attached injection, are invoked once the load finished, right away if
+     * it already has. A preload hint finishes as soon as it is emitted.
+     * 
+     * @param callback callback invoked once the load finished, may be
+     *          {@code null}
+     */
+    public void inject(Callback<Void, Exception> callback) {
+      if (!committed) {
+        committed = true;
+        if (onCommit != null) {
+          waiting.add(onCommit);
+        }
+      }
+      if (callback != null) {
+        waiting.add(callback);
+      }
+      start();
+      if (finished) {
+        notifyWaiting();
+      }
+    }
+
+    /**
+     * @return {@code true} if the load has been started
+     */
+    public boolean isStarted() {
+      return started;
+    }
+
+    /**
+     * @return {@code true} if the load has finished, successfully or not
+     */
+    public boolean isFinished() {
+      return finished;
+    }
+
+    /**
+     * Stops watching the element without starting the load.
+     */
+    public void detach() {
+      DomGlobal.clearTimeout(dwellTimer);
+      for (Runnable detacher : detachers) {
+        detacher.run();
+      }
+      detachers.clear();
+    }
+
+    /**
+     * Starts the load on a user signal, without committing.
+     */
+    private void start() {
+      detach();
+      if (started) {
+        return;
+      }
+      started = true;
+      load.accept(new Callback<Void, Exception>() {
+        @Override
+        public void onFailure(Exception reason) {
+          finish(reason);
+        }
+
+        @Override
+        public void onSuccess(Void result) {
+          finish(null);
+        }
+      });
+    }
+
+    private void finish(Exception failure) {
+      finished = true;
+      this.failure = failure;
+      if (committed) {
+        notifyWaiting();
+      }
+    }
+
+    private void notifyWaiting() {
+      List<Callback<Void, Exception>> callbacks = new ArrayList<>(waiting);
+      waiting.clear();
+      for (Callback<Void, Exception> callback : callbacks) {
+        if (failure == null) {
+          callback.onSuccess(null);
+        } else {
+          callback.onFailure(failure);
+        }
+      }
+    }
+
+    private void listen(Element element, String type, Handler handler) {
+      EventListener listener = Js.uncheckedCast(handler);
+      element.addEventListener(type, listener);
+      detachers.add(() -> element.removeEventListener(type, listener));
+    }
+  }
+
+  /**
+   * Event listener passed as a function, which unlike an
+   * {@link EventListener} object is supported everywhere, e.g. in HtmlUnit.
+   */
+  @JsFunction
+  interface Handler {
+    void handleEvent(Event event);
+  }
+
+  private Set<Trigger> triggers = EnumSet.of(Trigger.HOVER, Trigger.FOCUS);
+  private int dwellTime = 65;
+
+  /**
+   * Attaches an injection which is started on user intent. The injection
+   * must not be injected directly, use {@link Intent#inject(Callback)}
+   * instead. Its callback is invoked once the intent is committed and the
+   * script has loaded.
+   * 
+   * @param element element watched for user intent
+   * @param injection the injection to start
+   */
+  public Intent attach(Element element, ScriptInjector.FromUrl injection) {
+    Intent intent = new Intent(injection::inject);
+    intent.onCommit = injection.getCallback();
+    return watch(element, intent);
+  }
+
+  /**
+   * Attaches a preload hint which is emitted on user intent. Injecting the
+   * same URL later reuses the preloaded download.
+   * 
+   * @param element element watched for user intent
+   * @param url URL of the resource
+   * @param as destination of the resource, e.g. {@link PreloadHints#SCRIPT}
+   */
+  public Intent attachPreload(Element element, String url, String as) {
+    return watch(element, new Intent(callback -> {
+      PreloadHints.preload(url, as);
+      callback.onSuccess(null);
+    }));
+  }
+
+  /**
+   * @param dwellTime number of milliseconds the pointer or focus has to stay
+   *          on the element. Default value is {@code 65}.
+   */
+  public IntentLoader setDwellTime(int dwellTime) {
+    this.dwellTime = dwellTime;
+    return this;
+  }
+
+  /**
+   * Sets the user signals that start a load. Default value is
+   * {@link Trigger#HOVER} and {@link Trigger#FOCUS}.
+   * 
+   * @param first a user signal
+   * @param rest more user signals
+   */
+  public IntentLoader setTriggers(Trigger first, Trigger... rest) {
+    this.triggers = EnumSet.of(first, rest);
+    return this;
+  }
+
+  private Intent watch(Element element, Intent intent) {
+    if (triggers.contains(Trigger.HOVER)) {
+      intent.listen(element, "mouseenter", e -> dwell(intent));
+      intent.listen(element, "mouseleave", e -> DomGlobal.clearTimeout(intent.dwellTimer));
+      intent.listen(element, "touchstart", e -> intent.start());
+    }
+
+    if (triggers.contains(Trigger.FOCUS)) {
+      intent.listen(element, "focusin", e -> dwell(intent));
+      intent.listen(element, "focusout", e -> DomGlobal.clearTimeout(intent.dwellTimer));
+    }
+
+    if (triggers.contains(Trigger.VIEWPORT) && !"undefined".equals(
+        Js.typeof(Js.asPropertyMap(DomGlobal.window).get("IntersectionObserver")))) {
+      IntersectionObserver observer = new IntersectionObserver((entries, ignored) -> {
+        for (int i = 0; i < entries.getLength(); i++) {
+          if (Js.isTruthy(entries.getAt(i).get("isIntersecting"))) {
+            intent.start();
+            return;
+          }
+        }
+      });
+      observer.observe(element);
+      intent.detachers.add(observer::disconnect);
+    }
+    return intent;
+  }
+
+  private void dwell(Intent intent) {
+    DomGlobal.clearTimeout(intent.dwellTimer);
+    intent.dwellTimer = DomGlobal.setTimeout(ignored -> intent.start(), dwellTime);
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import elemental2.dom.Element;
+import jsinterop.annotations.JsFunction;
+import jsinterop.annotations.JsPackage;
+import jsinterop.annotations.JsType;
+import jsinterop.base.JsArrayLike;
+import jsinterop.base.JsPropertyMap;
+
+/**
+ * Helper class for the IntersectionObserver API which is missing in
+ * elemental2-dom.
+ */
+@JsType(isNative = true, namespace = JsPackage.GLOBAL)
+class IntersectionObserver {
+
+  /**
+   * Invoked with the changed entries.
+   */
+  @JsFunction
+  interface ObserverCallback {
+    void onInvoke(JsArrayLike<JsPropertyMap<Object>> entries, IntersectionObserver observer);
+  }
+
+  IntersectionObserver(ObserverCallback callback) {
+  }
+
+  public native void observe(Element target);
+
+  public native void disconnect();
+}
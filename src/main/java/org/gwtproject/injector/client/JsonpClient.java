@@ -0,0 +1,230 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import elemental2.dom.DomGlobal;
+import jsinterop.base.Js;
+import jsinterop.base.JsPropertyMap;
+
+/**
+ * Client for JSONP endpoints built on {@link ScriptInjector.FromUrl}.
+ * <p>
+ * Unlike hand-written JSONP code, this client:
+ * <ul>
+ * <li>reuses a small pool of global callback names, all kept on a single
+ * registry object in the window, instead of leaking one function per
+ * request,</li>
+ * <li>limits the number of concurrent requests, queueing the rest,</li>
+ * <li>fails requests which do not complete within the timeout,</li>
+ * <li>always removes the script tag and the global callback,</li>
+ * <li>collapses identical in-flight requests into one.</li>
+ * </ul>
+ * Usage:
+ * <p>
+ * 
+ * <pre>
+ *   JsonpClient client = new JsonpClient().setTimeout(5000);
+ *   client.&lt;JsPropertyMap&lt;Object&gt;&gt;request("http://example.com/feed",
+ *       new Callback&lt;JsPropertyMap&lt;Object&gt;, Exception&gt;() {
+ *         ...
+ *       });
+ * </pre>
+ */
+public class JsonpClient {
+
+  /**
+   * Name of the global registry holding the callbacks of all clients.
+   */
+  static final String REGISTRY = "__gwt_jsonp__";
+
+  private static final List<String> freeNames = new ArrayList<>();
+  private static int nextName;
+
+  /**
+   * A single JSONP call, shared by all identical requests made while it is in
+   * flight.
+   */
+  private final class Request {
+    private final String url;
+    private final List<Callback<Object, Exception>> callbacks = new ArrayList<>();
+    private String name;
+    private Injection injection;
+    private double timer;
+    private boolean done;
+    private boolean released;
+    private boolean timedOut;
+
+    Request(String url) {
+      this.url = url;
+    }
+
+    void start() {
+      name = acquireName();
+      getRegistry().set(name, (JsonpFn) this::onData);
+
+      String separator = url.indexOf('?') < 0 ? "?" : "&";
+      String scriptUrl = url + separator + callbackParam + "=" + REGISTRY + "." + name;
+
+      timer = DomGlobal.setTimeout(ignored -> onTimeout(), timeout);
+      injection = ScriptInjector.fromUrl(scriptUrl).setRemoveTag(true).setCallback(
+          new Callback<Void, Exception>() {
+            @Override
+            public void onFailure(Exception reason) {
+              finish(null, reason);
+              if (!timedOut) {
+                release();
+              }
+            }
+
+            @Override
+            public void onSuccess(Void result) {
+              finish(null, new CodeDownloadException("JSONP response from " + url
+                  + " did not invoke the callback"));
+              release();
+            }
+          }).injectCancellable();
+    }
+
+    private void onData(Object data) {
+      finish(data, null);
+    }
+
+    private void onTimeout() {
+      if (done) {
+        return;
+      }
+      finish(null, new CodeDownloadException("JSONP request to " + url + " timed out"));
+
+      // The late response may still execute, keep a no-op until it does and
+      // don't hand out the name again before that
+      timedOut = true;
+      getRegistry().set(name, (JsonpFn) data -> release());
+      injection.cancel();
+    }
+
+    private void release() {
+      if (!released) {
+        released = true;
+        getRegistry().delete(name);
+        freeNames.add(name);
+      }
+    }
+
+    private void finish(Object data, Exception reason) {
+      if (done) {
+        return;
+      }
+      done = true;
+      DomGlobal.clearTimeout(timer);
+
+      inFlight.remove(url);
+      active--;
+      drainQueue();
+
+      for (Callback<Object, Exception> callback : callbacks) {
+        if (reason == null) {
+          callback.onSuccess(data);
+        } else {
+          callback.onFailure(reason);
+        }
+      }
+    }
+  }
+
+  private final Map<String, Request> inFlight = new HashMap<>();
+  private final LinkedList<Request> queue = new LinkedList<>();
+  private int active;
+
+  private String callbackParam = "callback";
+  private int maxConcurrentRequests = 4;
+  private int timeout = 10000;
+
+  /**
+   * Sends a JSONP request. If an identical request is already in flight or
+   * queued, the callback is attached to it instead of sending another one.
+   * 
+   * @param url URL of the endpoint, without the callback parameter
+   * @param callback callback that gets invoked asynchronously with the
+   *          response, or with {@link CodeDownloadException} on failure
+   */
+  public <T> void request(String url, Callback<T, Exception> callback) {
+    Request request = inFlight.get(url);
+    if (request == null) {
+      request = new Request(url);
+      inFlight.put(url, request);
+      queue.add(request);
+    }
+    request.callbacks.add(Js.uncheckedCast(callback));
+    drainQueue();
+  }
+
+  /**
+   * @param callbackParam name of the query parameter carrying the callback
+   *          name. Default value is {@code callback}.
+   */
+  public JsonpClient setCallbackParam(String callbackParam) {
+    this.callbackParam = callbackParam;
+    return this;
+  }
+
+  /**
+   * @param maxConcurrentRequests maximum number of script tags loading at the
+   *          same time. Default value is {@code 4}.
+   */
+  public JsonpClient setMaxConcurrentRequests(int maxConcurrentRequests) {
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    return this;
+  }
+
+  /**
+   * @param timeout number of milliseconds after which a request is failed.
+   *          Default value is {@code 10000}.
+   */
+  public JsonpClient setTimeout(int timeout) {
+    this.timeout = timeout;
+    return this;
+  }
+
+  private void drainQueue() {
+    while (active < maxConcurrentRequests && !queue.isEmpty()) {
+      active++;
+      queue.removeFirst().start();
+    }
+  }
+
+  private static String acquireName() {
+    if (!freeNames.isEmpty()) {
+      return freeNames.remove(freeNames.size() - 1);
+    }
+    return "c" + nextName++;
+  }
+
+  private static JsPropertyMap<Object> getRegistry() {
+    JsPropertyMap<Object> wnd = Js.asPropertyMap(ScriptInjector.currentWindow());
+    if (!wnd.has(REGISTRY)) {
+      wnd.set(REGISTRY, JsPropertyMap.of());
+    }
+    return Js.asPropertyMap(wnd.get(REGISTRY));
+  }
+}
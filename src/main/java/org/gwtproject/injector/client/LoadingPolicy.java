@@ -0,0 +1,190 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import elemental2.dom.DomGlobal;
+import jsinterop.base.Js;
+import jsinterop.base.JsPropertyMap;
+
+/**
+ * Adapts script loading to the network and the device.
+ * <p>
+ * Applications opt in by setting a policy, usually one created from
+ * {@code navigator.connection} and {@code navigator.deviceMemory}:
+ * <p>
+ * 
+ * <pre>
+ *   LoadingPolicy.set(LoadingPolicy.fromNavigator());
+ * </pre>
+ * <p>
+ * Without a policy, scripts load as declared: no lite variants, optional
+ * scripts load right away and downloads are not limited. The policy and the
+ * download queue are then left out of the compiled application. Injections
+ * declare how they may be adapted, see {@link ScriptInjector.FromUrl#setLiteUrl(String)} and
+ * {@link ScriptInjector.FromUrl#setOptional(boolean)}. The policy decides:
+ * <ul>
+ * <li>whether the lite variant of a script is loaded,</li>
+ * <li>whether optional scripts are dropped or deferred until the browser is
+ * idle,</li>
+ * <li>how many scripts download in parallel.</li>
+ * </ul>
+ * Tests and applications can replace the policy with {@link #set(LoadingPolicy)},
+ * either with fixed network conditions or with a subclass overriding the
+ * decisions.
+ */
+public class LoadingPolicy {
+
+  private static LoadingPolicy current;
+
+  /**
+   * @return the policy used by the injectors, {@code null} if none was set
+   */
+  public static LoadingPolicy get() {
+    return current;
+  }
+
+  /**
+   * Replaces the policy used by the injectors.
+   * 
+   * @param policy the new policy, {@code null} to load scripts as declared
+   */
+  public static void set(LoadingPolicy policy) {
+    current = policy;
+  }
+
+  /**
+   * Creates a policy from the network conditions reported by the browser.
+   * Unsupported values are treated as unknown.
+   */
+  public static LoadingPolicy fromNavigator() {
+    JsPropertyMap<Object> navigator = Js.asPropertyMap(DomGlobal.navigator);
+    JsPropertyMap<Object> connection = Js.asPropertyMap(navigator.has("connection")
+        ? navigator.get("connection") : JsPropertyMap.of());
+
+    Object effectiveType = connection.get("effectiveType");
+    return new LoadingPolicy(effectiveType == null ? null : Js.asString(effectiveType),
+        Js.isTruthy(connection.get("saveData")),
+        asNumber(connection.get("downlink")),
+        asNumber(navigator.get("deviceMemory")));
+  }
+
+  private static double asNumber(Object value) {
+    return "number".equals(Js.typeof(value)) ? Js.asDouble(value) : 0;
+  }
+
+  private final String effectiveType;
+  private final boolean saveData;
+  private final double downlink;
+  private final double deviceMemory;
+
+  /**
+   * @param effectiveType effective connection type, e.g. {@code "3g"}, or
+   *          {@code null} if unknown
+   * @param saveData whether the user asked for reduced data usage
+   * @param downlink estimated bandwidth in megabits per second, {@code 0} if
+   *          unknown
+   * @param deviceMemory approximate device memory in gigabytes, {@code 0} if
+   *          unknown
+   */
+  public LoadingPolicy(String effectiveType, boolean saveData, double downlink,
+      double deviceMemory) {
+    this.effectiveType = effectiveType;
+    this.saveData = saveData;
+    this.downlink = downlink;
+    this.deviceMemory = deviceMemory;
+  }
+
+  public String getEffectiveType() {
+    return effectiveType;
+  }
+
+  public boolean isSaveData() {
+    return saveData;
+  }
+
+  public double getDownlink() {
+    return downlink;
+  }
+
+  public double getDeviceMemory() {
+    return deviceMemory;
+  }
+
+  /**
+   * @return {@code true} on 3g or slower connections
+   */
+  public boolean isSlowConnection() {
+    return "slow-2g".equals(effectiveType) || "2g".equals(effectiveType)
+        || "3g".equals(effectiveType) || (downlink > 0 && downlink < 1.5);
+  }
+
+  /**
+   * @return {@code true} on devices with at most 1GB of memory
+   */
+  public boolean isLowMemory() {
+    return deviceMemory > 0 && deviceMemory <= 1;
+  }
+
+  /**
+   * @return {@code true} if the lite variant of a script should be loaded
+   */
+  public boolean preferLite() {
+    return saveData || isSlowConnection() || isLowMemory();
+  }
+
+  /**
+   * @return {@code true} if optional scripts should not be loaded at all
+   */
+  public boolean dropOptional() {
+    return saveData;
+  }
+
+  /**
+   * @return {@code true} if optional scripts should wait until the page has
+   *         loaded and the browser is idle
+   */
+  public boolean deferOptional() {
+    return isSlowConnection() || isLowMemory();
+  }
+
+  /**
+   * @return maximum number of scripts downloading in parallel
+   */
+  public int getMaxConcurrentDownloads() {
+    return saveData || isSlowConnection() ? 2 : Integer.MAX_VALUE;
+  }
+
+  /**
+   * @return milliseconds after which a download which has neither loaded nor
+   *         failed stops counting against
+   *         {@link #getMaxConcurrentDownloads()}, so a hung download does not
+   *         hold its slot forever. The download itself continues.
+   */
+  public int getDownloadSlotTimeout() {
+    return 10000;
+  }
+
+  /**
+   * Runs a task once the page has loaded and the browser is idle.
+   */
+  public void defer(Runnable task) {
+    if ("complete".equals(Js.asPropertyMap(DomGlobal.document).get("readyState"))) {
+      HasIdleCallback.schedule(task);
+    } else {
+      DomGlobal.window.addEventListener("load", e -> HasIdleCallback.schedule(task));
+    }
+  }
+}
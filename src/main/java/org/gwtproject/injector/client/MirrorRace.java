@@ -0,0 +1,205 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import elemental2.dom.Document;
+import elemental2.dom.DomGlobal;
+import elemental2.dom.HTMLLinkElement;
+import jsinterop.base.Js;
+import jsinterop.base.JsPropertyMap;
+
+/**
+ * Races the mirrors of a script as used by
+ * {@link ScriptInjector.FromUrl#setMirrors(String...)}.
+ * <p>
+ * Mirrors are downloaded with {@code <link rel="preload">} so that a losing
+ * download never executes. The preferred mirror starts first; every hedging
+ * delay without a winner, or immediately on an error, the next one starts in
+ * parallel. The first preload to finish wins and is then injected as a
+ * script, served from the preload cache. Removing the links of the losers
+ * only detaches their listeners: browsers keep fetching a preload once it
+ * started, so a lost race costs the bandwidth of every mirror started before
+ * the winner finished. Raise the hedging delay to trade latency for traffic.
+ * <p>
+ * The origin of the winner is remembered per origin of the primary URL, so
+ * later races start with the mirror that was fastest.
+ */
+class MirrorRace {
+
+  /**
+   * Attributes of the script which have to match on the preload link for the
+   * download to be reused.
+   */
+  private static final String[] LINK_ATTRIBUTES = {
+      "crossorigin", "fetchpriority", "integrity", "referrerpolicy"};
+
+  private static final Map<String, String> winners = new HashMap<>();
+
+  /**
+   * @return {@code true} if the document supports preload links
+   */
+  static boolean isSupported(Document doc) {
+    try {
+      Object relList = Js.asPropertyMap(doc.createElement("link")).get("relList");
+      return relList != null
+          && "function".equals(Js.typeof(Js.asPropertyMap(relList).get("supports")))
+          && Js.<HasSupports>uncheckedCast(relList).supports("preload");
+    } catch (RuntimeException e) {
+      // partial implementations throw instead of reporting no support
+      return false;
+    }
+  }
+
+  private static String origin(String url) {
+    return new DomUrl(url, DomGlobal.document.baseURI).origin;
+  }
+
+  private final JsPropertyMap<String> attributes;
+  private final Document doc;
+  private final List<String> urls = new ArrayList<>();
+  private final String primaryOrigin;
+  private final int hedgingDelay;
+  private final List<HTMLLinkElement> links = new ArrayList<>();
+  private Consumer<String> onWin;
+  private Consumer<Exception> onFail;
+  private double hedgeTimer;
+  private int failed;
+  private boolean done;
+
+  /**
+   * @param urls the primary URL followed by its mirrors
+   * @param hedgingDelay milliseconds to wait before starting the next mirror
+   * @param attributes attributes of the script element
+   */
+  MirrorRace(Document doc, List<String> urls, int hedgingDelay,
+      JsPropertyMap<String> attributes) {
+    this.attributes = attributes;
+    this.doc = doc;
+    this.hedgingDelay = hedgingDelay;
+    this.primaryOrigin = origin(urls.get(0));
+
+    String preferred = winners.get(primaryOrigin);
+    for (String url : urls) {
+      if (preferred != null && preferred.equals(origin(url))) {
+        this.urls.add(0, url);
+        preferred = null;
+      } else {
+        this.urls.add(url);
+      }
+    }
+  }
+
+  /**
+   * Starts the race.
+   * 
+   * @param onWin receives the URL of the first mirror which finished
+   * @param onFail receives a {@link CodeDownloadException} if all mirrors
+   *          failed
+   */
+  void start(Consumer<String> onWin, Consumer<Exception> onFail) {
+    this.onWin = onWin;
+    this.onFail = onFail;
+    startNext();
+  }
+
+  /**
+   * Stops hedging and removes all links. Downloads already running are not
+   * aborted, their results are ignored.
+   */
+  void dispose() {
+    done = true;
+    DomGlobal.clearTimeout(hedgeTimer);
+    for (HTMLLinkElement link : links) {
+      link.onload = null;
+      link.onerror = null;
+      if (link.parentNode != null) {
+        link.parentNode.removeChild(link);
+      }
+    }
+    links.clear();
+  }
+
+  private void startNext() {
+    DomGlobal.clearTimeout(hedgeTimer);
+    if (done || links.size() == urls.size()) {
+      return;
+    }
+
+    String url = urls.get(links.size());
+    HTMLLinkElement link = Js.uncheckedCast(doc.createElement("link"));
+    link.rel = "preload";
+    link.as = PreloadHints.SCRIPT;
+    link.onload = e -> {
+      win(link, url);
+      return null;
+    };
+    link.onerror = e -> {
+      fail();
+      return null;
+    };
+    for (String name : LINK_ATTRIBUTES) {
+      if (attributes.has(name)) {
+        link.setAttribute(name, attributes.get(name));
+      }
+    }
+    link.href = url;
+    links.add(link);
+    doc.head.appendChild(link);
+
+    if (links.size() < urls.size()) {
+      hedgeTimer = DomGlobal.setTimeout(ignored -> startNext(), hedgingDelay);
+    }
+  }
+
+  private void win(HTMLLinkElement winner, String url) {
+    if (done) {
+      return;
+    }
+    done = true;
+    DomGlobal.clearTimeout(hedgeTimer);
+    winners.put(primaryOrigin, origin(url));
+
+    // ignore the losers, their downloads still complete; the winner link
+    // stays until dispose()
+    for (HTMLLinkElement link : links) {
+      if (link != winner && link.parentNode != null) {
+        link.onload = null;
+        link.onerror = null;
+        link.parentNode.removeChild(link);
+      }
+    }
+    onWin.accept(url);
+  }
+
+  private void fail() {
+    if (done) {
+      return;
+    }
+    failed++;
+    if (failed == urls.size()) {
+      done = true;
+      onFail.accept(new CodeDownloadException("All mirrors failed for " + urls.get(0)));
+    } else {
+      startNext();
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import elemental2.dom.DomGlobal;
+import elemental2.dom.HTMLLinkElement;
+import jsinterop.base.Js;
+
+/**
+ * Emits {@code <link rel="preload">} hints into the head of the host page.
+ * Each URL is hinted at most once, so a later injection of the same URL
+ * reuses the download started by the hint.
+ */
+public class PreloadHints {
+
+  /**
+   * Destination of a preloaded script.
+   */
+  public static final String SCRIPT = "script";
+
+  /**
+   * Destination of a preloaded stylesheet.
+   */
+  public static final String STYLE = "style";
+
+  /**
+   * Destination of a preloaded font. Fonts are always fetched in CORS mode, so
+   * their hints need a {@code crossorigin} attribute to be reused.
+   */
+  public static final String FONT = "font";
+
+  /**
+   * Destination of a preloaded image.
+   */
+  public static final String IMAGE = "image";
+
+  private static final Set<String> hinted = new HashSet<>();
+
+  /**
+   * Hints the browser to start downloading a resource.
+   * 
+   * @param url URL of the resource
+   * @param as destination of the resource, e.g. {@link #SCRIPT}
+   * @return {@code false} if the URL has already been hinted
+   */
+  public static boolean preload(String url, String as) {
+    return preload(url, as, null);
+  }
+
+  /**
+   * Hints the browser to start downloading a resource in CORS mode.
+   * 
+   * @param url URL of the resource
+   * @param as destination of the resource, e.g. {@link #FONT}
+   * @param crossOrigin value of the {@code crossorigin} attribute, e.g.
+   *          {@code "anonymous"}, or {@code null} to omit it
+   * @return {@code false} if the URL has already been hinted
+   */
+  public static boolean preload(String url, String as, String crossOrigin) {
+    if (!hinted.add(url)) {
+      return false;
+    }
+
+    HTMLLinkElement link = Js.uncheckedCast(DomGlobal.document.createElement("link"));
+    link.rel = "preload";
+    link.as = as;
+    if (crossOrigin != null) {
+      link.setAttribute("crossorigin", crossOrigin);
+    }
+    link.href = url;
+    DomGlobal.document.head.appendChild(link);
+    return true;
+  }
+
+  /**
+   * @return {@code true} if the URL has already been hinted
+   */
+  public static boolean isPreloaded(String url) {
+    return hinted.contains(url);
+  }
+
+  /**
+   * Utility class.
+   */
+  private PreloadHints() {
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import java.util.function.Consumer;
+
+import elemental2.promise.Promise;
+import elemental2.promise.Promise.PromiseExecutorCallbackFn.RejectCallbackFn;
+import elemental2.promise.Promise.PromiseExecutorCallbackFn.ResolveCallbackFn;
+
+/**
+ * Adapts the callback based injection API to promises. The callback set on
+ * the builder, if any, is still invoked before the promise settles. The
+ * promise settles even if that callback throws.
+ */
+final class PromiseCallback<T> implements Callback<T, Exception> {
+
+  /**
+   * Creates a promise settled by the callback handed to {@code start}.
+   * 
+   * @param chained callback invoked as well, may be {@code null}
+   * @param start starts the injection with the given callback
+   */
+  static <T> Promise<T> promise(Callback<T, Exception> chained,
+      Consumer<Callback<T, Exception>> start) {
+    return new Promise<>((resolve, reject) ->
+        start.accept(new PromiseCallback<>(chained, resolve, reject)));
+  }
+
+  private final Callback<T, Exception> chained;
+  private final ResolveCallbackFn<T> resolve;
+  private final RejectCallbackFn reject;
+
+  private PromiseCallback(Callback<T, Exception> chained, ResolveCallbackFn<T> resolve,
+      RejectCallbackFn reject) {
+    this.chained = chained;
+    this.resolve = resolve;
+    this.reject = reject;
+  }
+
+  @Override
+  public void onFailure(Exception reason) {
+    try {
+      if (chained != null) {
+        chained.onFailure(reason);
+      }
+    } finally {
+      reject.onInvoke(reason);
+    }
+  }
+
+  @Override
+  public void onSuccess(T result) {
+    try {
+      if (chained != null) {
+        chained.onSuccess(result);
+      }
+    } finally {
+      resolve.onInvoke(result);
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import elemental2.dom.Document;
+import elemental2.dom.Element;
+import jsinterop.base.Js;
+
+/**
+ * Bounds the number of script elements kept in the document, see
+ * {@link ScriptInjector#setRetainedScriptLimit(int)}. Removed scripts are
+ * unregistered from {@link Hydration}.
+ * <p>
+ * Scripts may belong to the document the GWT code runs in, whose elements
+ * are not instances of the host page's {@code Element}, so they are read
+ * with unchecked casts.
+ * <p>
+ * The bookkeeping is only created once a limit is set, so applications
+ * keeping all scripts do not compile it in.
+ */
+class RetainedScripts {
+
+  private static RetainedScripts current;
+
+  static int getLimit() {
+    return current == null ? -1 : current.limit;
+  }
+
+  static void setLimit(int limit) {
+    if (limit < 0) {
+      current = null;
+      return;
+    }
+    if (current == null) {
+      current = new RetainedScripts();
+    }
+    current.limit = limit;
+    current.trim();
+  }
+
+  /**
+   * Keeps a script which ran, removing the oldest kept scripts above the
+   * limit. Does nothing without a limit.
+   */
+  static void retain(Element script) {
+    if (current != null) {
+      current.retained.add(script);
+      current.trim();
+    }
+  }
+
+  /**
+   * Removes a script which is not needed anymore, e.g. because it failed to
+   * load. Does nothing without a limit.
+   */
+  static void discard(Element script) {
+    if (current != null && script.parentNode != null) {
+      script.parentNode.removeChild(script);
+    }
+  }
+
+  /**
+   * Stops keeping the scripts of a document which is going away, e.g. the
+   * document of a released {@link Sandbox}.
+   */
+  static void forget(Document doc) {
+    if (current == null) {
+      return;
+    }
+    for (Iterator<Element> it = current.retained.iterator(); it.hasNext();) {
+      Element script = Js.uncheckedCast(it.next());
+      if (script.ownerDocument == doc) {
+        it.remove();
+      }
+    }
+  }
+
+  static int size() {
+    return current == null ? 0 : current.retained.size();
+  }
+
+  private final LinkedList<Element> retained = new LinkedList<>();
+  private int limit;
+
+  private void trim() {
+    while (retained.size() > limit) {
+      Element script = Js.uncheckedCast(retained.removeFirst());
+      if (script.parentNode != null) {
+        script.parentNode.removeChild(script);
+      }
+      Hydration.forget(script);
+    }
+  }
+
+  private RetainedScripts() {
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import elemental2.dom.HTMLIFrameElement;
+import elemental2.dom.Window;
+
+/**
+ * Lease of a frame of a {@link SandboxPool}. Scripts injected through the
+ * builders of the lease run in the frame, with their own globals.
+ * <p>
+ * {@link #release()} cancels the pending script downloads and evaluations
+ * and removes the frame, so the browser discards everything the scripts
+ * created. References
+ * from the page to objects of the frame keep them alive though, drop them
+ * before releasing.
+ */
+public final class Sandbox {
+
+  private HTMLIFrameElement frame;
+  private final InjectionGroup group = new InjectionGroup();
+
+  Sandbox(HTMLIFrameElement frame) {
+    this.frame = frame;
+  }
+
+  /**
+   * @return the window of the frame
+   * @throws IllegalStateException if the lease was released
+   */
+  public Window getWindow() {
+    checkLeased();
+    return frame.contentWindow;
+  }
+
+  /**
+   * Builds an injection of a script by URL into the frame. The injection
+   * is cancelled if it is still pending on release.
+   * 
+   * @param scriptUrl URL of the JavaScript to be injected.
+   * @return the builder
+   * @throws IllegalStateException if the lease was released
+   */
+  public ScriptInjector.FromUrl fromUrl(String scriptUrl) {
+    return ScriptInjector.fromUrl(scriptUrl).setWindow(getWindow()).setGroup(group);
+  }
+
+  /**
+   * Builds an injection of a script body into the frame. An evaluation which
+   * is still pending on release, e.g. because it was deferred with
+   * {@link TimeSlicing} or is being decompressed, is dropped and its callback
+   * fails.
+   * 
+   * @param scriptBody the script text to be injected and immediately executed.
+   * @return the builder
+   * @throws IllegalStateException if the lease was released
+   */
+  public ScriptInjector.FromString fromString(String scriptBody) {
+    return ScriptInjector.fromString(scriptBody).setWindow(getWindow()).setSandbox(this);
+  }
+
+  /**
+   * @return {@code true} once the lease was released
+   */
+  public boolean isReleased() {
+    return frame == null;
+  }
+
+  /**
+   * Cancels the pending injections and evaluations and removes the frame.
+   * Does nothing if the lease was already released.
+   */
+  public void release() {
+    if (frame == null) {
+      return;
+    }
+    group.cancelAll();
+    RetainedScripts.forget(frame.contentDocument);
+    if (frame.parentNode != null) {
+      frame.parentNode.removeChild(frame);
+    }
+    frame = null;
+  }
+
+  private void checkLeased() {
+    if (frame == null) {
+      throw new IllegalStateException("Sandbox was released");
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import java.util.LinkedList;
+
+import elemental2.dom.DomGlobal;
+import elemental2.dom.Element;
+import elemental2.dom.HTMLIFrameElement;
+import jsinterop.base.Js;
+
+/**
+ * Pool of hidden, same-origin iframes to run third-party scripts in
+ * isolation, see {@link Sandbox}.
+ * <p>
+ * The pool keeps the given number of frames ready, creating them one per
+ * idle callback, so leasing a frame does not cost the creation of a browsing
+ * context on the critical path. Releasing a lease removes its frame, which
+ * discards the globals, timers and listeners the scripts created in it:
+ * <p>
+ * 
+ * <pre>
+ *   SandboxPool pool = new SandboxPool(1);
+ *   ...
+ *   Sandbox sandbox = pool.lease();
+ *   sandbox.fromUrl("https://example.com/widget.js").injectAsync().then(...);
+ *   ...
+ *   sandbox.release();
+ * </pre>
+ */
+public class SandboxPool {
+
+  private final LinkedList<HTMLIFrameElement> idle = new LinkedList<>();
+  private int size;
+  private boolean warming;
+
+  /**
+   * Creates a pool and starts pre-warming its frames in idle time.
+   * 
+   * @param size number of frames kept ready
+   */
+  public SandboxPool(int size) {
+    this.size = size;
+    prewarm();
+  }
+
+  /**
+   * Leases a frame, pre-warmed if one is ready, created right away
+   * otherwise. The pool pre-warms a replacement in idle time.
+   * 
+   * @return the lease, release it once the scripts are not needed anymore
+   */
+  public Sandbox lease() {
+    HTMLIFrameElement frame = idle.isEmpty() ? createFrame() : idle.removeFirst();
+    prewarm();
+    return new Sandbox(frame);
+  }
+
+  /**
+   * @return number of frames ready to be leased
+   */
+  public int getIdleCount() {
+    return idle.size();
+  }
+
+  /**
+   * Removes the frames which are ready and stops pre-warming. Leased frames
+   * stay until released.
+   */
+  public void dispose() {
+    size = 0;
+    for (HTMLIFrameElement frame : idle) {
+      frame.parentNode.removeChild(frame);
+    }
+    idle.clear();
+  }
+
+  private void prewarm() {
+    if (!warming && idle.size() < size) {
+      warming = true;
+      HasIdleCallback.schedule(() -> {
+        warming = false;
+        if (idle.size() < size) {
+          idle.add(createFrame());
+          prewarm();
+        }
+      });
+    }
+  }
+
+  private static HTMLIFrameElement createFrame() {
+    HTMLIFrameElement frame = Js.uncheckedCast(DomGlobal.document.createElement("iframe"));
+    frame.style.display = "none";
+    frame.tabIndex = -1;
+    frame.setAttribute("aria-hidden", "true");
+    Element parent = DomGlobal.document.body != null ? DomGlobal.document.body
+        : DomGlobal.document.documentElement;
+    parent.appendChild(frame);
+    return frame;
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import elemental2.dom.XMLHttpRequest;
+
+/**
+ * A set of named script modules delivered in a single response and evaluated
+ * lazily.
+ * <p>
+ * A bundle is plain JavaScript text split into modules by header lines. Each
+ * header names the module and, optionally, the modules it depends on:
+ * <p>
+ * 
+ * <pre>
+ *   //# module editor
+ *   var Editor = ...;
+ *   //# module editor-toolbar editor
+ *   Editor.Toolbar = ...;
+ * </pre>
+ * <p>
+ * Text before the first header is ignored. Loading a bundle only splits the
+ * text into a registry; the body of a module is evaluated through
+ * {@link ScriptInjector.FromString} the first time it is required, after its
+ * dependencies.
+ * <p>
+ * Usage:
+ * <p>
+ * 
+ * <pre>
+ *   ScriptBundle.load("startup.bundle.js", new Callback&lt;ScriptBundle, Exception&gt;() {
+ *     public void onSuccess(ScriptBundle bundle) {
+ *       bundle.require("editor-toolbar");
+ *     }
+ *     ...
+ *   });
+ * </pre>
+ */
+public class ScriptBundle {
+
+  /**
+   * Prefix of the line starting a new module.
+   */
+  public static final String MODULE_HEADER = "//# module ";
+
+  /**
+   * A module of the bundle. The body is dropped once evaluated.
+   */
+  private static final class Module {
+    private final String[] dependencies;
+    private String body;
+    private boolean evaluated;
+    private boolean evaluating;
+
+    Module(String[] dependencies, String body) {
+      this.dependencies = dependencies;
+      this.body = body;
+    }
+  }
+
+  /**
+   * Downloads a bundle and splits it into modules. None of the modules is
+   * evaluated.
+   * 
+   * @param bundleUrl URL of the bundle, subject to the same origin policy
+   * @param callback callback that gets invoked asynchronously with the parsed
+   *          bundle, {@link Callback#onFailure(Object)} receives a
+   *          {@link CodeDownloadException}
+   */
+  public static void load(String bundleUrl, Callback<ScriptBundle, Exception> callback) {
+    XMLHttpRequest xhr = new XMLHttpRequest();
+    xhr.open("GET", bundleUrl);
+    xhr.onload = e -> {
+      if (xhr.status >= 200 && xhr.status < 300) {
+        callback.onSuccess(parse(xhr.responseText));
+      } else {
+        callback.onFailure(new CodeDownloadException("Failed to load " + bundleUrl + ": "
+            + xhr.status + " " + xhr.statusText));
+      }
+    };
+    xhr.onerror = e -> {
+      callback.onFailure(new CodeDownloadException("Failed to load " + bundleUrl));
+      return null;
+    };
+    xhr.send();
+  }
+
+  /**
+   * Splits bundle text into modules. None of the modules is evaluated.
+   * 
+   * @param bundleText the text of the bundle
+   */
+  public static ScriptBundle parse(String bundleText) {
+    ScriptBundle bundle = new ScriptBundle();
+
+    int start = headerIndex(bundleText, 0);
+    while (start >= 0) {
+      int headerEnd = bundleText.indexOf('\n', start);
+      if (headerEnd < 0) {
+        headerEnd = bundleText.length();
+      }
+      String[] names = bundleText.substring(start + MODULE_HEADER.length(), headerEnd)
+          .trim().split("\\s+");
+
+      int next = headerIndex(bundleText, headerEnd);
+      String body = bundleText.substring(Math.min(headerEnd + 1, bundleText.length()),
+          next < 0 ? bundleText.length() : next);
+
+      String[] dependencies = new String[names.length - 1];
+      System.arraycopy(names, 1, dependencies, 0, dependencies.length);
+      bundle.modules.put(names[0], new Module(dependencies, body));
+
+      start = next;
+    }
+    return bundle;
+  }
+
+  private static int headerIndex(String text, int from) {
+    int index = from;
+    while (true) {
+      index = text.indexOf(MODULE_HEADER, index);
+      if (index <= 0 || text.charAt(index - 1) == '\n') {
+        return index;
+      }
+      index += MODULE_HEADER.length();
+    }
+  }
+
+  private final Map<String, Module> modules = new LinkedHashMap<>();
+  private Object window;
+
+  private ScriptBundle() {
+  }
+
+  /**
+   * @return {@code true} if the bundle contains a module with the given name
+   */
+  public boolean contains(String name) {
+    return modules.containsKey(name);
+  }
+
+  /**
+   * @return {@code true} if the module has already been evaluated
+   */
+  public boolean isEvaluated(String name) {
+    Module module = modules.get(name);
+    return module != null && module.evaluated;
+  }
+
+  /**
+   * @return names of all modules in bundle order
+   */
+  public Set<String> getModuleNames() {
+    return Collections.unmodifiableSet(modules.keySet());
+  }
+
+  /**
+   * Evaluates a module and its dependencies unless already evaluated. The
+   * module is available immediately when this call returns.
+   * 
+   * @param name the name of the module
+   * @throws IllegalArgumentException if the bundle contains no such module or
+   *           no module the module depends on. Nothing is evaluated then.
+   */
+  public void require(String name) {
+    Module module = modules.get(name);
+    if (module == null) {
+      throw new IllegalArgumentException("Unknown module " + name);
+    }
+    if (module.evaluated) {
+      return;
+    }
+    checkDependencies(name, module, new HashSet<>());
+    evaluate(module);
+  }
+
+  /**
+   * Checks that all modules a module transitively depends on are in the
+   * bundle.
+   */
+  private void checkDependencies(String name, Module module, Set<String> checked) {
+    for (String dependency : module.dependencies) {
+      Module required = modules.get(dependency);
+      if (required == null) {
+        throw new IllegalArgumentException("Unknown module " + dependency + " required by "
+            + name);
+      }
+      if (!required.evaluated && checked.add(dependency)) {
+        checkDependencies(dependency, required, checked);
+      }
+    }
+  }
+
+  private void evaluate(Module module) {
+    if (module.evaluated || module.evaluating) {
+      // evaluating: a dependency cycle, the module is evaluated once it returns
+      return;
+    }
+    module.evaluating = true;
+    try {
+      for (String dependency : module.dependencies) {
+        evaluate(modules.get(dependency));
+      }
+      ScriptInjector.fromString(module.body).setWindow(window).setSynchronous(true).inject();
+    } finally {
+      module.evaluating = false;
+    }
+    module.evaluated = true;
+    module.body = null;
+  }
+
+  /**
+   * This call allows you to specify which DOM window object to evaluate the
+   * modules in, see {@link ScriptInjector.FromString#setWindow(Object)}.
+   * 
+   * @param window Specifies which window to install in.
+   */
+  public ScriptBundle setWindow(Object window) {
+    this.window = window;
+    return this;
+  }
+}
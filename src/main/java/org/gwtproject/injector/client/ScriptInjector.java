@@ -17,13 +17,21 @@ package org.gwtproject.injector.client;
 
 import org.gwtproject.callback.shared.Callback;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import elemental2.dom.Document;
 import elemental2.dom.DomGlobal;
 import elemental2.dom.ErrorEvent;
 import elemental2.dom.HTMLScriptElement;
+import elemental2.dom.Response;
 import elemental2.dom.Window;
+import elemental2.promise.Promise;
 import jsinterop.annotations.JsProperty;
 import jsinterop.base.Js;
+import jsinterop.base.JsPropertyMap;
 
 /**
  * Dynamically create a script tag and attach it to the DOM.
@@ -51,11 +59,23 @@ import jsinterop.base.Js;
  *     }).inject();
  * </pre>
  * <p>
+ * Every builder also offers {@code injectAsync()} returning a
+ * {@link Promise}, to compose parallel loads or fallbacks with
+ * {@link Promise#all} and {@link Promise#race}.
+ * <p>
  * NOTE: This class uses {@link Js#uncheckedCast(Object)} because
  * elemental2 types all assume &lt;global>/$wnd as a namespace and
  * this class uses both &lt;global> and &lt;window>
  */
 public class ScriptInjector {
+
+  /**
+   * Set with {@link #setDefaultEvaluationStrategy}, {@code null} for
+   * {@link EvaluationStrategy#SCRIPT_ELEMENT}.
+   */
+  private static EvaluationStrategy defaultEvaluationStrategy;
+
+  private static WorkerPool workerPool;
   
   @JsProperty(namespace = "<window>", name = "self")
   static native Window currentWindow();
@@ -64,9 +84,26 @@ public class ScriptInjector {
    * Builder for directly injecting a script body into the DOM.
    */
   public static class FromString {
+    /**
+     * Evaluation of the last compressed script, to evaluate them in order.
+     */
+    private static Promise<Object> decompressed;
+
+    private Callback<Void, Exception> callback;
+    private String compression;
+    /**
+     * The registry while dedupe is on, {@code null} otherwise.
+     */
+    private Hydration registry;
+    private boolean deferred;
+    private EvaluationStrategy evaluationStrategy;
     private boolean removeTag = true;
+    private Sandbox sandbox;
     private final String scriptBody;
+    private boolean synchronous;
     private Window window;
+    private WorkerPool worker;
+    private String workerAffinity;
 
     /**
      * @param scriptBody The script text to install into the document.
@@ -76,16 +113,91 @@ public class ScriptInjector {
     }
 
     /**
-     * Injects a script into the DOM. The JavaScript is evaluated and will be
-     * available immediately when this call returns.
+     * Injects a script into the DOM. By default, the JavaScript is evaluated
+     * and will be available immediately when this call returns.
      * 
      * By default, the script is installed in the same window that the GWT code
      * is installed in.
+     * <p>
+     * If a worker pool was specified, the script is evaluated asynchronously in
+     * one of its workers instead and {@code null} is returned. A script
+     * {@link #setDeferred(boolean) deferred} with {@link TimeSlicing} enabled
+     * is evaluated in a later task and {@code null} is returned as well, and
+     * the {@link EvaluationStrategy#BLOB_URL} strategy evaluates it once
+     * loaded.
      * 
      * @return the script element created for the injection. Note that it may be
      *         removed from the DOM.
      */
     public <T> T inject() {
+      return inject(callback);
+    }
+
+    /**
+     * Injects the script like {@link #inject()} and returns a promise which
+     * resolves once the script has been evaluated. A callback set with
+     * {@link #setCallback(Callback)} is invoked as well.
+     * 
+     * @return the promise of the evaluation.
+     */
+    public Promise<Void> injectAsync() {
+      return PromiseCallback.promise(callback, this::inject);
+    }
+
+    private <T> T inject(Callback<Void, Exception> callback) {
+      if (compression == null) {
+        return evaluate(scriptBody, callback);
+      }
+
+      if (synchronous || !CompressedPayload.isStreamSupported()) {
+        String body;
+        try {
+          body = CompressedPayload.decodeSync(scriptBody, compression);
+        } catch (IllegalArgumentException e) {
+          if (callback != null) {
+            callback.onFailure(e);
+          }
+          return null;
+        }
+        return evaluate(body, callback);
+      }
+
+      Promise<String> decoded = CompressedPayload.decode(scriptBody, compression);
+      Promise<String> ordered = decompressed == null ? decoded
+          : decompressed.then(ignored -> decoded);
+      decompressed = ordered.then(body -> {
+        evaluate(body, callback);
+        return null;
+      }, error -> {
+        if (callback != null) {
+          callback.onFailure(toException(error));
+        }
+        return null;
+      });
+      return null;
+    }
+
+    private <T> T evaluate(String body, Callback<Void, Exception> callback) {
+      if (worker != null) {
+        worker.evaluate(body, workerAffinity, callback);
+        return null;
+      }
+      if (deferred && !synchronous && TimeSlicing.isEnabled()) {
+        TimeSlicing.run(() -> evaluateNow(body, callback));
+        return null;
+      }
+      return evaluateNow(body, callback);
+    }
+
+    private <T> T evaluateNow(String body, Callback<Void, Exception> callback) {
+      if (sandbox != null && sandbox.isReleased()) {
+        if (callback != null) {
+          callback.onFailure(new CodeDownloadException("Sandbox was released",
+              CodeDownloadException.Reason.TERMINATED));
+        }
+        return null;
+      }
+
       Window wnd = (window == null) ? currentWindow() : window;
       assert wnd != null;
       
@@ -93,19 +205,103 @@ public class ScriptInjector {
       Document doc = hasDoc.document;
       assert doc != null;
       
-      HTMLScriptElement scriptElement = Js.uncheckedCast(doc.createElement("script"));
-      assert scriptElement != null;
-      
-      scriptElement.text = scriptBody;
-      doc.head.appendChild(scriptElement);
-      
-      if (removeTag) {
-        scriptElement.parentNode.removeChild(scriptElement);
+      String id = null;
+      if (registry != null && !removeTag && wnd == currentWindow()) {
+        id = Hydration.idOf(body);
+        if (registry.isInjected(id, body)) {
+          if (callback != null) {
+            callback.onSuccess(null);
+          }
+          return Js.uncheckedCast(Hydration.find(doc, id, body));
+        }
+      }
+
+      EvaluationStrategy strategy = evaluationStrategy == null ? defaultEvaluationStrategy
+          : evaluationStrategy;
+      if (strategy == null || synchronous && !strategy.isSynchronous()) {
+        strategy = EvaluationStrategy.SCRIPT_ELEMENT;
+      }
+      HTMLScriptElement scriptElement = strategy.evaluate(wnd, body, removeTag, callback);
+      if (id != null && scriptElement != null) {
+        Hydration.mark(scriptElement, id);
+        if (scriptElement.parentNode != null) {
+          // unless already removed by the retained script limit
+          registry.register(id, null);
+        }
       }
-      
       return Js.uncheckedCast(scriptElement);
     }
 
+    /**
+     * Specify a callback to be invoked when the script has been evaluated. When
+     * injecting into a window the callback is invoked before {@link #inject()}
+     * returns, unless the {@link EvaluationStrategy#BLOB_URL} strategy is
+     * used. When injecting into a worker it is invoked asynchronously and
+     * {@link Callback#onFailure(Object)} receives a
+     * {@link CodeDownloadException} if the evaluation threw.
+     * 
+     * @param callback callback that gets invoked after evaluation.
+     */
+    public FromString setCallback(Callback<Void, Exception> callback) {
+      this.callback = callback;
+      return this;
+    }
+
+    /**
+     * Treats the script body as a compressed payload, see
+     * {@link CompressedPayload}. Where {@code DecompressionStream} is
+     * available the script is decompressed and evaluated asynchronously and
+     * {@link #inject()} returns {@code null}. Compressed scripts are evaluated
+     * in the order they were injected.
+     * 
+     * @param compression one of {@link CompressedPayload#GZIP},
+     *          {@link CompressedPayload#DEFLATE} or
+     *          {@link CompressedPayload#DEFLATE_RAW}. Default value is
+     *          {@code null}, i.e. the body is plain JavaScript.
+     */
+    public FromString setCompression(String compression) {
+      this.compression = compression;
+      return this;
+    }
+
+    /**
+     * @param evaluationStrategy how to evaluate the script in a window.
+     *          Default value is {@code null}, i.e. the strategy set with
+     *          {@link ScriptInjector#setDefaultEvaluationStrategy}.
+     */
+    public FromString setEvaluationStrategy(EvaluationStrategy evaluationStrategy) {
+      this.evaluationStrategy = evaluationStrategy;
+      return this;
+    }
+
+    /**
+     * @param deferred If true and {@link TimeSlicing} is enabled, the script is
+     *          evaluated in a later task, within the time slicing budget and
+     *          after the deferred scripts injected before it, and
+     *          {@link #inject()} returns {@code null}. Scripts which are not
+     *          deferred are evaluated right away, regardless of the budget.
+     * 
+     *          Default value is {@code false}.
+     */
+    public FromString setDeferred(boolean deferred) {
+      this.deferred = deferred;
+      return this;
+    }
+
+    /**
+     * @param dedupe If true and the tag is kept, the script is registered with
+     *          {@link Hydration} and injecting the same source again only
+     *          invokes the callback, as long as the first element is still in
+     *          the document. Evaluation strategies which create no script
+     *          element are not deduplicated.
+     * 
+     *          Default value is {@code false}.
+     */
+    public FromString setDedupe(boolean dedupe) {
+      this.registry = dedupe ? Hydration.registry() : null;
+      return this;
+    }
+
     /**
      * @param removeTag If true, remove the tag immediately after injecting the
      *          source. This shrinks the DOM, possibly at the expense of
@@ -118,6 +314,21 @@ public class ScriptInjector {
       return this;
     }
 
+    /**
+     * @param synchronous If true, the script is evaluated before
+     *          {@link #inject()} returns, regardless of
+     *          {@link #setDeferred(boolean)}, the compression and the
+     *          evaluation strategy. An asynchronous
+     *          strategy is replaced by {@link EvaluationStrategy#SCRIPT_ELEMENT}.
+     *          Has no effect when injecting into a worker.
+     * 
+     *          Default value is {@code false}.
+     */
+    public FromString setSynchronous(boolean synchronous) {
+      this.synchronous = synchronous;
+      return this;
+    }
+
     /**
      * <b>NOTE:</b> Previously this method accepted JavaScriptObject. The signature
      * changed to Object to remove dependency and keep it compatible with
@@ -129,6 +340,9 @@ public class ScriptInjector {
      * <code>
      *   builder.setWindow(ScriptInjector.TOP_WINDOW);
      * </code>
+     * <p>
+     * To isolate a script in a frame which is discarded afterwards, use a
+     * {@link SandboxPool}.
      * 
      * @param window Specifies which window to install in.
      */
@@ -136,16 +350,73 @@ public class ScriptInjector {
       this.window = (Window) window;
       return this;
     }
+
+    /**
+     * This call allows you to evaluate the script in a dedicated worker instead
+     * of a DOM window. To use the shared pool call
+     * <p>
+     * <code>
+     *   builder.setWorker(ScriptInjector.getWorkerPool());
+     * </code>
+     * 
+     * @param worker Specifies which worker pool to evaluate in, {@code null}
+     *          to inject into a window.
+     */
+    public FromString setWorker(WorkerPool worker) {
+      this.worker = worker;
+      return this;
+    }
+
+    /**
+     * @param workerAffinity Key of the worker to run in when injecting into
+     *          a worker pool. Scripts injected with the same key run in the
+     *          same worker, e.g. a library and the code using it. Default
+     *          value is {@code null}, i.e. the least busy worker.
+     */
+    public FromString setWorkerAffinity(String workerAffinity) {
+      this.workerAffinity = workerAffinity;
+      return this;
+    }
+
+    /**
+     * Ties the injection to the lease of a sandbox frame: once it has been
+     * released, evaluations still pending, e.g. because they were deferred
+     * or are being decompressed, are dropped and the callback
+     * fails with {@link CodeDownloadException.Reason#TERMINATED}.
+     */
+    FromString setSandbox(Sandbox sandbox) {
+      this.sandbox = sandbox;
+      return this;
+    }
   }
 
   /**
    * Build an injection call for adding a script by URL.
    */
   public static class FromUrl {
+    private Boolean async;
+    /**
+     * A native object rather than a map, which would pull the collection
+     * classes into every application injecting a script.
+     */
+    private final JsPropertyMap<String> attributes = Js.uncheckedCast(JsPropertyMap.of());
     private Callback<Void, Exception> callback;
+    /**
+     * The registry while dedupe is on, {@code null} otherwise.
+     */
+    private Hydration registry;
+    private Boolean defer;
+    private InjectionGroup group;
+    private int hedgingDelay = 1000;
+    private String liteUrl;
+    private String[] mirrorUrls;
+    private boolean optional;
     private boolean removeTag = false;
     private final String scriptUrl;
+    private boolean startup;
     private Window window;
+    private WorkerPool worker;
+    private String workerAffinity;
 
     private FromUrl(String scriptUrl) {
       this.scriptUrl = scriptUrl;
@@ -154,37 +425,181 @@ public class ScriptInjector {
     /**
      * Injects an external JavaScript reference into the document and optionally
      * calls a callback when it finishes loading.
+     * <p>
+     * If a worker pool was specified, the script is loaded with
+     * {@code importScripts} in one of its workers instead and {@code null} is
+     * returned.
+     * <p>
+     * The {@link LoadingPolicy}, if one is set, may delay appending the element
+     * to the document, or skip an optional script altogether, in which case
+     * {@code null} is returned.
+     * <p>
+     * The script, lite and mirror URLs are resolved against the
+     * {@link AssetManifest} first.
      * 
      * @return the script element created for the injection.
      */
     public <T> T inject() {
+      return injectCancellable().getElement();
+    }
+
+    /**
+     * Injects the script like {@link #inject()} and returns a handle which
+     * can be used to cancel the injection.
+     * 
+     * @return the handle of the injection.
+     */
+    public Injection injectCancellable() {
+      return inject(callback);
+    }
+
+    /**
+     * Injects the script like {@link #inject()} and returns a promise which
+     * resolves once the script is loaded. A callback set with
+     * {@link #setCallback(Callback)} is invoked as well.
+     * <p>
+     * Promises make parallel loads easy to express:
+     * <p>
+     * 
+     * <pre>
+     *   Promise.all(ScriptInjector.fromUrl("a.js").injectAsync(),
+     *       ScriptInjector.fromUrl("b.js").injectAsync()).then(...);
+     * </pre>
+     * 
+     * @return the promise of the load, rejected with
+     *         {@link CodeDownloadException} on failure.
+     */
+    public Promise<Void> injectAsync() {
+      return PromiseCallback.promise(callback, this::inject);
+    }
+
+    /**
+     * Prepares the script as part of a transaction. Its element is appended
+     * to the fragment of the transaction instead of the document, bypassing
+     * the download queue and mirror racing.
+     */
+    Injection inject(InjectionTransaction transaction) {
+      return inject(transaction.defer(callback), transaction);
+    }
+
+    /**
+     * Injects the script with the given callback instead of the one set with
+     * {@link #setCallback(Callback)}, e.g. for an {@link IntentLoader.Intent}
+     * which holds it back until committed.
+     */
+    Injection inject(Callback<Void, Exception> callback) {
+      return inject(callback, null);
+    }
+
+    Callback<Void, Exception> getCallback() {
+      return callback;
+    }
+
+    private Injection inject(Callback<Void, Exception> callback,
+        InjectionTransaction transaction) {
+      LoadingPolicy policy = LoadingPolicy.get();
+      if (optional && policy != null && policy.dropOptional()) {
+        Injection skipped = new Injection(null, callback);
+        skipped.asCallback().onFailure(new CodeDownloadException(
+            "Skipped optional script " + scriptUrl, CodeDownloadException.Reason.SKIPPED));
+        return skipped;
+      }
+      boolean lite = liteUrl != null && policy != null && policy.preferLite();
+      String resolvedUrl = AssetManifest.resolve(scriptUrl);
+      String url = lite ? AssetManifest.resolve(liteUrl) : resolvedUrl;
+
+      if (worker != null) {
+        Injection injection = new Injection(null, callback);
+        addToGroup(injection);
+        worker.importScripts(url, workerAffinity, injection.asCallback());
+        return injection;
+      }
+
       Window wnd = (window == null) ? currentWindow() : window;
       assert wnd != null;
       
       HasDocument hasDoc = Js.uncheckedCast(wnd);
       Document doc = hasDoc.document;
       assert doc != null;
+
+      if (startup && wnd == currentWindow()) {
+        StartupProfile.recordScript(url, attributes.get("crossorigin"));
+      }
       
+      String id = null;
+      if (registry != null && !removeTag && wnd == currentWindow()) {
+        id = Hydration.idOf(resolvedUrl);
+        if (registry.isInjected(id, resolvedUrl)) {
+          Injection injected = new Injection(Js.uncheckedCast(Hydration.find(doc, id)), callback);
+          injected.asCallback().onSuccess(null);
+          return injected;
+        }
+      }
+
       HTMLScriptElement scriptElement = Js.uncheckedCast(doc.createElement("script"));
       assert scriptElement != null;
       
-      if (callback != null || removeTag) {
-        attachListeners(scriptElement, callback, removeTag);
+      if (id != null) {
+        Hydration.mark(scriptElement, id);
+        callback = registerOnSuccess(registry, id, resolvedUrl, scriptElement, callback);
       }
+      Injection injection = new Injection(scriptElement, callback);
+      addToGroup(injection);
+      attachListeners(scriptElement, injection.asCallback(), removeTag);
+      applyAttributes(scriptElement);
       
-      scriptElement.src = scriptUrl;
-      doc.head.appendChild(scriptElement);
+      if (transaction != null) {
+        scriptElement.src = url;
+        transaction.fragmentFor(doc).appendChild(scriptElement);
+        return injection;
+      }
+
+      if (!lite && mirrorUrls != null && mirrorUrls.length > 0
+          && MirrorRace.isSupported(doc)) {
+        List<String> urls = new ArrayList<>();
+        urls.add(resolvedUrl);
+        for (String mirrorUrl : mirrorUrls) {
+          urls.add(AssetManifest.resolve(mirrorUrl));
+        }
+        injection.setRace(new MirrorRace(doc, urls, hedgingDelay, attributes));
+      } else {
+        scriptElement.src = url;
+      }
+      injection.enqueue(doc, optional && policy != null && policy.deferOptional());
       
-      return Js.uncheckedCast(scriptElement);
+      return injection;
+    }
+
+    /**
+     * @param async If false, the script executes in insertion order relative
+     *          to other scripts injected with {@code async} false. Dynamically
+     *          injected scripts are async by default.
+     */
+    public FromUrl setAsync(boolean async) {
+      this.async = async;
+      return this;
+    }
+
+    /**
+     * Sets an attribute on the script element before it is appended to the
+     * document, so it can affect how the browser schedules the request.
+     * 
+     * @param name name of the attribute
+     * @param value value of the attribute
+     */
+    public FromUrl setAttribute(String name, String value) {
+      attributes.set(name, value);
+      return this;
     }
 
     /**
      * Specify a callback to be invoked when the script is loaded or loading
      * encounters an error.
      * <p>
-     * <b>Warning:</b> This class <b>does not</b> control whether or not a URL
-     * has already been injected into the document. The client of this class has
-     * the responsibility of keeping score of the injected JavaScript files.
+     * <b>Warning:</b> Unless {@link #setDedupe(boolean)} is set, this class
+     * <b>does not</b> control whether or not a URL has already been injected
+     * into the document. The client of this class has the responsibility of
+     * keeping score of the injected JavaScript files.
      * <p>
      * <b>Known bugs:</b>  This class uses the script tag's <code>onerror()
      * </code> callback to attempt to invoke onFailure() if the 
@@ -207,6 +622,125 @@ public class ScriptInjector {
       return this;
     }
 
+    /**
+     * @param crossOrigin CORS mode of the request, {@code "anonymous"} or
+     *          {@code "use-credentials"}. Needed to share CORS cache entries
+     *          and to get error details from cross origin scripts.
+     */
+    public FromUrl setCrossOrigin(String crossOrigin) {
+      return setAttribute("crossorigin", crossOrigin);
+    }
+
+    /**
+     * @param dedupe If true and the tag is kept, the script is registered with
+     *          {@link Hydration} once loaded and injecting the same URL again
+     *          only invokes the callback, as long as the first element is
+     *          still in the document.
+     * 
+     *          Default value is {@code false}.
+     */
+    public FromUrl setDedupe(boolean dedupe) {
+      this.registry = dedupe ? Hydration.registry() : null;
+      return this;
+    }
+
+    /**
+     * @param defer If true, the script executes after the document has been
+     *          parsed.
+     */
+    public FromUrl setDefer(boolean defer) {
+      this.defer = defer;
+      return this;
+    }
+
+    /**
+     * @param fetchPriority Priority hint of the request, {@code "high"},
+     *          {@code "low"} or {@code "auto"}.
+     */
+    public FromUrl setFetchPriority(String fetchPriority) {
+      return setAttribute("fetchpriority", fetchPriority);
+    }
+
+    /**
+     * @param group Group the injection is added to, so it can be cancelled
+     *          together with other injections. Default value is {@code null}.
+     */
+    public FromUrl setGroup(InjectionGroup group) {
+      this.group = group;
+      return this;
+    }
+
+    /**
+     * @param hedgingDelay Number of milliseconds to wait for a mirror before
+     *          starting the next one in parallel, see
+     *          {@link #setMirrors(String...)}. Default value is {@code 1000}.
+     */
+    public FromUrl setHedgingDelay(int hedgingDelay) {
+      this.hedgingDelay = hedgingDelay;
+      return this;
+    }
+
+    /**
+     * @param integrity Subresource integrity metadata, e.g.
+     *          {@code "sha384-..."}. Requires {@link #setCrossOrigin(String)}
+     *          for cross origin scripts.
+     */
+    public FromUrl setIntegrity(String integrity) {
+      return setAttribute("integrity", integrity);
+    }
+
+    /**
+     * @param liteUrl URL of a smaller variant of the script, loaded instead
+     *          when a {@link LoadingPolicy} is set and
+     *          {@link LoadingPolicy#preferLite() prefers lite scripts}. Default
+     *          value is {@code null}.
+     */
+    public FromUrl setLiteUrl(String liteUrl) {
+      this.liteUrl = liteUrl;
+      return this;
+    }
+
+    /**
+     * Specify mirrors serving the same script, e.g. on other CDNs, tried after
+     * the primary URL.
+     * <p>
+     * The primary is downloaded first. If it has not loaded within the hedging
+     * delay, or fails, the next mirror is started in parallel. The first one
+     * to load is injected; the others still finish downloading but are
+     * ignored, so every started mirror costs bandwidth. The winning mirror is
+     * remembered so later loads from the same origin try it first.
+     * <p>
+     * The race uses preload links and so does not execute a script twice.
+     * Where preload is not supported, only the primary URL is loaded.
+     * 
+     * @param mirrorUrls URLs of the mirrors, in order of preference.
+     */
+    public FromUrl setMirrors(String... mirrorUrls) {
+      this.mirrorUrls = mirrorUrls;
+      return this;
+    }
+
+    /**
+     * @param optional If true, the script is not needed for the application to
+     *          work. If a {@link LoadingPolicy} is set, depending on it the
+     *          script is loaded once the browser is idle or not at all,
+     *          failing with {@link CodeDownloadException.Reason#SKIPPED}.
+     * 
+     *          Default value is {@code false}.
+     */
+    public FromUrl setOptional(boolean optional) {
+      this.optional = optional;
+      return this;
+    }
+
+    /**
+     * @param referrerPolicy Referrer policy of the request, e.g.
+     *          {@code "no-referrer"}.
+     */
+    public FromUrl setReferrerPolicy(String referrerPolicy) {
+      return setAttribute("referrerpolicy", referrerPolicy);
+    }
+
     /**
      * @param removeTag If true, remove the tag after the script finishes
      *          loading. This shrinks the DOM, possibly at the expense of
@@ -220,6 +754,21 @@ public class ScriptInjector {
       return this;
     }
 
+    /**
+     * @param startup If true, the script is part of the startup of the
+     *          application: while a {@link StartupProfile} is recording, it is
+     *          recorded with its {@code crossorigin} attribute and pre-warmed
+     *          on the next boot. Only scripts injected into the window the GWT
+     *          code runs in are recorded, not those loaded in a worker or
+     *          another window.
+     * 
+     *          Default value is {@code false}.
+     */
+    public FromUrl setStartup(boolean startup) {
+      this.startup = startup;
+      return this;
+    }
+
     /**
      * <b>NOTE:</b> Previously this method accepted JavaScriptObject. The signature
      * changed to Object to remove dependency and keep it compatible with
@@ -231,6 +780,9 @@ public class ScriptInjector {
      * <code>
      *   builder.setWindow(ScriptInjector.TOP_WINDOW);
      * </code>
+     * <p>
+     * To isolate a script in a frame which is discarded afterwards, use a
+     * {@link SandboxPool}.
      * 
      * @param window Specifies which window to install in.
      */
@@ -238,6 +790,246 @@ public class ScriptInjector {
       this.window = Js.uncheckedCast(window);
       return this;
     }
+
+    /**
+     * This call allows you to load the script in a dedicated worker instead
+     * of a DOM window. To use the shared pool call
+     * <p>
+     * <code>
+     *   builder.setWorker(ScriptInjector.getWorkerPool());
+     * </code>
+     * 
+     * @param worker Specifies which worker pool to load in, {@code null} to
+     *          inject into a window.
+     */
+    public FromUrl setWorker(WorkerPool worker) {
+      this.worker = worker;
+      return this;
+    }
+
+    /**
+     * @param workerAffinity Key of the worker to run in when injecting into
+     *          a worker pool. Scripts injected with the same key run in the
+     *          same worker, e.g. a library and the code using it. Default
+     *          value is {@code null}, i.e. the least busy worker.
+     */
+    public FromUrl setWorkerAffinity(String workerAffinity) {
+      this.workerAffinity = workerAffinity;
+      return this;
+    }
+
+    /**
+     * Registers the script with {@link Hydration} once it has loaded, so a
+     * failed load can be retried. Scripts already removed by the retained
+     * script limit are not registered.
+     */
+    private static Callback<Void, Exception> registerOnSuccess(Hydration registry, String id,
+        String url, HTMLScriptElement scriptElement, Callback<Void, Exception> callback) {
+      return new Callback<Void, Exception>() {
+        @Override
+        public void onFailure(Exception reason) {
+          if (callback != null) {
+            callback.onFailure(reason);
+          }
+        }
+
+        @Override
+        public void onSuccess(Void result) {
+          if (scriptElement.parentNode != null) {
+            registry.register(id, url);
+          }
+          if (callback != null) {
+            callback.onSuccess(result);
+          }
+        }
+      };
+    }
+
+    private void applyAttributes(HTMLScriptElement scriptElement) {
+      if (async != null) {
+        Js.asPropertyMap(scriptElement).set("async", async.booleanValue());
+      }
+      if (defer != null) {
+        scriptElement.defer = defer;
+      }
+      attributes.forEach(name -> scriptElement.setAttribute(name, attributes.get(name)));
+    }
+
+    private void addToGroup(Injection injection) {
+      if (group != null) {
+        group.add(injection);
+      }
+    }
+  }
+
+  /**
+   * Build an injection call for compiling and instantiating a WebAssembly
+   * module by URL.
+   * <p>
+   * Compilation uses {@code WebAssembly.compileStreaming} so it overlaps with
+   * the download. If the server does not send the {@code application/wasm}
+   * MIME type, the module is compiled from an array buffer instead. Compiled
+   * modules are cached per URL, so repeated injections only instantiate.
+   */
+  public static class FromWasmUrl {
+    private static final Map<String, Promise<Object>> modules = new HashMap<>();
+
+    private Callback<WasmInstance, Exception> callback;
+    private Object imports;
+    private final String wasmUrl;
+
+    private FromWasmUrl(String wasmUrl) {
+      this.wasmUrl = wasmUrl;
+    }
+
+    /**
+     * Downloads, compiles and instantiates the module and calls the callback
+     * when done.
+     */
+    public void inject() {
+      inject(callback);
+    }
+
+    /**
+     * Injects the module like {@link #inject()} and returns a promise of the
+     * instance. A callback set with {@link #setCallback(Callback)} is invoked
+     * as well.
+     * 
+     * @return the promise of the instance, rejected with
+     *         {@link CodeDownloadException} on failure.
+     */
+    public Promise<WasmInstance> injectAsync() {
+      return PromiseCallback.promise(callback, this::inject);
+    }
+
+    private void inject(Callback<WasmInstance, Exception> callback) {
+      if ("undefined".equals(Js.typeof(Js.asPropertyMap(DomGlobal.window).get("WebAssembly")))) {
+        if (callback != null) {
+          callback.onFailure(new CodeDownloadException("WebAssembly is not supported"));
+        }
+        return;
+      }
+
+      compile(wasmUrl).then(module -> WebAssembly.instantiate(module, imports))
+          .then(instance -> {
+            if (callback != null) {
+              callback.onSuccess(instance);
+            }
+            return null;
+          }, error -> {
+            if (callback != null) {
+              callback.onFailure(toException(error));
+            }
+            return null;
+          });
+    }
+
+    /**
+     * Specify a callback to be invoked when the module is instantiated or
+     * loading encounters an error.
+     * <p>
+     * {@link Callback#onFailure(Object)} may provide {@link CodeDownloadException}
+     * 
+     * @param callback callback that gets invoked asynchronously.
+     */
+    public FromWasmUrl setCallback(Callback<WasmInstance, Exception> callback) {
+      this.callback = callback;
+      return this;
+    }
+
+    /**
+     * @param imports The import object passed to the module instantiation.
+     *          Default value is {@code null}.
+     */
+    public FromWasmUrl setImports(Object imports) {
+      this.imports = imports;
+      return this;
+    }
+
+    private static Promise<Object> compile(String wasmUrl) {
+      Promise<Object> module = modules.get(wasmUrl);
+      if (module == null) {
+        module = new Promise<>((resolve, reject) -> DomGlobal.fetch(wasmUrl).then(response -> {
+          if (!response.ok) {
+            reject.onInvoke(new CodeDownloadException("Failed to load " + wasmUrl + ": "
+                + response.status + " " + response.statusText));
+            return null;
+          }
+
+          // keep a copy of the body in case streaming compilation rejects the MIME type
+          Response fallback = response.clone_();
+          Promise<Object> compiled;
+          if ("function".equals(Js.typeof(
+              Js.asPropertyMap(Js.asPropertyMap(DomGlobal.window).get("WebAssembly"))
+                  .get("compileStreaming")))) {
+            compiled = WebAssembly.compileStreaming(response).catch_(error -> {
+              if (!"TypeError".equals(Js.asPropertyMap(error).get("name"))) {
+                return Promise.reject(error);
+              }
+              return fallback.arrayBuffer().then(WebAssembly::compile);
+            });
+          } else {
+            compiled = fallback.arrayBuffer().then(WebAssembly::compile);
+          }
+          compiled.then(result -> {
+            resolve.onInvoke(result);
+            return null;
+          }, error -> {
+            reject.onInvoke(error);
+            return null;
+          });
+          return null;
+        }, error -> {
+          reject.onInvoke(error);
+          return null;
+        }));
+
+        modules.put(wasmUrl, module);
+        // Failed downloads are not cached, next injection tries again
+        module.catch_(error -> {
+          modules.remove(wasmUrl);
+          return null;
+        });
+      }
+      return module;
+    }
+  }
+
+  /**
+   * Sets how {@link FromString} evaluates scripts in a window, unless set per
+   * injection with {@link FromString#setEvaluationStrategy}. Only synchronous
+   * strategies are accepted, so {@link FromString#inject()} keeps evaluating
+   * the script before it returns. Asynchronous strategies like
+   * {@link EvaluationStrategy#BLOB_URL} have to be set per injection.
+   * 
+   * @param strategy the strategy. Default value is
+   *          {@link EvaluationStrategy#SCRIPT_ELEMENT}.
+   * @throws IllegalArgumentException if the strategy is asynchronous
+   */
+  public static void setDefaultEvaluationStrategy(EvaluationStrategy strategy) {
+    if (strategy != null && !strategy.isSynchronous()) {
+      throw new IllegalArgumentException("Asynchronous default evaluation strategy");
+    }
+    defaultEvaluationStrategy = strategy;
+  }
+
+  /**
+   * Bounds the number of script elements kept in the document by injections
+   * which do not remove their tag, for long-running pages injecting many
+   * scripts. Once more scripts have been kept, the oldest are removed.
+   * Scripts which failed to load are removed right away. Removing a script
+   * element does not undo the script, so this is safe unless the page looks
+   * the elements up.
+   * <p>
+   * Load and error listeners are always detached once a script finished,
+   * and finished injections drop their callbacks, regardless of this limit.
+   * 
+   * @param limit maximum number of script elements kept, {@code 0} to
+   *          remove every script once it ran. Default value is {@code -1},
+   *          i.e. all are kept.
+   */
+  public static void setRetainedScriptLimit(int limit) {
+    RetainedScripts.setLimit(limit);
   }
 
   /**
@@ -250,6 +1042,19 @@ public class ScriptInjector {
    */
   public static final Window TOP_WINDOW = DomGlobal.window;
 
+  /**
+   * Returns the shared pool of dedicated workers, created on the first call.
+   * Use this to run computation heavy scripts off the main thread. Workers
+   * are created on first use; call {@link WorkerPool#setSize(int)} to allow
+   * more than one.
+   */
+  public static WorkerPool getWorkerPool() {
+    if (workerPool == null) {
+      workerPool = new WorkerPool(1);
+    }
+    return workerPool;
+  }
+
   /**
    * Build an injection call for directly setting the script text in the DOM.
    * 
@@ -268,6 +1073,28 @@ public class ScriptInjector {
     return new FromUrl(scriptUrl);
   }
 
+  /**
+   * Build an injection call for compiling and instantiating a WebAssembly
+   * module by URL.
+   * 
+   * @param wasmUrl URL of the WebAssembly module to be injected.
+   */
+  public static FromWasmUrl fromWasmUrl(String wasmUrl) {
+    return new FromWasmUrl(wasmUrl);
+  }
+
+  /**
+   * Converts a promise rejection into an exception for {@link Callback}.
+   */
+  private static Exception toException(Object error) {
+    if (error instanceof Exception) {
+      return (Exception) error;
+    }
+    Object message = Js.asPropertyMap(error).get("message");
+    return new CodeDownloadException(message == null ? String.valueOf(error)
+        : Js.asString(message));
+  }
+
   /**
    * Attaches event handlers to a script DOM element that will run just once a
    * callback when it gets successfully loaded.
@@ -292,7 +1119,7 @@ public class ScriptInjector {
    * @param scriptElement element to which the event handlers will be attached
    * @param callback callback that runs when the script is loaded and parsed.
    */
-  private static void attachListeners(HTMLScriptElement scriptElement,
+  static void attachListeners(HTMLScriptElement scriptElement,
       Callback<Void, Exception> callback, boolean removeTag) {
     
     Runnable clearCallbacks = () -> {
@@ -306,6 +1133,9 @@ public class ScriptInjector {
     
     scriptElement.onload = e -> {
       clearCallbacks.run();
+      if (!removeTag) {
+        RetainedScripts.retain(scriptElement);
+      }
       if (callback != null) {
         callback.onSuccess(null);
       }
@@ -315,6 +1145,9 @@ public class ScriptInjector {
     // or possibly more portable script_tag.addEventListener('error', function(){...}, true);
     scriptElement.onerror = e -> {
       clearCallbacks.run();
+      if (!removeTag) {
+        RetainedScripts.discard(scriptElement);
+      }
       if (callback != null) {
         ErrorEvent errorEvent = Js.uncheckedCast(e);
         CodeDownloadException reason = new CodeDownloadException(errorEvent.message);
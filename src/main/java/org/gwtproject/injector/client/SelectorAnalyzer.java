@@ -0,0 +1,221 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Diagnostics for selectors which make style recalculation slow. Set with
+ * {@link StyleInjector#setSelectorAnalyzer(SelectorAnalyzer)}, it scores the
+ * selectors of the stylesheets of every flush and reports those reaching the
+ * threshold, worst first, to its listener. Nothing is parsed while no
+ * analyzer is set.
+ * <p>
+ * Browsers match selectors right to left, so the score is mostly about the
+ * key, i.e. rightmost, compound selector and the work each combinator causes
+ * for every candidate element:
+ * <ul>
+ * <li>{@code :has()}: {@value #HAS} each, it is evaluated against descendants
+ * or siblings
+ * <li>universal key, e.g. {@code .a *} or {@code [type=x]}: {@value #UNIVERSAL_KEY}
+ * <li>tag key, e.g. {@code .a div}: {@value #TAG_KEY}
+ * <li>descendant combinator: {@value #DESCENDANT} each, sibling combinator
+ * {@code ~}: {@value #SIBLING} each, other combinators 1 each
+ * <li>substring attribute match {@code *=}: {@value #SUBSTRING}, other
+ * attribute operators and {@code :nth-*()} 1 each
+ * </ul>
+ * A selector keyed on a class or an ID without combinators scores 0.
+ */
+public class SelectorAnalyzer {
+
+  /**
+   * An expensive selector of an injected stylesheet.
+   */
+  public static final class Offender {
+    private final String selector;
+    private final int score;
+    private final String source;
+    private final String stylesheetId;
+
+    Offender(String selector, int score, String source, String stylesheetId) {
+      this.selector = selector;
+      this.score = score;
+      this.source = source;
+      this.stylesheetId = stylesheetId;
+    }
+
+    public String getSelector() {
+      return selector;
+    }
+
+    public int getScore() {
+      return score;
+    }
+
+    /**
+     * @return the bucket the stylesheet was injected through, e.g.
+     *         {@code "inject"} or {@code "injectAtStart"}
+     */
+    public String getSource() {
+      return source;
+    }
+
+    /**
+     * @return the ID of the stylesheet, see {@link Hydration#idOf(String)}
+     */
+    public String getStylesheetId() {
+      return stylesheetId;
+    }
+  }
+
+  static final int HAS = 20;
+  static final int UNIVERSAL_KEY = 10;
+  static final int TAG_KEY = 3;
+  static final int DESCENDANT = 2;
+  static final int SIBLING = 3;
+  static final int SUBSTRING = 3;
+
+  private final int threshold;
+  private final int limit;
+  private final Consumer<List<Offender>> listener;
+
+  /**
+   * @param threshold minimum score of a reported selector
+   * @param limit maximum number of selectors reported per flush
+   * @param listener receives the expensive selectors of a flush, if any
+   */
+  public SelectorAnalyzer(int threshold, int limit, Consumer<List<Offender>> listener) {
+    this.threshold = threshold;
+    this.limit = limit;
+    this.listener = listener;
+  }
+
+  /**
+   * Scores a single selector, see the class documentation.
+   * 
+   * @param selector a complex selector, without commas
+   * @return its cost, {@code 0} for the cheapest selectors
+   */
+  public static int score(String selector) {
+    String lower = selector.toLowerCase();
+    int score = 0;
+    int keyStart = 0;
+    int depth = 0;
+    int i = 0;
+    while (i < lower.length()) {
+      char c = lower.charAt(i);
+      if (c == '(' || c == '[') {
+        if (c == '[') {
+          score += attributeScore(lower, i);
+        }
+        depth++;
+      } else if (c == ')' || c == ']') {
+        depth--;
+      } else if (c == ':') {
+        if (lower.startsWith(":has(", i)) {
+          score += HAS;
+        } else if (lower.startsWith(":nth-", i)) {
+          score += 1;
+        }
+      } else if (depth == 0 && (Character.isWhitespace(c) || c == '>' || c == '+' || c == '~')) {
+        int end = i;
+        boolean descendant = true;
+        while (end < lower.length()) {
+          char next = lower.charAt(end);
+          if (next == '>' || next == '+' || next == '~') {
+            descendant = false;
+            score += next == '~' ? SIBLING : 1;
+          } else if (!Character.isWhitespace(next)) {
+            break;
+          }
+          end++;
+        }
+        if (end < lower.length()) {
+          if (descendant) {
+            score += DESCENDANT;
+          }
+          keyStart = end;
+        }
+        i = end;
+        continue;
+      }
+      i = CssParser.skip(lower, i, lower.length());
+    }
+    return score + keyScore(lower.substring(keyStart));
+  }
+
+  private static int attributeScore(String selector, int open) {
+    int close = selector.indexOf(']', open);
+    String attribute = close < 0 ? selector.substring(open) : selector.substring(open, close);
+    int eq = attribute.indexOf('=');
+    if (eq <= 0) {
+      return 0;
+    }
+    char operator = attribute.charAt(eq - 1);
+    return operator == '*' ? SUBSTRING : "^$~|".indexOf(operator) >= 0 ? 1 : 0;
+  }
+
+  private static int keyScore(String key) {
+    int depth = 0;
+    for (int i = 0; i < key.length(); i = CssParser.skip(key, i, key.length())) {
+      char c = key.charAt(i);
+      if (c == '(' || c == '[') {
+        depth++;
+      } else if (c == ')' || c == ']') {
+        depth--;
+      } else if (depth == 0 && (c == '.' || c == '#')) {
+        return 0;
+      }
+    }
+    return !key.isEmpty() && Character.isLetter(key.charAt(0)) ? TAG_KEY : UNIVERSAL_KEY;
+  }
+
+  /**
+   * Scores the selectors of the stylesheets about to be injected and reports
+   * the expensive ones.
+   * 
+   * @param sources the bucket of each group of stylesheets
+   * @param stylesheets groups of stylesheets
+   * @param ids the IDs of the stylesheets, by group
+   */
+  void analyze(String[] sources, String[][] stylesheets, String[][] ids) {
+    List<Offender> offenders = new ArrayList<>();
+    List<int[]> rules = new ArrayList<>();
+    for (int group = 0; group < sources.length; group++) {
+      for (int s = 0; s < stylesheets[group].length; s++) {
+        String css = stylesheets[group][s];
+        rules.clear();
+        CssParser.parse(css, 0, css.length(), rules);
+        for (int[] rule : rules) {
+          for (String selector : CssParser.split(css.substring(rule[0], rule[1]))) {
+            int score = score(selector);
+            if (score >= threshold) {
+              offenders.add(new Offender(selector, score, sources[group], ids[group][s]));
+            }
+          }
+        }
+      }
+    }
+    if (offenders.isEmpty()) {
+      return;
+    }
+    offenders.sort((a, b) -> b.score - a.score);
+    listener.accept(offenders.size() > limit
+        ? new ArrayList<>(offenders.subList(0, limit)) : offenders);
+  }
+}
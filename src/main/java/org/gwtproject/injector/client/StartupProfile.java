@@ -0,0 +1,179 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import elemental2.core.Global;
+import elemental2.core.JsArray;
+import elemental2.dom.DomGlobal;
+import jsinterop.base.Js;
+import jsinterop.base.JsPropertyMap;
+
+/**
+ * Records the scripts and styles injected during startup and pre-warms them
+ * on the next boot.
+ * <p>
+ * While a profile is recording, every {@link StyleInjector} injection and
+ * every {@link ScriptInjector.FromUrl} injection marked with
+ * {@link ScriptInjector.FromUrl#setStartup(boolean)} is logged with its time
+ * since the start of the recording. Other scripts, e.g. JSONP requests or
+ * scripts loaded in workers and sandboxes, are not recorded, as they either
+ * change on every boot or are not loaded by the document. When the
+ * recording ends, the manifest is stored in {@code localStorage} under the
+ * name of the entry point. The next
+ * {@link #start(String, int)} for that entry point immediately emits
+ * preload hints for all recorded scripts, with the same {@code crossorigin}
+ * attribute as the script, so they download in parallel instead of being
+ * discovered one by one and the preloaded response can be used.
+ * <p>
+ * Styles are recorded by content hash and size only. Their text is part of
+ * the compiled code, so there is nothing to download ahead of time.
+ * <p>
+ * Usage, first thing in the entry point:
+ * <p>
+ * 
+ * <pre>
+ *   StartupProfile.start("app", 10000);
+ * </pre>
+ */
+public class StartupProfile {
+
+  /**
+   * Prefix of the {@code localStorage} keys holding the manifests.
+   */
+  public static final String STORAGE_PREFIX = "gwt-injector-startup:";
+
+  private static StartupProfile recording;
+
+  /**
+   * Pre-warms the scripts recorded on the previous boot and starts a new
+   * recording. Stops a recording already in progress.
+   * 
+   * @param entryPoint name of the manifest, usually the entry point
+   * @param duration number of milliseconds to record
+   * @return the new recording
+   */
+  public static StartupProfile start(String entryPoint, int duration) {
+    if (recording != null) {
+      recording.stop();
+    }
+
+    StartupProfile profile = new StartupProfile(entryPoint);
+    profile.prewarm();
+    recording = profile;
+    profile.timer = DomGlobal.setTimeout(ignored -> profile.stop(), duration);
+    return profile;
+  }
+
+  static void recordScript(String url, String crossOrigin) {
+    if (recording != null) {
+      JsPropertyMap<Object> entry = JsPropertyMap.of("type", "script", "url", url);
+      if (crossOrigin != null) {
+        entry.set("crossorigin", crossOrigin);
+      }
+      recording.record(entry);
+    }
+  }
+
+  static void recordStyle(String hash, int length) {
+    if (recording != null) {
+      JsPropertyMap<Object> entry = JsPropertyMap.of("type", "style", "hash", hash);
+      entry.set("length", length);
+      recording.record(entry);
+    }
+  }
+
+  private final String entryPoint;
+  private final JsArray<JsPropertyMap<Object>> entries = new JsArray<>();
+  private final double startTime = TimeSlicing.now();
+  private double timer;
+
+  private StartupProfile(String entryPoint) {
+    this.entryPoint = entryPoint;
+  }
+
+  /**
+   * @return entries recorded so far, each with a {@code type} of
+   *         {@code "script"} or {@code "style"} and the {@code time} in
+   *         milliseconds since the start of the recording. Scripts have their
+   *         {@code url} and, if set, their {@code crossorigin} attribute.
+   */
+  public JsArray<JsPropertyMap<Object>> getEntries() {
+    return entries;
+  }
+
+  /**
+   * @return {@code true} while injections are being recorded
+   */
+  public boolean isRecording() {
+    return recording == this;
+  }
+
+  /**
+   * Stops the recording and stores the manifest. Does nothing if the
+   * recording already stopped.
+   */
+  public void stop() {
+    if (!isRecording()) {
+      return;
+    }
+    recording = null;
+    DomGlobal.clearTimeout(timer);
+
+    WebStorage storage = WebStorage.local();
+    if (storage != null) {
+      try {
+        storage.setItem(STORAGE_PREFIX + entryPoint, Global.JSON.stringify(entries));
+      } catch (RuntimeException e) {
+        // quota exceeded, the next boot just won't be pre-warmed
+      }
+    }
+  }
+
+  private void record(JsPropertyMap<Object> entry) {
+    entry.set("time", TimeSlicing.now() - startTime);
+    push(entry);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void push(JsPropertyMap<Object> entry) {
+    entries.push(entry);
+  }
+
+  private void prewarm() {
+    WebStorage storage = WebStorage.local();
+    String manifest = storage == null ? null : storage.getItem(STORAGE_PREFIX + entryPoint);
+    if (manifest == null) {
+      return;
+    }
+
+    JsArray<JsPropertyMap<Object>> previous;
+    try {
+      previous = Js.uncheckedCast(Global.JSON.parse(manifest));
+    } catch (RuntimeException e) {
+      storage.removeItem(STORAGE_PREFIX + entryPoint);
+      return;
+    }
+
+    for (int i = 0; i < previous.length; i++) {
+      JsPropertyMap<Object> entry = previous.getAt(i);
+      if ("script".equals(entry.get("type"))) {
+        Object crossOrigin = entry.get("crossorigin");
+        PreloadHints.preload(Js.asString(entry.get("url")), PreloadHints.SCRIPT,
+            crossOrigin == null ? null : Js.asString(crossOrigin));
+      }
+    }
+  }
+}
@@ -15,21 +15,22 @@
  */
 package org.gwtproject.injector.client;
 
-import com.google.gwt.core.client.Scheduler;
-import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import java.util.List;
+import java.util.Map;
 
-import elemental2.core.JsArray;
 import elemental2.dom.DomGlobal;
 import elemental2.dom.HTMLHeadElement;
+import elemental2.dom.HTMLLinkElement;
 import elemental2.dom.HTMLStyleElement;
+import elemental2.promise.Promise;
 
 // TODO: provide new better API based on ScriptInjector for gwt-resource module
 
 /**
  * Used to add stylesheets to the document. The one-argument versions of
- * {@link #inject}, {@link #injectAtEnd}, and {@link #injectAtStart} use
- * {@link Scheduler#scheduleFinally} to minimize the number of individual style
- * elements created.
+ * {@link #inject}, {@link #injectAtEnd}, and {@link #injectAtStart} flush in
+ * a microtask, run once the current code returns and before the browser
+ * renders, to minimize the number of individual style elements created.
  * <p>
  * The api here is a bit redundant, with similarly named methods returning
  * either <code>void</code> or {@link StyleElement} &mdash; e.g.,
@@ -40,10 +41,17 @@ import elemental2.dom.HTMLStyleElement;
  * other browsers they are not deprecated, but <strong>IE developers should
  * avoid the methods with {@link StyleElement} return values</strong> (at least
  * up until, and excluding, IE10).
+ * <p>
+ * With {@link #setDedupe(boolean)}, injecting a stylesheet whose content is
+ * still in the document, or was registered by {@link Hydration#hydrate()},
+ * is a no-op.
+ * <p>
+ * The static methods use the default {@link StyleScope}. Flushing it leaves
+ * the stylesheets of other scopes batched.
  */
 public class StyleInjector {
 
-  private static final StyleInjectorImpl sImpl = new StyleInjectorImpl();
+  static final StyleInjectorImpl sImpl = new StyleInjectorImpl();
   
   /**
    * The DOM-compatible way of adding stylesheets. This implementation requires
@@ -73,7 +81,7 @@ public class StyleInjector {
       style.textContent = contents;
     }
 
-    private HTMLStyleElement createElement(String contents) {
+    HTMLStyleElement createElement(String contents) {
       HTMLStyleElement style = (HTMLStyleElement) DomGlobal.document.createElement("style");
       style.lang = "text/css";
       setContents(style, contents);
@@ -91,19 +99,53 @@ public class StyleInjector {
     }
   }
 
-  private static final JsArray<String> toInject = new JsArray<>();
-  private static final JsArray<String> toInjectAtEnd = new JsArray<>();
-  private static final JsArray<String> toInjectAtStart = new JsArray<>();
+  /**
+   * Scans stylesheets for assets and hints them with {@link PreloadHints},
+   * see {@link StyleInjector#setPreloadAssets(boolean)}.
+   */
+  private static class AssetHints {
+
+    void preload(String[] stylesheets) {
+      for (String css : stylesheets) {
+        CssAssets assets = CssAssets.scan(css);
+        for (String font : assets.fonts) {
+          PreloadHints.preload(font, PreloadHints.FONT, "anonymous");
+        }
+        for (Map.Entry<String, String> image : assets.images.entrySet()) {
+          if (!PreloadHints.isPreloaded(image.getKey()) && isInDocument(image.getValue())) {
+            PreloadHints.preload(image.getKey(), PreloadHints.IMAGE);
+          }
+        }
+      }
+    }
 
-  private static ScheduledCommand flusher = new ScheduledCommand() {
-    public void execute() {
-      if (needsInjection) {
-        flush(null);
+    private static boolean isInDocument(String selector) {
+      try {
+        return DomGlobal.document.querySelector(selector) != null;
+      } catch (RuntimeException e) {
+        // e.g. a selector with a vendor prefixed pseudo class
+        return false;
       }
     }
-  };
+  }
+
+  private static final StyleScope defaultScope = new StyleScope();
+
+  /**
+   * Hints the assets of injected stylesheets, {@code null} unless enabled.
+   */
+  private static AssetHints assetHints;
+  private static SelectorAnalyzer selectorAnalyzer;
 
-  private static boolean needsInjection = false;
+  /**
+   * Returns the scope used by the static methods of this class, which
+   * injects into the head of the document.
+   * 
+   * @return the default scope
+   */
+  public static StyleScope getDefaultScope() {
+    return defaultScope;
+  }
 
   /**
    * Flushes any pending stylesheets to the document.
@@ -115,7 +157,68 @@ public class StyleInjector {
    * Note that calling this method excessively will decrease performance.
    */
   public static void flush() {
-    inject(true);
+    defaultScope.flush();
+  }
+
+  /**
+   * Returns a promise which resolves once all stylesheets added so far have
+   * been injected into the document, i.e. after the next flush. Resolves
+   * immediately if nothing is pending.
+   * <p>
+   * This can be used to wait for styles from JsInterop code or to compose
+   * with script loads:
+   * <p>
+   * 
+   * <pre>
+   *   StyleInjector.inject(css);
+   *   Promise.all(StyleInjector.whenInjected(),
+   *       ScriptInjector.fromUrl("widget.js").injectAsync()).then(...);
+   * </pre>
+   */
+  public static Promise<Void> whenInjected() {
+    return defaultScope.whenInjected();
+  }
+
+  /**
+   * Turns dedupe of the stylesheets injected into the document on or off,
+   * see {@link StyleScope#setDedupe(boolean)}. Deduped stylesheets are
+   * registered with {@link Hydration}.
+   * 
+   * @param dedupe Default value is {@code false}.
+   */
+  public static void setDedupe(boolean dedupe) {
+    defaultScope.setDedupe(dedupe);
+  }
+
+  /**
+   * Enables hints for the assets referenced by injected stylesheets. Before
+   * the queued stylesheets are appended, they are scanned for fonts of
+   * {@code @font-face} rules and for background images of rules matching an
+   * element already in the document, i.e. likely to be visible right away.
+   * These are hinted with {@link PreloadHints}, so the browser fetches them
+   * in parallel instead of discovering them during layout.
+   * 
+   * @param enabled whether to scan injected stylesheets. Default value is
+   *          {@code false}.
+   */
+  public static void setPreloadAssets(boolean enabled) {
+    assetHints = enabled ? new AssetHints() : null;
+  }
+
+  /**
+   * Sets diagnostics scoring the selectors of the stylesheets of every flush,
+   * of all scopes, and reporting the expensive ones. Meant for development
+   * builds, as the stylesheets are parsed on every flush.
+   * 
+   * @param analyzer the analyzer, {@code null} to disable. Default value is
+   *          {@code null}.
+   */
+  public static void setSelectorAnalyzer(SelectorAnalyzer analyzer) {
+    selectorAnalyzer = analyzer;
+  }
+
+  static SelectorAnalyzer getSelectorAnalyzer() {
+    return selectorAnalyzer;
   }
 
   /**
@@ -137,8 +240,7 @@ public class StyleInjector {
    *          with an inject-css-on-init coding pattern
    */
   public static void inject(String css, boolean immediate) {
-    toInject.push(css);
-    inject(immediate);
+    defaultScope.inject(css, immediate);
   }
 
   /**
@@ -162,8 +264,7 @@ public class StyleInjector {
    *          with an inject-css-on-init coding pattern
    */
   public static void injectAtEnd(String css, boolean immediate) {
-    toInjectAtEnd.push(css);
-    inject(immediate);
+    defaultScope.injectAtEnd(css, immediate);
   }
 
   /**
@@ -187,8 +288,49 @@ public class StyleInjector {
    *          with an inject-css-on-init coding pattern
    */
   public static void injectAtStart(String css, boolean immediate) {
-    toInjectAtStart.unshift(css);
-    inject(immediate);
+    defaultScope.injectAtStart(css, immediate);
+  }
+
+  /**
+   * Add a compressed stylesheet to the document, see
+   * {@link CompressedPayload}. The stylesheet keeps its place among the
+   * stylesheets added with {@link #inject(String)}: batched stylesheets wait
+   * until it has been decompressed.
+   * 
+   * @param base64 the base64 encoded, compressed CSS
+   * @param format one of {@link CompressedPayload#GZIP},
+   *          {@link CompressedPayload#DEFLATE} or
+   *          {@link CompressedPayload#DEFLATE_RAW}
+   * @return a promise which resolves once the stylesheet is in the document
+   */
+  public static Promise<Void> injectCompressed(String base64, String format) {
+    return defaultScope.injectCompressed(base64, format);
+  }
+
+  /**
+   * Add a compressed stylesheet to the document as though it were declared
+   * after all stylesheets previously created by {@link #inject(String)}.
+   * 
+   * @param base64 the base64 encoded, compressed CSS
+   * @param format the compression format, see
+   *          {@link #injectCompressed(String, String)}
+   * @return a promise which resolves once the stylesheet is in the document
+   */
+  public static Promise<Void> injectCompressedAtEnd(String base64, String format) {
+    return defaultScope.injectCompressedAtEnd(base64, format);
+  }
+
+  /**
+   * Add a compressed stylesheet to the document as though it were declared
+   * before all stylesheets previously created by {@link #inject(String)}.
+   * 
+   * @param base64 the base64 encoded, compressed CSS
+   * @param format the compression format, see
+   *          {@link #injectCompressed(String, String)}
+   * @return a promise which resolves once the stylesheet is in the document
+   */
+  public static Promise<Void> injectCompressedAtStart(String base64, String format) {
+    return defaultScope.injectCompressedAtStart(base64, format);
   }
 
   /**
@@ -204,8 +346,7 @@ public class StyleInjector {
    *         on Internet Explorer)
    */
   public static HTMLStyleElement injectStylesheet(String contents) {
-    toInject.push(contents);
-    return flush(toInject);
+    return defaultScope.injectStylesheet(contents);
   }
 
   /**
@@ -222,8 +363,7 @@ public class StyleInjector {
    *         on Internet Explorer)
    */
   public static HTMLStyleElement injectStylesheetAtEnd(String contents) {
-    toInjectAtEnd.push(contents);
-    return flush(toInjectAtEnd);
+    return defaultScope.injectStylesheetAtEnd(contents);
   }
 
   /**
@@ -240,8 +380,41 @@ public class StyleInjector {
    *         on Internet Explorer)
    */
   public static HTMLStyleElement injectStylesheetAtStart(String contents) {
-    toInjectAtStart.unshift(contents);
-    return flush(toInjectAtStart);
+    return defaultScope.injectStylesheetAtStart(contents);
+  }
+
+  /**
+   * Add an external stylesheet to the document, after all stylesheets
+   * injected so far. Pending stylesheets are flushed first to keep their
+   * order.
+   * <p>
+   * Unlike the stylesheets injected as text, a linked stylesheet applies
+   * asynchronously: only once it has been loaded from the network, after this
+   * method returned and possibly after the next rendering. Code measuring
+   * the layout has to wait for the {@code load} event of the returned
+   * element.
+   * <p>
+   * This is the registration hook for stylesheets extracted at build time by
+   * {@code org.gwtproject.injector.tools.CssExtractor}. Linking a URL which is
+   * still linked in the document is a no-op.
+   * 
+   * @param href the URL of the stylesheet
+   * @return the link element, or the existing one if the URL is already
+   *         linked
+   */
+  public static HTMLLinkElement injectLink(String href) {
+    return defaultScope.injectLink(href);
+  }
+
+  /**
+   * Creates a style element for an {@link InjectionTransaction}, without
+   * appending it, taking in the pending stylesheets. Stylesheets which have
+   * already been injected are skipped.
+   * 
+   * @return the element, {@code null} if all stylesheets were skipped
+   */
+  static HTMLStyleElement createStylesheet(List<String> stylesheets) {
+    return defaultScope.createStylesheet(stylesheets);
   }
 
   /**
@@ -262,55 +435,20 @@ public class StyleInjector {
   }
 
   /**
-   * The <code>which</code> parameter is used to support the deprecated API.
+   * @return {@code true} if injected stylesheets are scanned for assets, see
+   *         {@link #setPreloadAssets(boolean)}
    */
-  private static HTMLStyleElement flush(Object which) {
-    HTMLStyleElement toReturn = null;
-    HTMLStyleElement maybeReturn;
-
-    if (toInjectAtStart.length != 0) {
-      String css = toInjectAtStart.join("");
-      maybeReturn = sImpl.injectStyleSheetAtStart(css);
-      if (toInjectAtStart == which) {
-        toReturn = maybeReturn;
-      }
-      toInjectAtStart.setLength(0);
-    }
-
-    if (toInject.length != 0) {
-      String css = toInject.join("");
-      maybeReturn = sImpl.injectStyleSheet(css);
-      if (toInject == which) {
-        toReturn = maybeReturn;
-      }
-      toInject.setLength(0);
-    }
-
-    if (toInjectAtEnd.length != 0) {
-      String css = toInjectAtEnd.join("");
-      maybeReturn = sImpl.injectStyleSheetAtEnd(css);
-      if (toInjectAtEnd == which) {
-        toReturn = maybeReturn;
-      }
-      toInjectAtEnd.setLength(0);
-    }
-
-    needsInjection = false;
-    return toReturn;
+  static boolean isPreloadingAssets() {
+    return assetHints != null;
   }
 
-  private static void inject(boolean immediate) {
-    if (immediate) {
-      flush(null);
-    } else {
-      schedule();
-    }
-  }
-
-  private static void schedule() {
-    if (!needsInjection) {
-      needsInjection = true;
-      Scheduler.get().scheduleFinally(flusher);
+  /**
+   * Hints the assets of the stylesheets if enabled, see
+   * {@link #setPreloadAssets(boolean)}.
+   */
+  static void preloadAssets(String[] stylesheets) {
+    if (assetHints != null) {
+      assetHints.preload(stylesheets);
     }
   }
 
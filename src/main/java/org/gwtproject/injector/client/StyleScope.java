@@ -0,0 +1,760 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import java.util.Arrays;
+import java.util.List;
+
+import elemental2.core.JsArray;
+import elemental2.dom.DomGlobal;
+import elemental2.dom.Element;
+import elemental2.dom.HTMLLinkElement;
+import elemental2.dom.HTMLStyleElement;
+import elemental2.dom.Node;
+import elemental2.promise.Promise;
+import elemental2.promise.Promise.PromiseExecutorCallbackFn.ResolveCallbackFn;
+import jsinterop.base.Js;
+
+/**
+ * An independent batch of stylesheets, injected into its own container. Each
+ * scope has its own queues and is flushed on its own, so flushing one scope
+ * leaves the stylesheets of other scopes batched until their own flush.
+ * <p>
+ * The static methods of {@link StyleInjector} use a default scope which
+ * injects into the head of the document and registers its stylesheets with
+ * {@link Hydration}. Other scopes inject into the given container, e.g. the
+ * shadow root of a widget, and look up their stylesheets there, so with
+ * {@link #setDedupe(boolean)} the same stylesheet is injected once into each
+ * container:
+ * <p>
+ * 
+ * <pre>
+ *   StyleScope scope = new StyleScope(shadowRoot);
+ *   scope.inject(css);
+ *   scope.flush();
+ * </pre>
+ * <p>
+ * The methods mirror those of {@link StyleInjector}, see there for details.
+ * Scopes share the {@link StyleInjector#setPreloadAssets(boolean)} and
+ * {@link TimeSlicing} settings.
+ */
+public class StyleScope {
+
+  /**
+   * Maximum number of characters injected as one element by a sliced flush.
+   */
+  private static final int CHUNK_SIZE = 32 * 1024;
+
+  private final JsArray<String> toInject = new JsArray<>();
+  private final JsArray<String> toInjectAtEnd = new JsArray<>();
+  private final JsArray<String> toInjectAtStart = new JsArray<>();
+  private final JsArray<String> toInjectIds = new JsArray<>();
+  private final JsArray<String> toInjectAtEndIds = new JsArray<>();
+  private final JsArray<String> toInjectAtStartIds = new JsArray<>();
+
+  private final JsArray<ResolveCallbackFn<Void>> whenInjected = new JsArray<>();
+
+  /**
+   * The container, {@code null} for the head of the document.
+   */
+  private final Node container;
+
+  /**
+   * The registry while dedupe is on, {@code null} otherwise.
+   */
+  private Hydration registry;
+  private boolean needsInjection = false;
+  private int decompressing;
+  private boolean slicing;
+  private int placeholders;
+
+  /**
+   * Creates a scope injecting into the given container.
+   * 
+   * @param container the element or shadow root the style elements are
+   *          appended to
+   */
+  public StyleScope(Node container) {
+    assert container != null : "container is required";
+    this.container = container;
+  }
+
+  /**
+   * Creates the default scope.
+   */
+  StyleScope() {
+    this.container = null;
+  }
+
+  /**
+   * Flushes the pending stylesheets of this scope to its container.
+   */
+  public void flush() {
+    inject(true);
+  }
+
+  /**
+   * Returns a promise which resolves once all stylesheets added to this scope
+   * so far have been injected, i.e. after its next flush.
+   * 
+   * @return the promise, already resolved if nothing is pending
+   */
+  public Promise<Void> whenInjected() {
+    if (!needsInjection) {
+      return Promise.resolve((Void) null);
+    }
+    return new Promise<>((resolve, reject) -> addWhenInjected(resolve));
+  }
+
+  /**
+   * Turns dedupe of stylesheets on or off. With dedupe on, injecting a
+   * stylesheet which is pending or still in the container is a no-op, and the
+   * {@code injectStylesheet} methods return the element holding it, which may
+   * hold other stylesheets of the same batch as well. A stylesheet whose
+   * element has been removed from the container is injected again. The
+   * default scope only takes stylesheets into account which were injected
+   * while dedupe was on, as only those are registered with {@link Hydration}.
+   * 
+   * @param dedupe Default value is {@code false}.
+   */
+  public void setDedupe(boolean dedupe) {
+    this.registry = dedupe ? Hydration.registry() : null;
+  }
+
+  /**
+   * @return {@code true} if stylesheets are waiting for the next flush
+   */
+  public boolean isPending() {
+    return needsInjection;
+  }
+
+  /**
+   * Add a stylesheet to the container.
+   * 
+   * @param css the CSS contents of the stylesheet
+   */
+  public void inject(String css) {
+    inject(css, false);
+  }
+
+  /**
+   * Add a stylesheet to the container.
+   * 
+   * @param css the CSS contents of the stylesheet
+   * @param immediate if <code>true</code> the DOM will be updated immediately
+   *          instead of just before returning to the event loop
+   */
+  public void inject(String css, boolean immediate) {
+    if (enqueue(toInject, toInjectIds, css, false)) {
+      inject(immediate);
+    }
+  }
+
+  /**
+   * Add stylesheet data as though it were declared after all stylesheets
+   * previously created by {@link #inject(String)}.
+   * 
+   * @param css the CSS contents of the stylesheet
+   */
+  public void injectAtEnd(String css) {
+    injectAtEnd(css, false);
+  }
+
+  /**
+   * Add stylesheet data as though it were declared after all stylesheets
+   * previously created by {@link #inject(String)}.
+   * 
+   * @param css the CSS contents of the stylesheet
+   * @param immediate if <code>true</code> the DOM will be updated immediately
+   *          instead of just before returning to the event loop
+   */
+  public void injectAtEnd(String css, boolean immediate) {
+    if (enqueue(toInjectAtEnd, toInjectAtEndIds, css, false)) {
+      inject(immediate);
+    }
+  }
+
+  /**
+   * Add stylesheet data as though it were declared before all stylesheets
+   * previously created by {@link #inject(String)}.
+   * 
+   * @param css the CSS contents of the stylesheet
+   */
+  public void injectAtStart(String css) {
+    injectAtStart(css, false);
+  }
+
+  /**
+   * Add stylesheet data as though it were declared before all stylesheets
+   * previously created by {@link #inject(String)}.
+   * 
+   * @param css the CSS contents of the stylesheet
+   * @param immediate if <code>true</code> the DOM will be updated immediately
+   *          instead of just before returning to the event loop
+   */
+  public void injectAtStart(String css, boolean immediate) {
+    if (enqueue(toInjectAtStart, toInjectAtStartIds, css, true)) {
+      inject(immediate);
+    }
+  }
+
+  /**
+   * Add a compressed stylesheet, see
+   * {@link StyleInjector#injectCompressed(String, String)}.
+   * 
+   * @param base64 the base64 encoded, compressed CSS
+   * @param format the compression format
+   * @return a promise which resolves once the stylesheet is in the container
+   */
+  public Promise<Void> injectCompressed(String base64, String format) {
+    return injectCompressed(toInject, toInjectIds, base64, format, false);
+  }
+
+  /**
+   * Add a compressed stylesheet as though it were declared after all
+   * stylesheets previously created by {@link #inject(String)}.
+   * 
+   * @param base64 the base64 encoded, compressed CSS
+   * @param format the compression format
+   * @return a promise which resolves once the stylesheet is in the container
+   */
+  public Promise<Void> injectCompressedAtEnd(String base64, String format) {
+    return injectCompressed(toInjectAtEnd, toInjectAtEndIds, base64, format, false);
+  }
+
+  /**
+   * Add a compressed stylesheet as though it were declared before all
+   * stylesheets previously created by {@link #inject(String)}.
+   * 
+   * @param base64 the base64 encoded, compressed CSS
+   * @param format the compression format
+   * @return a promise which resolves once the stylesheet is in the container
+   */
+  public Promise<Void> injectCompressedAtStart(String base64, String format) {
+    return injectCompressed(toInjectAtStart, toInjectAtStartIds, base64, format, true);
+  }
+
+  /**
+   * Add a stylesheet to the container and flush this scope.
+   * 
+   * @param contents the CSS contents of the stylesheet
+   * @return the element that contains the newly-injected CSS
+   */
+  public HTMLStyleElement injectStylesheet(String contents) {
+    if (enqueue(toInject, toInjectIds, contents, false)) {
+      return flush(toInject);
+    }
+    return flushAndFind(contents);
+  }
+
+  /**
+   * Add stylesheet data as though it were declared after all stylesheets
+   * previously created by {@link #injectStylesheet(String)} and flush this
+   * scope.
+   * 
+   * @param contents the CSS contents of the stylesheet
+   * @return the element that contains the newly-injected CSS
+   */
+  public HTMLStyleElement injectStylesheetAtEnd(String contents) {
+    if (enqueue(toInjectAtEnd, toInjectAtEndIds, contents, false)) {
+      return flush(toInjectAtEnd);
+    }
+    return flushAndFind(contents);
+  }
+
+  /**
+   * Add stylesheet data as though it were declared before any stylesheet
+   * previously created by {@link #injectStylesheet(String)} and flush this
+   * scope.
+   * 
+   * @param contents the CSS contents of the stylesheet
+   * @return the element that contains the newly-injected CSS
+   */
+  public HTMLStyleElement injectStylesheetAtStart(String contents) {
+    if (enqueue(toInjectAtStart, toInjectAtStartIds, contents, true)) {
+      return flush(toInjectAtStart);
+    }
+    return flushAndFind(contents);
+  }
+
+  /**
+   * Add an external stylesheet to the container, after all stylesheets
+   * injected so far. Pending stylesheets are flushed first to keep their
+   * order. The stylesheet applies asynchronously, once it has been loaded,
+   * see {@link StyleInjector#injectLink(String)}. Linking a URL which is
+   * still linked in the container is a no-op, regardless of
+   * {@link #setDedupe(boolean)}.
+   * 
+   * @param href the URL of the stylesheet
+   * @return the link element, or the existing one if the URL is already
+   *         linked
+   */
+  public HTMLLinkElement injectLink(String href) {
+    String id = Hydration.idOf(href);
+    if (isInjected(id, href)) {
+      return Js.uncheckedCast(find(id, href));
+    }
+    if (needsInjection) {
+      flush(null);
+    }
+
+    HTMLLinkElement link = Js.uncheckedCast(DomGlobal.document.createElement("link"));
+    link.rel = "stylesheet";
+    link.href = href;
+    Hydration.mark(link, id);
+    if (container == null) {
+      DomGlobal.document.head.appendChild(link);
+      Hydration.registry().register(id, href);
+    } else {
+      container.appendChild(link);
+    }
+    return link;
+  }
+
+  /**
+   * Creates a style element for an {@link InjectionTransaction}, without
+   * appending it. Stylesheets which have already been injected are skipped.
+   * The pending stylesheets are taken into the element: those queued with
+   * {@link #inject(String)} before the given ones and those queued with
+   * {@link #injectAtEnd(String)} after them. Pending stylesheets queued with
+   * {@link #injectAtStart(String)} are inserted at the start right away.
+   * Call {@link #flush()} once the element is in the document, to complete
+   * {@link #whenInjected()}.
+   * 
+   * @return the element, {@code null} if all stylesheets were skipped
+   */
+  HTMLStyleElement createStylesheet(List<String> stylesheets) {
+    if (toInjectAtStart.length != 0) {
+      mark(insert(toInjectAtStart.join(""), true), toInjectAtStartIds.join(" "));
+      toInjectAtStart.setLength(0);
+      toInjectAtStartIds.setLength(0);
+    }
+
+    JsArray<String> css = new JsArray<>();
+    JsArray<String> ids = new JsArray<>();
+    for (String stylesheet : stylesheets) {
+      enqueue(css, ids, stylesheet, false);
+    }
+    if (toInject.length + css.length + toInjectAtEnd.length == 0) {
+      return null;
+    }
+    if (StyleInjector.isPreloadingAssets()) {
+      StyleInjector.preloadAssets(copy(toInject));
+      StyleInjector.preloadAssets(copy(css));
+      StyleInjector.preloadAssets(copy(toInjectAtEnd));
+    }
+    SelectorAnalyzer analyzer = StyleInjector.getSelectorAnalyzer();
+    if (analyzer != null) {
+      analyzer.analyze(new String[] {sourceOf(toInject), sourceOf(css), sourceOf(toInjectAtEnd)},
+          new String[][] {copy(toInject), copy(css), copy(toInjectAtEnd)},
+          new String[][] {copy(toInjectIds), copy(ids), copy(toInjectAtEndIds)});
+    }
+
+    HTMLStyleElement style = StyleInjector.sImpl.createElement(
+        toInject.join("") + css.join("") + toInjectAtEnd.join(""));
+    StringBuilder marks = new StringBuilder();
+    for (JsArray<String> queueIds : Arrays.asList(toInjectIds, ids, toInjectAtEndIds)) {
+      if (queueIds.length != 0) {
+        marks.append(marks.length() == 0 ? "" : " ").append(queueIds.join(" "));
+      }
+    }
+    mark(style, marks.toString());
+
+    toInject.setLength(0);
+    toInjectIds.setLength(0);
+    toInjectAtEnd.setLength(0);
+    toInjectAtEndIds.setLength(0);
+    return style;
+  }
+
+  /**
+   * The <code>which</code> parameter is used to support the deprecated API.
+   */
+  private HTMLStyleElement flush(Object which) {
+    HTMLStyleElement toReturn = null;
+    HTMLStyleElement maybeReturn;
+
+    if (StyleInjector.isPreloadingAssets()) {
+      StyleInjector.preloadAssets(copy(toInjectAtStart));
+      StyleInjector.preloadAssets(copy(toInject));
+      StyleInjector.preloadAssets(copy(toInjectAtEnd));
+    }
+    SelectorAnalyzer analyzer = StyleInjector.getSelectorAnalyzer();
+    if (analyzer != null) {
+      analyzer.analyze(
+          new String[] {sourceOf(toInjectAtStart), sourceOf(toInject), sourceOf(toInjectAtEnd)},
+          new String[][] {copy(toInjectAtStart), copy(toInject), copy(toInjectAtEnd)},
+          new String[][] {copy(toInjectAtStartIds), copy(toInjectIds), copy(toInjectAtEndIds)});
+    }
+
+    if (toInjectAtStart.length != 0) {
+      maybeReturn = insert(toInjectAtStart.join(""), true);
+      mark(maybeReturn, toInjectAtStartIds.join(" "));
+      if (toInjectAtStart == which) {
+        toReturn = maybeReturn;
+      }
+      toInjectAtStart.setLength(0);
+      toInjectAtStartIds.setLength(0);
+    }
+
+    if (toInject.length != 0) {
+      maybeReturn = insert(toInject.join(""), false);
+      mark(maybeReturn, toInjectIds.join(" "));
+      if (toInject == which) {
+        toReturn = maybeReturn;
+      }
+      toInject.setLength(0);
+      toInjectIds.setLength(0);
+    }
+
+    if (toInjectAtEnd.length != 0) {
+      maybeReturn = insert(toInjectAtEnd.join(""), false);
+      mark(maybeReturn, toInjectAtEndIds.join(" "));
+      if (toInjectAtEnd == which) {
+        toReturn = maybeReturn;
+      }
+      toInjectAtEnd.setLength(0);
+      toInjectAtEndIds.setLength(0);
+    }
+
+    needsInjection = false;
+
+    if (whenInjected.length != 0) {
+      ResolveCallbackFn<Void>[] resolved = Js.uncheckedCast(whenInjected.slice());
+      whenInjected.setLength(0);
+      for (ResolveCallbackFn<Void> resolve : resolved) {
+        resolve.onInvoke((Void) null);
+      }
+    }
+    return toReturn;
+  }
+
+  private HTMLStyleElement insert(String css, boolean atStart) {
+    if (container == null) {
+      return atStart ? StyleInjector.sImpl.injectStyleSheetAtStart(css)
+          : StyleInjector.sImpl.injectStyleSheet(css);
+    }
+    HTMLStyleElement style = StyleInjector.sImpl.createElement(css);
+    if (atStart) {
+      container.insertBefore(style, container.firstChild);
+    } else {
+      container.appendChild(style);
+    }
+    return style;
+  }
+
+  /**
+   * @return {@code true} if the stylesheet or link is in the container
+   */
+  private boolean isInjected(String id, String content) {
+    if (container == null) {
+      return Hydration.registry().isInjected(id, content);
+    }
+    return find(id, content) != null;
+  }
+
+  /**
+   * Marks a style element with the IDs of its stylesheets, and registers
+   * them with {@link Hydration} if dedupe is on.
+   */
+  private void mark(Element style, String ids) {
+    Hydration.mark(style, ids);
+    if (registry != null && container == null) {
+      registry.registerAll(ids);
+    }
+  }
+
+  /**
+   * @return {@code false} if dedupe is on and the stylesheet is either
+   *         pending in one of the queues or still in the container
+   */
+  private boolean isNew(JsArray<String> queue, JsArray<String> ids, String id, String css) {
+    if (registry == null) {
+      return true;
+    }
+    if (isQueued(queue, ids, id, css) || isQueued(toInjectAtStart, toInjectAtStartIds, id, css)
+        || isQueued(toInject, toInjectIds, id, css)
+        || isQueued(toInjectAtEnd, toInjectAtEndIds, id, css)) {
+      return false;
+    }
+    return !isInjected(id, css);
+  }
+
+  private static boolean isQueued(JsArray<String> queue, JsArray<String> ids, String id,
+      String css) {
+    int index = ids.indexOf(id);
+    return index >= 0 && css.equals(queue.getAt(index));
+  }
+
+  private Element find(String id, String content) {
+    return Hydration.find(container == null ? DomGlobal.document : container, id, content);
+  }
+
+  /**
+   * Queues the stylesheet unless the same content has already been injected
+   * into the container.
+   * 
+   * @return {@code true} if the stylesheet was queued
+   */
+  private boolean enqueue(JsArray<String> queue, JsArray<String> ids, String css,
+      boolean atStart) {
+    String id = Hydration.idOf(css);
+    if (!isNew(queue, ids, id, css)) {
+      return false;
+    }
+    recordStyle(queue, css, id);
+    if (atStart) {
+      queue.unshift(css);
+      ids.unshift(id);
+    } else {
+      queue.push(css);
+      ids.push(id);
+    }
+    return true;
+  }
+
+  private void recordStyle(JsArray<String> queue, String css, String id) {
+    StartupProfile.recordStyle(id, css.length());
+    if (CssCoverage.isTracking()) {
+      CssCoverage.track(css, id, sourceOf(queue), container);
+    }
+  }
+
+  /**
+   * @return the name of the bucket of a queue, used by diagnostics
+   */
+  private String sourceOf(JsArray<String> queue) {
+    return queue == toInjectAtStart ? "injectAtStart"
+        : queue == toInjectAtEnd ? "injectAtEnd"
+        : queue == toInject ? "inject" : "transaction";
+  }
+
+  /**
+   * Reserves the place of the stylesheet in its queue with a CSS comment,
+   * which is replaced once the stylesheet has been decompressed. If the queue
+   * has been flushed in the meantime, the stylesheet is queued again.
+   */
+  private Promise<Void> injectCompressed(JsArray<String> queue, JsArray<String> ids,
+      String base64, String format, boolean atStart) {
+    String placeholder = "/*" + placeholders++ + "*/";
+    if (atStart) {
+      queue.unshift(placeholder);
+      ids.unshift("");
+    } else {
+      queue.push(placeholder);
+      ids.push("");
+    }
+    decompressing++;
+    schedule();
+
+    return new Promise<>((resolve, reject) -> CompressedPayload.decode(base64, format).then(css -> {
+      int index = queue.indexOf(placeholder);
+      if (index < 0) {
+        enqueue(queue, ids, css, atStart);
+      } else {
+        String id = Hydration.idOf(css);
+        if (isNew(queue, ids, id, css)) {
+          recordStyle(queue, css, id);
+          queue.setAt(index, css);
+          ids.setAt(index, id);
+        } else {
+          queue.splice(index, 1);
+          ids.splice(index, 1);
+        }
+      }
+      decompressed();
+      whenInjected().then(ignored -> {
+        resolve.onInvoke((Void) null);
+        return null;
+      });
+      return null;
+    }, error -> {
+      int index = queue.indexOf(placeholder);
+      if (index >= 0) {
+        queue.splice(index, 1);
+        ids.splice(index, 1);
+      }
+      decompressed();
+      reject.onInvoke(error);
+      return null;
+    }));
+  }
+
+  /**
+   * Flushes the queues once the last pending stylesheet has been
+   * decompressed.
+   */
+  private void decompressed() {
+    if (--decompressing == 0) {
+      flushScheduled();
+    } else {
+      needsInjection = true;
+    }
+  }
+
+  /**
+   * Returns the element holding a deduped stylesheet, flushing first in case
+   * it is still pending.
+   */
+  private HTMLStyleElement flushAndFind(String css) {
+    if (needsInjection) {
+      flush(null);
+    }
+    return Js.uncheckedCast(find(Hydration.idOf(css), css));
+  }
+
+  /**
+   * Flushes the queues in one go, or in slices if {@link TimeSlicing} is
+   * enabled.
+   */
+  private void flushScheduled() {
+    if (!TimeSlicing.isEnabled()) {
+      flush(null);
+    } else if (!slicing) {
+      slicing = true;
+      flushSlice();
+    }
+  }
+
+  /**
+   * Injects chunks until the budget of the slice is used up. The queue of
+   * stylesheets injected at the start holds the most recent one first. Its
+   * chunks are taken from its end, i.e. the earliest injected stylesheets
+   * come first, and each chunk is inserted before the previous one. The
+   * other queues are appended in queue order. So the cascade order is the
+   * same as with a single flush.
+   */
+  private void flushSlice() {
+    double start = TimeSlicing.now();
+    try {
+      while (decompressing == 0 && injectChunk()) {
+        if (TimeSlicing.now() - start >= TimeSlicing.getBudget()) {
+          break;
+        }
+      }
+    } finally {
+      if (decompressing > 0) {
+        // resumed by decompressed()
+        slicing = false;
+      } else if (toInjectAtStart.length + toInject.length + toInjectAtEnd.length != 0) {
+        TimeSlicing.yieldThen(this::flushSlice);
+      } else {
+        slicing = false;
+        flush(null);
+      }
+    }
+  }
+
+  /**
+   * Injects up to {@link #CHUNK_SIZE} characters of queued stylesheets as one
+   * element.
+   * 
+   * @return {@code false} if the queues are empty
+   */
+  private boolean injectChunk() {
+    if (toInjectAtStart.length != 0) {
+      int from = toInjectAtStart.length;
+      int size = 0;
+      while (from > 0
+          && (size == 0 || size + toInjectAtStart.getAt(from - 1).length() <= CHUNK_SIZE)) {
+        size += toInjectAtStart.getAt(--from).length();
+      }
+      int count = toInjectAtStart.length - from;
+      injectChunk(splice(toInjectAtStart, from, count), splice(toInjectAtStartIds, from, count),
+          true, sourceOf(toInjectAtStart));
+      return true;
+    }
+
+    boolean atEnd = toInject.length == 0;
+    JsArray<String> queue = atEnd ? toInjectAtEnd : toInject;
+    JsArray<String> queueIds = atEnd ? toInjectAtEndIds : toInjectIds;
+    if (queue.length == 0) {
+      return false;
+    }
+    int count = 0;
+    int size = 0;
+    while (count < queue.length
+        && (size == 0 || size + queue.getAt(count).length() <= CHUNK_SIZE)) {
+      size += queue.getAt(count++).length();
+    }
+    injectChunk(splice(queue, 0, count), splice(queueIds, 0, count), false, sourceOf(queue));
+    return true;
+  }
+
+  /**
+   * Copies a queue. The copy is a plain JavaScript array, which is not a
+   * {@code String[]} at runtime and must not be cast to one.
+   */
+  private static String[] copy(JsArray<String> queue) {
+    return Js.uncheckedCast(queue.slice());
+  }
+
+  /**
+   * Removes elements from a queue. As with {@link #copy(JsArray)}, the
+   * removed elements are returned in a plain JavaScript array.
+   */
+  private static String[] splice(JsArray<String> queue, int from, int count) {
+    return Js.uncheckedCast(queue.splice(from, count));
+  }
+
+  @SuppressWarnings("unchecked")
+  private void addWhenInjected(ResolveCallbackFn<Void> resolve) {
+    whenInjected.push(resolve);
+  }
+
+  private void injectChunk(String[] css, String[] ids, boolean atStart, String source) {
+    StyleInjector.preloadAssets(css);
+    SelectorAnalyzer analyzer = StyleInjector.getSelectorAnalyzer();
+    if (analyzer != null) {
+      analyzer.analyze(new String[] {source}, new String[][] {css}, new String[][] {ids});
+    }
+    HTMLStyleElement style = insert(String.join("", css), atStart);
+    mark(style, String.join(" ", ids));
+  }
+
+  private void inject(boolean immediate) {
+    if (immediate) {
+      flush(null);
+    } else {
+      schedule();
+    }
+  }
+
+  /**
+   * Flushes in a microtask, i.e. once the running code returns, before the
+   * browser renders. Without native promises, e.g. in IE 11, flushes in a
+   * task instead.
+   */
+  private void schedule() {
+    if (!needsInjection) {
+      needsInjection = true;
+      if ("undefined".equals(Js.typeof(Js.asPropertyMap(DomGlobal.window).get("Promise")))) {
+        DomGlobal.setTimeout(ignored -> flushPending(), 0);
+      } else {
+        Promise.resolve((Void) null).then(ignored -> {
+          flushPending();
+          return null;
+        });
+      }
+    }
+  }
+
+  private void flushPending() {
+    if (needsInjection && decompressing == 0) {
+      flushScheduled();
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import elemental2.dom.DomGlobal;
+import elemental2.promise.Promise;
+import jsinterop.annotations.JsFunction;
+import jsinterop.annotations.JsMethod;
+import jsinterop.annotations.JsOverlay;
+import jsinterop.annotations.JsPackage;
+import jsinterop.annotations.JsType;
+import jsinterop.base.Js;
+
+/**
+ * Helper class for the Prioritized Task Scheduling API which is missing in
+ * elemental2-dom.
+ */
+@JsType(isNative = true, name = "Scheduler", namespace = JsPackage.GLOBAL)
+class TaskScheduler {
+
+  /**
+   * Task posted to the scheduler.
+   */
+  @JsFunction
+  interface TaskFn {
+    void onInvoke();
+  }
+
+  /**
+   * @return the scheduler of the window, {@code null} if not supported
+   */
+  @JsOverlay
+  static TaskScheduler get() {
+    Object scheduler = Js.asPropertyMap(DomGlobal.window).get("scheduler");
+    return "object".equals(Js.typeof(scheduler)) && scheduler != null
+        ? Js.uncheckedCast(scheduler) : null;
+  }
+
+  @JsOverlay
+  final boolean canYield() {
+    return "function".equals(Js.typeof(Js.asPropertyMap(this).get("yield")));
+  }
+
+  @JsMethod(name = "yield")
+  public native Promise<Object> yieldToBrowser();
+
+  public native Promise<Object> postTask(TaskFn task);
+}
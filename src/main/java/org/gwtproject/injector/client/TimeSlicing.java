@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import java.util.LinkedList;
+
+import elemental2.core.JsDate;
+import elemental2.dom.DomGlobal;
+import elemental2.dom.MessageChannel;
+import jsinterop.base.Js;
+
+/**
+ * Opt-in time slicing of large injection workloads, to avoid long tasks
+ * which delay input handling.
+ * <p>
+ * With a budget set, scheduled {@link StyleInjector} flushes inject their
+ * queued stylesheets in chunks over several tasks, and
+ * {@link ScriptInjector.FromString} bodies which opted in with
+ * {@link ScriptInjector.FromString#setDeferred(boolean)} are evaluated in
+ * later tasks instead of synchronously. Other scripts are still evaluated
+ * before {@code inject()} returns. Each task runs work until the budget is used up
+ * and then yields to the browser with {@code scheduler.yield()},
+ * {@code scheduler.postTask()} or a {@code MessageChannel} message, whichever
+ * is available. Cascade order of the stylesheets and evaluation order of the
+ * scripts are kept.
+ * <p>
+ * Explicit flushes, e.g. {@link StyleInjector#flush()}, still inject
+ * everything at once. Applications which never set a budget do not compile
+ * in the scheduling.
+ */
+public class TimeSlicing {
+
+  /**
+   * The settings while time slicing is on, {@code null} otherwise.
+   */
+  private static TimeSlicing current;
+
+  private static LinkedList<Runnable> tasks;
+  private static boolean scheduled;
+
+  private static MessageChannel channel;
+  private static LinkedList<Runnable> posted;
+
+  /**
+   * @param millis maximum time to spend per task, {@code 0} to turn time
+   *          slicing off. Default value is {@code 0}.
+   */
+  public static void setBudget(int millis) {
+    current = millis > 0 ? new TimeSlicing(millis) : null;
+  }
+
+  /**
+   * @return maximum time to spend per task, {@code 0} if time slicing is off
+   */
+  public static int getBudget() {
+    return current == null ? 0 : current.budget;
+  }
+
+  /**
+   * @return {@code true} if a budget is set
+   */
+  public static boolean isEnabled() {
+    return current != null;
+  }
+
+  /**
+   * Runs a task in a later slice, after all tasks queued before it.
+   */
+  static void run(Runnable task) {
+    if (tasks == null) {
+      tasks = new LinkedList<>();
+    }
+    tasks.add(task);
+    if (!scheduled) {
+      scheduled = true;
+      yieldThen(TimeSlicing::slice);
+    }
+  }
+
+  /**
+   * Runs the continuation in a new task, letting the browser handle input
+   * and render first.
+   */
+  static void yieldThen(Runnable continuation) {
+    TaskScheduler scheduler = TaskScheduler.get();
+    if (scheduler != null && scheduler.canYield()) {
+      scheduler.yieldToBrowser().then(ignored -> {
+        continuation.run();
+        return null;
+      });
+    } else if (scheduler != null) {
+      scheduler.postTask(continuation::run);
+    } else if (!"undefined".equals(
+        Js.typeof(Js.asPropertyMap(DomGlobal.window).get("MessageChannel")))) {
+      if (channel == null) {
+        posted = new LinkedList<>();
+        channel = new MessageChannel();
+        channel.port1.onmessage = event -> {
+          posted.removeFirst().run();
+          return null;
+        };
+      }
+      posted.add(continuation);
+      channel.port2.postMessage(null);
+    } else {
+      DomGlobal.setTimeout(ignored -> continuation.run(), 0);
+    }
+  }
+
+  /**
+   * @return high resolution time in milliseconds, or the current time where
+   *         {@code performance.now()} is not supported
+   */
+  static double now() {
+    if ("function".equals(Js.typeof(Js.asPropertyMap(DomGlobal.performance).get("now")))) {
+      return DomGlobal.performance.now();
+    }
+    return JsDate.now();
+  }
+
+  private static void slice() {
+    double start = now();
+    try {
+      while (!tasks.isEmpty()) {
+        tasks.removeFirst().run();
+        if (now() - start >= getBudget()) {
+          break;
+        }
+      }
+    } finally {
+      if (tasks.isEmpty()) {
+        scheduled = false;
+      } else {
+        yieldThen(TimeSlicing::slice);
+      }
+    }
+  }
+
+  private final int budget;
+
+  private TimeSlicing(int budget) {
+    this.budget = budget;
+  }
+}
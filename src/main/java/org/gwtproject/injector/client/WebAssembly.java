@@ -0,0 +1,36 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import elemental2.core.ArrayBuffer;
+import elemental2.dom.Response;
+import elemental2.promise.Promise;
+import jsinterop.annotations.JsPackage;
+import jsinterop.annotations.JsType;
+
+/**
+ * Helper class for the WebAssembly JavaScript API used by
+ * {@link ScriptInjector.FromWasmUrl}. Modules are kept as opaque objects.
+ */
+@JsType(isNative = true, namespace = JsPackage.GLOBAL)
+class WebAssembly {
+
+  public static native Promise<Object> compile(ArrayBuffer bytes);
+
+  public static native Promise<Object> compileStreaming(Response source);
+
+  public static native Promise<WasmInstance> instantiate(Object module, Object imports);
+}
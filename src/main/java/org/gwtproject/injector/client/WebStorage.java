@@ -0,0 +1,48 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import elemental2.dom.DomGlobal;
+import jsinterop.annotations.JsOverlay;
+import jsinterop.annotations.JsPackage;
+import jsinterop.annotations.JsType;
+import jsinterop.base.Js;
+
+/**
+ * Helper class for the Web Storage API which is missing in elemental2-dom.
+ */
+@JsType(isNative = true, name = "Storage", namespace = JsPackage.GLOBAL)
+class WebStorage {
+
+  /**
+   * @return the local storage of the window, {@code null} if it is not
+   *         available, e.g. disabled by privacy settings
+   */
+  @JsOverlay
+  static WebStorage local() {
+    try {
+      return Js.uncheckedCast(Js.asPropertyMap(DomGlobal.window).get("localStorage"));
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  public native String getItem(String key);
+
+  public native void setItem(String key, String value);
+
+  public native void removeItem(String key);
+}
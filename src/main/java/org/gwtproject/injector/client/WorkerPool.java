@@ -0,0 +1,291 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import elemental2.dom.Blob;
+import elemental2.dom.BlobPropertyBag;
+import elemental2.dom.DomGlobal;
+import elemental2.dom.Worker;
+import jsinterop.base.Js;
+import jsinterop.base.JsPropertyMap;
+
+/**
+ * A pool of dedicated workers used as an injection target by
+ * {@link ScriptInjector}. Scripts injected into a worker run off the main
+ * thread, which makes the pool a good fit for pure computation libraries
+ * (parsers, crypto, diffing) that would otherwise block the UI.
+ * <p>
+ * Workers are created lazily, up to {@link #getSize()} of them, and reused
+ * for subsequent injections. Each injection is dispatched to the least busy
+ * worker, so a library and the code using it may end up in different
+ * workers. Scripts that depend on each other have to be injected with the
+ * same affinity key, see
+ * {@link ScriptInjector.FromUrl#setWorkerAffinity(String)}: all injections
+ * with the same key run in the same worker, for as long as it lives.
+ * <p>
+ * The pool only runs scripts. Injected code cannot exchange messages with
+ * the page through the pool and its results are not returned: the callback
+ * only reports whether the script was loaded and executed without throwing.
+ * <p>
+ * Usage:
+ * <p>
+ * 
+ * <pre>
+ *   ScriptInjector.fromUrl("parser.js")
+ *     .setWorker(ScriptInjector.getWorkerPool())
+ *     .setCallback(callback)
+ *     .inject();
+ * </pre>
+ */
+public class WorkerPool {
+
+  /**
+   * Bootstrap script of every pooled worker. URLs are loaded with
+   * {@code importScripts}, script bodies are evaluated in the global scope.
+   */
+  private static final String BOOTSTRAP = "onmessage = function(e) {"
+      + "var d = e.data;"
+      + "try {"
+      + "if (d.url) { importScripts(d.url); } else { (0, eval)(d.text); }"
+      + "postMessage({id: d.id});"
+      + "} catch (x) {"
+      + "postMessage({id: d.id, error: String(x && x.message || x)});"
+      + "}"
+      + "};";
+
+  private static String bootstrapUrl;
+
+  /**
+   * Returns {@code true} if the browser supports dedicated workers created
+   * from blob URLs, which e.g. HtmlUnit does not.
+   */
+  public static boolean isSupported() {
+    JsPropertyMap<Object> window = Js.asPropertyMap(DomGlobal.window);
+    return !"undefined".equals(Js.typeof(window.get("Worker")))
+        && !"undefined".equals(Js.typeof(window.get("Blob")))
+        && !"undefined".equals(Js.typeof(window.get("URL")))
+        && "function".equals(Js.typeof(Js.asPropertyMap(window.get("URL")).get("createObjectURL")));
+  }
+
+  private static String getBootstrapUrl() {
+    if (bootstrapUrl == null) {
+      BlobPropertyBag options = BlobPropertyBag.create();
+      options.setType("text/javascript");
+      Blob blob = new Blob(new Blob.ConstructorBlobPartsArrayUnionType[] {
+          Blob.ConstructorBlobPartsArrayUnionType.of(BOOTSTRAP)}, options);
+      bootstrapUrl = DomUrl.createObjectURL(blob);
+    }
+    return bootstrapUrl;
+  }
+
+  /**
+   * A single worker of the pool with its in-flight requests.
+   */
+  private final class PooledWorker {
+    private final Worker worker;
+    private final Map<Integer, Callback<Void, Exception>> pending = new HashMap<>();
+    private boolean started;
+
+    PooledWorker() {
+      worker = factory.get();
+      worker.onmessage = e -> {
+        started = true;
+        JsPropertyMap<Object> data = Js.asPropertyMap(e.data);
+        Callback<Void, Exception> callback = pending.remove(Js.asInt(data.get("id")));
+        if (callback != null) {
+          if (data.has("error")) {
+            callback.onFailure(new CodeDownloadException(Js.asString(data.get("error"))));
+          } else {
+            callback.onSuccess(null);
+          }
+        }
+        return null;
+      };
+      // Errors of injected scripts are caught by the bootstrap, except for errors
+      // thrown later, e.g. in timers, which leave the worker usable. Only an error
+      // before the first response means that the bootstrap itself failed.
+      worker.onerror = e -> {
+        if (!started) {
+          terminate(new CodeDownloadException("Worker failed to start"));
+        }
+        return null;
+      };
+    }
+
+    void post(JsPropertyMap<Object> message, Callback<Void, Exception> callback) {
+      int id = nextId++;
+      pending.put(id, callback);
+      message.set("id", id);
+      worker.postMessage(message);
+    }
+
+    void terminate(Exception reason) {
+      worker.terminate();
+      workers.remove(this);
+      affinities.values().removeIf(affine -> affine == this);
+
+      List<Callback<Void, Exception>> callbacks = new ArrayList<>(pending.values());
+      pending.clear();
+      for (Callback<Void, Exception> callback : callbacks) {
+        if (callback != null) {
+          callback.onFailure(reason);
+        }
+      }
+    }
+  }
+
+  private final List<PooledWorker> workers = new ArrayList<>();
+  private final Map<String, PooledWorker> affinities = new HashMap<>();
+  private final Supplier<Worker> factory;
+  private int nextId;
+  private int size;
+
+  /**
+   * @param size maximum number of workers kept by this pool
+   */
+  public WorkerPool(int size) {
+    this(size, () -> new Worker(getBootstrapUrl()));
+  }
+
+  /**
+   * Creates a pool whose workers are created by the given factory, e.g. by
+   * tests without real workers.
+   */
+  WorkerPool(int size, Supplier<Worker> factory) {
+    this.factory = factory;
+    setSize(size);
+  }
+
+  /**
+   * @return maximum number of workers kept by this pool
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Changes the maximum number of workers. Shrinking the pool terminates the
+   * surplus workers, failing their pending injections with
+   * {@link CodeDownloadException.Reason#TERMINATED}.
+   * 
+   * @param size maximum number of workers, at least one
+   */
+  public void setSize(int size) {
+    assert size > 0 : "Worker pool needs at least one worker";
+    this.size = size;
+    while (workers.size() > size) {
+      workers.get(workers.size() - 1).terminate(
+          new CodeDownloadException("Worker pool was shrunk"));
+    }
+  }
+
+  /**
+   * Loads a script into one of the workers using {@code importScripts}.
+   * Relative URLs are resolved against the base URI of the current document.
+   * 
+   * @param scriptUrl URL of the JavaScript to be loaded
+   * @param callback callback invoked once the script was executed or failed
+   */
+  public void importScripts(String scriptUrl, Callback<Void, Exception> callback) {
+    importScripts(scriptUrl, null, callback);
+  }
+
+  /**
+   * Loads a script into the worker of the given affinity key using
+   * {@code importScripts}.
+   * 
+   * @param scriptUrl URL of the JavaScript to be loaded
+   * @param affinity key of the worker, {@code null} for the least busy one
+   * @param callback callback invoked once the script was executed or failed
+   */
+  public void importScripts(String scriptUrl, String affinity,
+      Callback<Void, Exception> callback) {
+    String url = new DomUrl(scriptUrl, DomGlobal.document.baseURI).href;
+    acquire(affinity).post(JsPropertyMap.of("url", url), callback);
+  }
+
+  /**
+   * Evaluates a script body in the global scope of one of the workers.
+   * 
+   * @param scriptBody the script text to be evaluated
+   * @param callback callback invoked once the script was executed or failed
+   */
+  public void evaluate(String scriptBody, Callback<Void, Exception> callback) {
+    evaluate(scriptBody, null, callback);
+  }
+
+  /**
+   * Evaluates a script body in the global scope of the worker of the given
+   * affinity key.
+   * 
+   * @param scriptBody the script text to be evaluated
+   * @param affinity key of the worker, {@code null} for the least busy one
+   * @param callback callback invoked once the script was executed or failed
+   */
+  public void evaluate(String scriptBody, String affinity,
+      Callback<Void, Exception> callback) {
+    acquire(affinity).post(JsPropertyMap.of("text", scriptBody), callback);
+  }
+
+  /**
+   * Terminates all workers of this pool. Pending injections fail with
+   * {@link CodeDownloadException.Reason#TERMINATED}. The pool stays usable
+   * and creates new workers on demand.
+   */
+  public void terminate() {
+    while (!workers.isEmpty()) {
+      workers.get(0).terminate(new CodeDownloadException("Worker pool was terminated"));
+    }
+  }
+
+  /**
+   * @return the worker of the affinity key, or the least busy worker, which
+   *         becomes the worker of the key
+   */
+  private PooledWorker acquire(String affinity) {
+    PooledWorker affine = affinity == null ? null : affinities.get(affinity);
+    if (affine == null) {
+      affine = acquire();
+      if (affinity != null) {
+        affinities.put(affinity, affine);
+      }
+    }
+    return affine;
+  }
+
+  private PooledWorker acquire() {
+    PooledWorker best = null;
+    for (PooledWorker worker : workers) {
+      if (best == null || worker.pending.size() < best.pending.size()) {
+        best = worker;
+      }
+    }
+
+    if (best == null || (!best.pending.isEmpty() && workers.size() < size)) {
+      best = new PooledWorker();
+      workers.add(best);
+    }
+    return best;
+  }
+}
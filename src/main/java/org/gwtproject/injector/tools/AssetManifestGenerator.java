@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.tools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Build-time tool generating the manifest read by
+ * {@code org.gwtproject.injector.client.AssetManifest}.
+ * <p>
+ * Every file of the asset directory is copied to the output directory under a
+ * content-hashed name, e.g. {@code js/widget.js} to
+ * {@code js/widget.3f2a9c1e07b4d5a6.js}, and listed in
+ * {@code manifest.json} with its URL. The hashed files never change, so they
+ * can be served with {@code Cache-Control: max-age=31536000, immutable},
+ * while the manifest itself should be revalidated.
+ * <p>
+ * Typically run from the {@code prepare-package} phase, e.g. with the
+ * exec-maven-plugin:
+ * <p>
+ * 
+ * <pre>
+ *   java org.gwtproject.injector.tools.AssetManifestGenerator \
+ *       src/main/assets target/www/assets assets/
+ * </pre>
+ */
+public class AssetManifestGenerator {
+
+  /**
+   * Name of the manifest written to the output directory.
+   */
+  public static final String MANIFEST = "manifest.json";
+
+  /**
+   * Generates the hashed files and the manifest.
+   * 
+   * @param args asset directory, output directory and URL prefix of the
+   *          hashed files
+   * @throws IOException if reading or writing fails
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 3) {
+      System.err.println("Usage: AssetManifestGenerator <assetDir> <outputDir> <urlPrefix>");
+      System.exit(1);
+    }
+    AssetManifestGenerator generator = new AssetManifestGenerator(Paths.get(args[1]), args[2]);
+    Map<String, String> manifest = generator.generate(Paths.get(args[0]));
+    System.out.println("Hashed " + manifest.size() + " assets");
+  }
+
+  /**
+   * @param content the content of a file
+   * @return the first 16 hex digits of its SHA-256
+   */
+  public static String hash(byte[] content) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+      StringBuilder hex = new StringBuilder();
+      for (int i = 0; i < 8; i++) {
+        hex.append(String.format("%02x", digest[i]));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Inserts the hash before the extension of a path, e.g.
+   * {@code js/widget.js} becomes {@code js/widget.<hash>.js}.
+   * 
+   * @param path the path of the file, with {@code /} separators
+   * @param hash the hash of its content
+   * @return the hashed path
+   */
+  public static String hashedPath(String path, String hash) {
+    int dot = path.lastIndexOf('.');
+    if (dot <= path.lastIndexOf('/') + 1) {
+      return path + "." + hash;
+    }
+    return path.substring(0, dot) + "." + hash + path.substring(dot);
+  }
+
+  /**
+   * @param manifest URLs by logical name
+   * @return the manifest as a JSON object, one entry per line
+   */
+  public static String toJson(Map<String, String> manifest) {
+    StringBuilder json = new StringBuilder("{");
+    String separator = "\n";
+    for (Map.Entry<String, String> entry : manifest.entrySet()) {
+      json.append(separator).append("  ");
+      appendString(json, entry.getKey());
+      json.append(": ");
+      appendString(json, entry.getValue());
+      separator = ",\n";
+    }
+    return json.append("\n}\n").toString();
+  }
+
+  private static void appendString(StringBuilder json, String value) {
+    json.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        json.append('\\').append(c);
+      } else if (c < 0x20) {
+        json.append(String.format("\\u%04x", (int) c));
+      } else {
+        json.append(c);
+      }
+    }
+    json.append('"');
+  }
+
+  private final Path outputDir;
+  private final String urlPrefix;
+
+  /**
+   * @param outputDir directory the hashed files and the manifest are written
+   *          to
+   * @param urlPrefix prefix of the URLs in the manifest, e.g.
+   *          {@code "assets/"}
+   */
+  public AssetManifestGenerator(Path outputDir, String urlPrefix) {
+    this.outputDir = outputDir;
+    this.urlPrefix = urlPrefix;
+  }
+
+  /**
+   * Copies all files of the asset directory under their hashed names and
+   * writes the manifest.
+   * 
+   * @param assetDir root of the assets
+   * @return the URLs of the hashed files by logical name, i.e. path relative
+   *         to the asset directory
+   * @throws IOException if reading or writing fails
+   */
+  public Map<String, String> generate(Path assetDir) throws IOException {
+    List<Path> assets;
+    try (Stream<Path> files = Files.walk(assetDir)) {
+      assets = files.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+    Map<String, String> manifest = new TreeMap<>();
+    for (Path asset : assets) {
+      byte[] content = Files.readAllBytes(asset);
+      String name = assetDir.relativize(asset).toString().replace('\\', '/');
+      String hashed = hashedPath(name, hash(content));
+      Path target = outputDir.resolve(hashed);
+      Files.createDirectories(target.getParent());
+      Files.write(target, content);
+      manifest.put(name, urlPrefix + hashed);
+    }
+    Files.createDirectories(outputDir);
+    Files.write(outputDir.resolve(MANIFEST), toJson(manifest).getBytes(StandardCharsets.UTF_8));
+    return manifest;
+  }
+}
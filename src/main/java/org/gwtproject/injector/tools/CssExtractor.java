@@ -0,0 +1,306 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.tools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Build-time tool moving constant CSS out of the compiled JavaScript into
+ * static, content-hashed stylesheets.
+ * <p>
+ * It scans Java sources for {@code StyleInjector.inject(...)} calls marked
+ * with a {@value #MARKER} comment right before them, whose CSS argument is a
+ * string literal or a concatenation of string literals, and which are not
+ * immediate:
+ * <p>
+ * 
+ * <pre>
+ *   &#47;* &#64;ExtractCss *&#47; StyleInjector.inject(".panel { margin: 0; }");
+ * </pre>
+ * <p>
+ * The CSS is minified and written to {@code <hash>.css}, and the call,
+ * marker included, is replaced with
+ * {@code StyleInjector.injectLink("<prefix><hash>.css")}. The stylesheets can
+ * then be served with far-future caching and are parsed only once, as CSS.
+ * <p>
+ * The rewrite changes when the CSS applies: a linked stylesheet applies only
+ * once it has been loaded from the network, in a later task, and is ordered
+ * with the other stylesheets by document position. So only mark calls whose
+ * code does not measure or rely on the styles right away. Unmarked calls,
+ * calls with computed CSS, immediate calls, {@code injectAtStart} and
+ * {@code injectAtEnd} calls and the {@code injectStylesheet} methods returning
+ * the element are left alone, and so is text in comments and string
+ * literals. Identical CSS is written only once.
+ * <p>
+ * Typically run from the {@code generate-sources} phase, e.g. with the
+ * exec-maven-plugin:
+ * <p>
+ * 
+ * <pre>
+ *   java org.gwtproject.injector.tools.CssExtractor \
+ *       src/main/java target/generated-sources/css target/www/css css/
+ * </pre>
+ */
+public class CssExtractor {
+
+  /**
+   * Comment marking a call to extract.
+   */
+  public static final String MARKER = "/* @ExtractCss */";
+
+  private static final String LITERAL = "\"(?:[^\"\\\\\\n]|\\\\.)*\"";
+
+  /**
+   * Matches, in group 1, the CSS argument of a marked call to rewrite, or, in
+   * group 2, comments and literals which are skipped.
+   */
+  private static final Pattern INJECT_CALL = Pattern.compile(
+      "/\\*\\s*@ExtractCss\\s*\\*/\\s*StyleInjector\\s*\\.\\s*inject\\s*\\(\\s*("
+      + LITERAL + "(?:\\s*\\+\\s*" + LITERAL + ")*)"
+      + "\\s*(?:,\\s*false\\s*)?\\)"
+      + "|(//[^\\n]*|/\\*(?s:.*?)\\*/|'(?:[^'\\\\\\n]|\\\\.)*'|" + LITERAL + ")");
+
+  private static final Pattern STRING_LITERAL = Pattern.compile(LITERAL);
+
+  /**
+   * Runs the extraction over a source tree.
+   * 
+   * @param args source directory, output source directory, stylesheet
+   *          directory and URL prefix of the stylesheets
+   * @throws IOException if reading or writing fails
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 4) {
+      System.err.println("Usage: CssExtractor <sourceDir> <outputSourceDir> <cssDir> <urlPrefix>");
+      System.exit(1);
+    }
+    CssExtractor extractor = new CssExtractor(Paths.get(args[2]), args[3]);
+    extractor.processTree(Paths.get(args[0]), Paths.get(args[1]));
+    System.out.println("Extracted " + extractor.getStylesheets().size() + " stylesheets");
+  }
+
+  /**
+   * Minifies CSS by removing comments and collapsing whitespace. Strings are
+   * kept as they are.
+   * 
+   * @param css the CSS to minify
+   * @return the minified CSS
+   */
+  public static String minify(String css) {
+    StringBuilder out = new StringBuilder(css.length());
+    boolean pendingSpace = false;
+    for (int i = 0; i < css.length(); i++) {
+      char c = css.charAt(i);
+      if (c == '/' && i + 1 < css.length() && css.charAt(i + 1) == '*') {
+        int end = css.indexOf("*/", i + 2);
+        i = end < 0 ? css.length() : end + 1;
+        pendingSpace = true;
+      } else if (Character.isWhitespace(c)) {
+        pendingSpace = true;
+      } else if (c == '"' || c == '\'') {
+        if (pendingSpace && needsSpace(out)) {
+          out.append(' ');
+        }
+        pendingSpace = false;
+        int start = i;
+        for (i++; i < css.length() && css.charAt(i) != c; i++) {
+          if (css.charAt(i) == '\\') {
+            i++;
+          }
+        }
+        out.append(css, start, Math.min(i + 1, css.length()));
+      } else {
+        if (c == '}' && out.length() > 0 && out.charAt(out.length() - 1) == ';') {
+          out.setLength(out.length() - 1);
+        }
+        if (pendingSpace && needsSpace(out) && "{};,>".indexOf(c) < 0) {
+          out.append(' ');
+        }
+        pendingSpace = false;
+        out.append(c);
+      }
+    }
+    return out.toString();
+  }
+
+  /**
+   * @param css the minified CSS
+   * @return the first 16 hex digits of its SHA-256
+   */
+  public static String hash(String css) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256")
+          .digest(css.getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder();
+      for (int i = 0; i < 8; i++) {
+        hex.append(String.format("%02x", digest[i]));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static boolean needsSpace(StringBuilder out) {
+    return out.length() > 0 && "{};:,>".indexOf(out.charAt(out.length() - 1)) < 0;
+  }
+
+  private static String unescape(String literal) {
+    StringBuilder out = new StringBuilder(literal.length());
+    for (int i = 1; i < literal.length() - 1; i++) {
+      char c = literal.charAt(i);
+      if (c != '\\') {
+        out.append(c);
+        continue;
+      }
+      c = literal.charAt(++i);
+      switch (c) {
+        case 'n':
+          out.append('\n');
+          break;
+        case 't':
+          out.append('\t');
+          break;
+        case 'r':
+          out.append('\r');
+          break;
+        case 'b':
+          out.append('\b');
+          break;
+        case 'f':
+          out.append('\f');
+          break;
+        case 'u':
+          while (literal.charAt(i) == 'u') {
+            i++;
+          }
+          out.append((char) Integer.parseInt(literal.substring(i, i + 4), 16));
+          i += 3;
+          break;
+        default:
+          if (c >= '0' && c <= '7') {
+            int end = i + 1;
+            while (end < literal.length() - 1 && end < i + 3
+                && literal.charAt(end) >= '0' && literal.charAt(end) <= '7') {
+              end++;
+            }
+            out.append((char) Integer.parseInt(literal.substring(i, end), 8));
+            i = end - 1;
+          } else {
+            out.append(c);
+          }
+          break;
+      }
+    }
+    return out.toString();
+  }
+
+  private final Path cssDir;
+  private final String urlPrefix;
+  private final Map<String, String> stylesheets = new LinkedHashMap<>();
+
+  /**
+   * @param cssDir directory the stylesheets are written to
+   * @param urlPrefix prefix of the stylesheet URLs in the rewritten calls,
+   *          e.g. {@code "css/"}
+   */
+  public CssExtractor(Path cssDir, String urlPrefix) {
+    this.cssDir = cssDir;
+    this.urlPrefix = urlPrefix;
+  }
+
+  /**
+   * @return the extracted stylesheets, minified CSS by file name
+   */
+  public Map<String, String> getStylesheets() {
+    return Collections.unmodifiableMap(stylesheets);
+  }
+
+  /**
+   * Rewrites the marked constant CSS injections of one compilation unit and
+   * writes their stylesheets.
+   * 
+   * @param source the Java source
+   * @return the rewritten source, the same string if nothing was extracted
+   * @throws IOException if writing a stylesheet fails
+   */
+  public String process(String source) throws IOException {
+    Matcher call = INJECT_CALL.matcher(source);
+    StringBuffer out = new StringBuffer();
+    while (call.find()) {
+      if (call.group(1) == null) {
+        call.appendReplacement(out, Matcher.quoteReplacement(call.group()));
+        continue;
+      }
+      StringBuilder css = new StringBuilder();
+      Matcher literal = STRING_LITERAL.matcher(call.group(1));
+      while (literal.find()) {
+        css.append(unescape(literal.group()));
+      }
+      String file = write(minify(css.toString()));
+      call.appendReplacement(out, Matcher.quoteReplacement(
+          "StyleInjector.injectLink(\"" + urlPrefix + file + "\")"));
+    }
+    call.appendTail(out);
+    return out.toString();
+  }
+
+  /**
+   * Processes all Java sources of a tree and writes them, rewritten or not,
+   * to the output tree.
+   * 
+   * @param sourceDir root of the sources
+   * @param outputDir root of the rewritten sources
+   * @throws IOException if reading or writing fails
+   */
+  public void processTree(Path sourceDir, Path outputDir) throws IOException {
+    List<Path> sources;
+    try (Stream<Path> files = Files.walk(sourceDir)) {
+      sources = files.filter(f -> f.toString().endsWith(".java"))
+          .collect(Collectors.toCollection(ArrayList::new));
+    }
+    for (Path source : sources) {
+      String text = new String(Files.readAllBytes(source), StandardCharsets.UTF_8);
+      Path target = outputDir.resolve(sourceDir.relativize(source));
+      Files.createDirectories(target.getParent());
+      Files.write(target, process(text).getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private String write(String css) throws IOException {
+    String file = hash(css) + ".css";
+    if (stylesheets.put(file, css) == null) {
+      Files.createDirectories(cssDir);
+      Files.write(cssDir.resolve(file), css.getBytes(StandardCharsets.UTF_8));
+    }
+    return file;
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Build-time helper producing the compressed constants accepted by
+ * {@code StyleInjector.injectCompressed} and
+ * {@code ScriptInjector.FromString.setCompression}.
+ * <p>
+ * Run with a format and one or more files to print a Java constant per file:
+ * <p>
+ * 
+ * <pre>
+ *   java org.gwtproject.injector.tools.PayloadCompressor gzip theme.css
+ * </pre>
+ * <p>
+ * The compressed payload has to stay below the 64KB limit of a Java string
+ * constant.
+ */
+public class PayloadCompressor {
+
+  private static final int LINE_LENGTH = 76;
+
+  /**
+   * Prints a Java constant for each file.
+   * 
+   * @param args the format followed by the files to compress
+   * @throws IOException if reading a file fails
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: PayloadCompressor <gzip|deflate|deflate-raw> <file>...");
+      System.exit(1);
+    }
+    for (int i = 1; i < args.length; i++) {
+      String text = new String(Files.readAllBytes(Paths.get(args[i])), StandardCharsets.UTF_8);
+      String name = Paths.get(args[i]).getFileName().toString()
+          .replaceAll("[^A-Za-z0-9]", "_").toUpperCase();
+      System.out.println(toConstant(name, compress(text, args[0])));
+    }
+  }
+
+  /**
+   * Compresses UTF-8 text and encodes it as base64.
+   * 
+   * @param text the CSS or JavaScript
+   * @param format {@code "gzip"}, {@code "deflate"} or {@code "deflate-raw"}
+   * @return the base64 encoded payload
+   */
+  public static String compress(String text, String format) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream out = open(bytes, format)) {
+      out.write(text.getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return Base64.getEncoder().encodeToString(bytes.toByteArray());
+  }
+
+  /**
+   * Formats a payload as a Java constant declaration, split over several
+   * lines.
+   * 
+   * @param name the name of the constant
+   * @param payload the base64 encoded payload
+   * @return the declaration
+   */
+  public static String toConstant(String name, String payload) {
+    StringBuilder out = new StringBuilder("public static final String ").append(name)
+        .append(" =");
+    for (int i = 0; i < payload.length(); i += LINE_LENGTH) {
+      out.append(i == 0 ? "\n    \"" : "\n    + \"")
+          .append(payload, i, Math.min(i + LINE_LENGTH, payload.length())).append('"');
+    }
+    if (payload.isEmpty()) {
+      out.append(" \"\"");
+    }
+    return out.append(';').toString();
+  }
+
+  private static OutputStream open(OutputStream out, String format) throws IOException {
+    switch (format) {
+      case "gzip":
+        return new GZIPOutputStream(out);
+      case "deflate":
+        return new DeflaterOutputStream(out, new Deflater(Deflater.BEST_COMPRESSION));
+      case "deflate-raw":
+        return new DeflaterOutputStream(out, new Deflater(Deflater.BEST_COMPRESSION, true));
+      default:
+        throw new IllegalArgumentException("Unknown format " + format);
+    }
+  }
+}
@@ -15,8 +15,25 @@
  */
 package org.gwtproject.injector;
 
+import org.gwtproject.injector.client.AssetManifestTest;
+import org.gwtproject.injector.client.CssCoverageTest;
+import org.gwtproject.injector.client.EvaluationStrategyTest;
+import org.gwtproject.injector.client.HydrationTest;
+import org.gwtproject.injector.client.InjectionSoakTest;
+import org.gwtproject.injector.client.InjectionTest;
+import org.gwtproject.injector.client.InjectionTransactionTest;
+import org.gwtproject.injector.client.IntentLoaderTest;
+import org.gwtproject.injector.client.JsonpClientTest;
+import org.gwtproject.injector.client.LoadingPolicyTest;
+import org.gwtproject.injector.client.SandboxPoolTest;
+import org.gwtproject.injector.client.ScriptBundleTest;
 import org.gwtproject.injector.client.ScriptInjectorTest;
+import org.gwtproject.injector.client.SelectorAnalyzerTest;
+import org.gwtproject.injector.client.StartupProfileTest;
 import org.gwtproject.injector.client.StyleInjectorTest;
+import org.gwtproject.injector.client.StyleScopeTest;
+import org.gwtproject.injector.client.TimeSlicingTest;
+import org.gwtproject.injector.client.WorkerPoolTest;
 
 import com.google.gwt.junit.tools.GWTTestSuite;
 
@@ -29,8 +46,25 @@ public class InjectorGwtSuite {
   public static Test suite() {
     GWTTestSuite suite = new GWTTestSuite("All injector tests");
 
+    suite.addTestSuite(AssetManifestTest.class);
+    suite.addTestSuite(CssCoverageTest.class);
+    suite.addTestSuite(EvaluationStrategyTest.class);
+    suite.addTestSuite(HydrationTest.class);
+    suite.addTestSuite(InjectionSoakTest.class);
+    suite.addTestSuite(InjectionTest.class);
+    suite.addTestSuite(InjectionTransactionTest.class);
+    suite.addTestSuite(IntentLoaderTest.class);
+    suite.addTestSuite(JsonpClientTest.class);
+    suite.addTestSuite(LoadingPolicyTest.class);
+    suite.addTestSuite(SandboxPoolTest.class);
+    suite.addTestSuite(ScriptBundleTest.class);
     suite.addTestSuite(ScriptInjectorTest.class);
+    suite.addTestSuite(SelectorAnalyzerTest.class);
+    suite.addTestSuite(StartupProfileTest.class);
     suite.addTestSuite(StyleInjectorTest.class);
+    suite.addTestSuite(StyleScopeTest.class);
+    suite.addTestSuite(TimeSlicingTest.class);
+    suite.addTestSuite(WorkerPoolTest.class);
 
     return suite;
   }
@@ -1,10 +1,16 @@
 package org.gwtproject.injector;
 
+import org.gwtproject.injector.tools.AssetManifestGeneratorTest;
+import org.gwtproject.injector.tools.CssExtractorTest;
+import org.gwtproject.injector.tools.PayloadCompressorTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
+    AssetManifestGeneratorTest.class,
+    CssExtractorTest.class,
+    PayloadCompressorTest.class,
 })
 public class InjectorJreSuite {
 
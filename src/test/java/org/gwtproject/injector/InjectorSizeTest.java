@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Guards the startup payload of the injector. Compiles a minimal entry point
+ * injecting a stylesheet and a script, and the same entry point without the
+ * injections, and fails if the difference of the compiled output exceeds the
+ * budget.
+ * <p>
+ * The budget in bytes can be changed with the {@value #BUDGET_PROPERTY}
+ * system property. Runs in the failsafe phase, as it forks the GWT compiler.
+ */
+public class InjectorSizeTest {
+
+  static final String BUDGET_PROPERTY = "injector.sizeBudget";
+
+  /**
+   * The injector measured 5254 bytes with GWT 2.8.2, plus some headroom. Optional
+   * features are only compiled in when the application enables them, so they do
+   * not count against the budget.
+   */
+  private static final long DEFAULT_BUDGET = 6 * 1024;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testCompiledSize() throws IOException, InterruptedException {
+    long budget = Long.getLong(BUDGET_PROPERTY, DEFAULT_BUDGET);
+    long baseline = compile("org.gwtproject.injector.size.SizeBaseline", "sizebaseline");
+    long injector = compile("org.gwtproject.injector.size.SizeInjector", "sizeinjector");
+
+    long size = injector - baseline;
+    assertTrue("Injector adds " + size + " bytes to the compiled output, budget is " + budget
+        + " bytes", size <= budget);
+  }
+
+  /**
+   * @return the size of the largest permutation
+   */
+  private long compile(String module, String name) throws IOException, InterruptedException {
+    Path war = folder.newFolder(name).toPath();
+    List<String> command = Arrays.asList(
+        Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+        "-cp", System.getProperty("java.class.path"),
+        "com.google.gwt.dev.Compiler",
+        "-war", war.toString(),
+        "-style", "OBFUSCATED",
+        "-optimize", "9",
+        "-logLevel", "WARN",
+        module);
+    Process compiler = new ProcessBuilder(command).inheritIO().start();
+    assertEquals("Compilation of " + module + " failed", 0, compiler.waitFor());
+
+    try (Stream<Path> files = Files.walk(war.resolve(name))) {
+      return files.filter(f -> f.toString().endsWith(".cache.js"))
+          .mapToLong(f -> f.toFile().length())
+          .max()
+          .orElseThrow(() -> new AssertionError("No output for " + module));
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import com.google.gwt.junit.client.GWTTestCase;
+
+/**
+ * Tests for {@link AssetManifest}.
+ */
+public class AssetManifestTest extends GWTTestCase {
+  private static final int TEST_DELAY = 10000;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.injector.InjectorTest";
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    AssetManifest.clear();
+  }
+
+  public void testResolve() {
+    AssetManifest.set("{\"app.js\": \"js/app.0123456789abcdef.js\"}");
+    assertEquals("js/app.0123456789abcdef.js", AssetManifest.resolve("app.js"));
+    assertEquals("other.js", AssetManifest.resolve("other.js"));
+
+    AssetManifest.set("{}");
+    assertEquals("app.js", AssetManifest.resolve("app.js"));
+  }
+
+  public void testInvalid() {
+    for (String json : new String[] {"{", "\"app.js\"", "null"}) {
+      try {
+        AssetManifest.set(json);
+        fail("Expected IllegalArgumentException for " + json);
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  /**
+   * A loaded manifest redirects the logical name to the hashed script.
+   */
+  public void testLoad() {
+    if (!nativeFetchSupported()) {
+      return;
+    }
+    delayTestFinish(TEST_DELAY);
+    assertSame(AssetManifest.load("asset_manifest_test.json"),
+        AssetManifest.load("asset_manifest_test.json"));
+    AssetManifest.load("asset_manifest_test.json").then(ignored -> {
+      ScriptInjector.fromUrl("asset_manifest_test.js").setRemoveTag(true)
+          .setCallback(new Callback<Void, Exception>() {
+            @Override
+            public void onFailure(Exception reason) {
+              fail("Injection failed: " + reason.toString());
+            }
+
+            @Override
+            public void onSuccess(Void result) {
+              assertEquals(1, nativeGetVar());
+              finishTest();
+            }
+          }).inject();
+      return null;
+    });
+  }
+
+  public void testLoadFailure() {
+    if (!nativeFetchSupported()) {
+      return;
+    }
+    delayTestFinish(TEST_DELAY);
+    AssetManifest.load("uNkNoWn_mAnIfEsT_404.json").then(ignored -> {
+      fail("Manifest unexpectedly loaded.");
+      return null;
+    }, error -> {
+      assertTrue(error instanceof CodeDownloadException);
+      finishTest();
+      return null;
+    });
+  }
+
+  private native boolean nativeFetchSupported() /*-{
+    return typeof fetch === "function" && typeof Promise === "function"
+        && typeof Promise.all === "function";
+  }-*/;
+
+  private native int nativeGetVar() /*-{
+    return window.__ti_asset_manifest_var__;
+  }-*/;
+}
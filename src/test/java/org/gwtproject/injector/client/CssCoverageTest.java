@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import com.google.gwt.junit.client.GWTTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import elemental2.dom.DomGlobal;
+import elemental2.dom.Element;
+
+/**
+ * Tests for {@link CssCoverage}.
+ */
+public class CssCoverageTest extends GWTTestCase {
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.injector.InjectorTest";
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    CssCoverage.stop();
+    CssCoverage.reset();
+  }
+
+  public void testParse() {
+    String css = "/* x */ @import url(a.css); .a { color: red; }\n"
+        + "@media (min-width: 10px) { .b, .c { content: \"}\"; } }\n"
+        + "@font-face { font-family: x; } @keyframes k { from { top: 0; } }";
+    List<int[]> rules = new ArrayList<>();
+    CssParser.parse(css, 0, css.length(), rules);
+
+    assertEquals(2, rules.size());
+    assertEquals(".a", css.substring(rules.get(0)[0], rules.get(0)[1]).trim());
+    assertEquals(".a { color: red; }", css.substring(rules.get(0)[0], rules.get(0)[2]));
+    assertEquals(".b, .c { content: \"}\"; }", css.substring(rules.get(1)[0], rules.get(1)[2]));
+  }
+
+  public void testQueries() {
+    assertQueries(CssCoverage.toQueries("a:hover, .b::before"), "a", ".b");
+    assertQueries(CssCoverage.toQueries("ul > :focus"), "ul > *");
+    assertQueries(CssCoverage.toQueries("a :visited"), "a *");
+    assertQueries(CssCoverage.toQueries("li:not(.x, .y):first-child"),
+        "li:not(.x, .y):first-child");
+    assertQueries(CssCoverage.toQueries("[title=\"a,b\"]::-moz-selection"), "[title=\"a,b\"]");
+  }
+
+  /**
+   * Rules matching no element are reported with their source.
+   */
+  public void testUnmatched() {
+    Element used = DomGlobal.document.createElement("div");
+    used.className = "cssCoverageTestUsed";
+    DomGlobal.document.body.appendChild(used);
+
+    CssCoverage.start(60000);
+    String unused = ".cssCoverageTestUnused { left: 10px; }";
+    StyleInjector.inject(".cssCoverageTestUsed:hover { left: 10px; }" + unused, true);
+    StyleInjector.injectAtStart(".cssCoverageTestAlsoUnused { left: 10px; }", true);
+    CssCoverage.sample();
+
+    assertEquals(3, CssCoverage.getTrackedRules());
+    List<CssCoverage.Rule> rules = CssCoverage.getUnmatchedRules();
+    assertEquals(2, rules.size());
+    assertEquals(".cssCoverageTestUnused", rules.get(0).getSelector());
+    assertEquals("inject", rules.get(0).getSource());
+    assertEquals(unused.length(), rules.get(0).getSize());
+
+    Map<String, Integer> sizes = CssCoverage.getUnmatchedSize();
+    assertEquals(Integer.valueOf(unused.length()), sizes.get("inject"));
+    assertTrue(sizes.containsKey("injectAtStart"));
+
+    Element late = DomGlobal.document.createElement("div");
+    late.className = "cssCoverageTestUnused";
+    DomGlobal.document.body.appendChild(late);
+    CssCoverage.sample();
+    assertEquals(1, CssCoverage.getUnmatchedRules().size());
+  }
+
+  private void assertQueries(String[] actual, String... expected) {
+    assertEquals(expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], actual[i]);
+    }
+  }
+}
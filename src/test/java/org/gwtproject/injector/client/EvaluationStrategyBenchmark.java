@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import com.google.gwt.junit.client.GWTTestCase;
+
+import elemental2.dom.DomGlobal;
+
+/**
+ * Compares the {@link EvaluationStrategy evaluation strategies} on payloads
+ * of about 10 KB, 100 KB and 1 MB, each evaluated repeatedly, and logs the
+ * average time per evaluation to the console. Not part of the test suite,
+ * run it on its own in the browsers of interest, e.g. with
+ * {@code mvn verify -Dit.test=EvaluationStrategyBenchmark}.
+ */
+public class EvaluationStrategyBenchmark extends GWTTestCase {
+  private static final int TEST_DELAY = 600000;
+
+  private static final int[] SIZES = {10 * 1024, 100 * 1024, 1024 * 1024};
+
+  private static final int RUNS = 20;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.injector.InjectorTest";
+  }
+
+  public void testScriptElement() {
+    run(EvaluationStrategy.SCRIPT_ELEMENT, "SCRIPT_ELEMENT");
+  }
+
+  public void testBlobUrl() {
+    run(EvaluationStrategy.BLOB_URL, "BLOB_URL");
+  }
+
+  public void testFunction() {
+    run(EvaluationStrategy.FUNCTION, "FUNCTION");
+  }
+
+  public void testIndirectEval() {
+    run(EvaluationStrategy.INDIRECT_EVAL, "INDIRECT_EVAL");
+  }
+
+  private void run(EvaluationStrategy strategy, String name) {
+    delayTestFinish(TEST_DELAY);
+    next(strategy, name, 0, 0, 0);
+  }
+
+  /**
+   * Evaluates the payloads one after another, waiting for asynchronous
+   * strategies to finish before the next run.
+   */
+  private void next(EvaluationStrategy strategy, String name, int size, int run, double total) {
+    if (size == SIZES.length) {
+      finishTest();
+      return;
+    }
+    if (run == RUNS) {
+      DomGlobal.console.log(name + " " + SIZES[size] / 1024 + " KB: "
+          + Math.round(total / RUNS * 100) / 100.0 + " ms");
+      next(strategy, name, size + 1, 0, 0);
+      return;
+    }
+    // the same body on every run, so caching strategies can benefit
+    String body = payload(SIZES[size]);
+    double start = DomGlobal.performance.now();
+    ScriptInjector.fromString(body).setEvaluationStrategy(strategy)
+        .setCallback(new Callback<Void, Exception>() {
+          @Override
+          public void onFailure(Exception reason) {
+            fail(name + " failed: " + reason);
+          }
+
+          @Override
+          public void onSuccess(Void result) {
+            double elapsed = DomGlobal.performance.now() - start;
+            next(strategy, name, size, run + 1, total + elapsed);
+          }
+        }).inject();
+  }
+
+  /**
+   * Generates a script of about the given size in characters, made of
+   * functions the engine has to parse and a loop it has to run.
+   */
+  private static String payload(int size) {
+    StringBuilder body = new StringBuilder(size + 256);
+    body.append("window.__ti_es_bench__ = (function() {\n  var sum = 0;\n");
+    for (int i = 0; body.length() < size; i++) {
+      body.append("  function f").append(i).append("(a, b) { return a * ").append(i)
+          .append(" + b % 7 + 'x'.length; }\n  sum += f").append(i).append("(")
+          .append(i).append(", 3);\n");
+    }
+    body.append("  return sum;\n})();\n");
+    return body.toString();
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import com.google.gwt.junit.client.GWTTestCase;
+
+import elemental2.dom.DomGlobal;
+import elemental2.dom.HTMLScriptElement;
+import elemental2.dom.Window;
+
+/**
+ * Evaluates scripts with each {@link EvaluationStrategy}.
+ */
+public class EvaluationStrategyTest extends GWTTestCase {
+  private static final int TEST_DELAY = 10000;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.injector.InjectorTest";
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    ScriptInjector.setDefaultEvaluationStrategy(null);
+  }
+
+  public void testScriptElement() {
+    int nodes = countHead();
+    ScriptInjector.fromString("var __ti_es_element__ = 1;")
+        .setEvaluationStrategy(EvaluationStrategy.SCRIPT_ELEMENT).inject();
+    assertEquals(1, nativeGet("__ti_es_element__"));
+    assertEquals(nodes, countHead());
+  }
+
+  public void testBlobUrl() {
+    if (!EvaluationStrategies.BlobUrl.isSupported()) {
+      return;
+    }
+    delayTestFinish(TEST_DELAY);
+    int nodes = countHead();
+    ScriptInjector.fromString("var __ti_es_blob__ = 1;")
+        .setEvaluationStrategy(EvaluationStrategy.BLOB_URL)
+        .setCallback(new Callback<Void, Exception>() {
+          @Override
+          public void onFailure(Exception reason) {
+            fail("Blob URL script failed: " + reason);
+          }
+
+          @Override
+          public void onSuccess(Void result) {
+            assertEquals(1, nativeGet("__ti_es_blob__"));
+            assertEquals(nodes, countHead());
+            finishTest();
+          }
+        }).inject();
+    // evaluated asynchronously
+    assertEquals(0, nativeGet("__ti_es_blob__"));
+  }
+
+  /**
+   * Object URLs are reused for the same body, and only a few are kept.
+   */
+  public void testBlobUrlCache() {
+    if (!EvaluationStrategies.BlobUrl.isSupported()) {
+      return;
+    }
+    EvaluationStrategies.BlobUrl strategy = new EvaluationStrategies.BlobUrl();
+    String body = "window.__ti_es_blob_cache__ = 1;";
+    strategy.evaluate(ScriptInjector.currentWindow(), body, true, null);
+    strategy.evaluate(ScriptInjector.currentWindow(), body, true, null);
+    assertEquals(1, strategy.size());
+
+    for (int i = 0; i < EvaluationStrategies.BlobUrl.CACHE_SIZE + 4; i++) {
+      strategy.evaluate(ScriptInjector.currentWindow(), "window.__ti_es_blob_cache__ = " + i + ";",
+          true, null);
+    }
+    assertEquals(EvaluationStrategies.BlobUrl.CACHE_SIZE, strategy.size());
+  }
+
+  public void testFunction() {
+    ScriptInjector.fromString("window.__ti_es_function__ = 1; var __ti_es_local__ = 1;")
+        .setEvaluationStrategy(EvaluationStrategy.FUNCTION).inject();
+    assertEquals(1, nativeGet("__ti_es_function__"));
+    // declarations are local to the function
+    assertEquals(0, nativeGet("__ti_es_local__"));
+  }
+
+  public void testIndirectEval() {
+    int nodes = countHead();
+    ScriptInjector.fromString("var __ti_es_eval__ = 1;")
+        .setEvaluationStrategy(EvaluationStrategy.INDIRECT_EVAL).inject();
+    assertEquals(1, nativeGet("__ti_es_eval__"));
+    assertEquals(nodes, countHead());
+  }
+
+  public void testDefaultStrategy() {
+    ScriptInjector.setDefaultEvaluationStrategy(EvaluationStrategy.INDIRECT_EVAL);
+    boolean[] called = new boolean[1];
+    ScriptInjector.fromString("var __ti_es_default__ = 1;").setRemoveTag(false)
+        .setCallback(new Callback<Void, Exception>() {
+          @Override
+          public void onFailure(Exception reason) {
+            fail("Default strategy failed: " + reason);
+          }
+
+          @Override
+          public void onSuccess(Void result) {
+            called[0] = true;
+          }
+        }).inject();
+    assertTrue(called[0]);
+    assertEquals(1, nativeGet("__ti_es_default__"));
+  }
+
+  /**
+   * An asynchronous strategy is rejected as default, so injections stay
+   * synchronous.
+   */
+  public void testAsynchronousDefaultStrategy() {
+    EvaluationStrategy later = new EvaluationStrategy() {
+      @Override
+      public HTMLScriptElement evaluate(Window window, String body, boolean removeTag,
+          Callback<Void, Exception> callback) {
+        DomGlobal.setTimeout(ignored -> EvaluationStrategy.SCRIPT_ELEMENT.evaluate(window, body,
+            removeTag, callback), 0);
+        return null;
+      }
+
+      @Override
+      public boolean isSynchronous() {
+        return false;
+      }
+    };
+    try {
+      ScriptInjector.setDefaultEvaluationStrategy(later);
+      fail("Asynchronous default strategy was accepted");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+    assertNotNull(ScriptInjector.fromString("var __ti_es_sync_default__ = 1;").inject());
+    assertEquals(1, nativeGet("__ti_es_sync_default__"));
+  }
+
+  /**
+   * Exceptions thrown by an evaluated script reach the callback.
+   */
+  public void testFailure() {
+    Exception[] failure = new Exception[1];
+    ScriptInjector.fromString("throw new Error('__ti_es_failure__');")
+        .setEvaluationStrategy(EvaluationStrategy.FUNCTION)
+        .setCallback(new Callback<Void, Exception>() {
+          @Override
+          public void onFailure(Exception reason) {
+            failure[0] = reason;
+          }
+
+          @Override
+          public void onSuccess(Void result) {
+            fail("Failing script succeeded");
+          }
+        }).inject();
+    assertTrue(failure[0] instanceof CodeDownloadException);
+  }
+
+  private int countHead() {
+    return (int) DomGlobal.document.head.childElementCount;
+  }
+
+  private native int nativeGet(String name) /*-{
+    return window[name] || 0;
+  }-*/;
+}
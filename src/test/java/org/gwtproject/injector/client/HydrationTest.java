@@ -0,0 +1,200 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import com.google.gwt.junit.client.GWTTestCase;
+
+import elemental2.dom.DomGlobal;
+import elemental2.dom.Element;
+import elemental2.dom.HTMLStyleElement;
+
+/**
+ * Tests for {@link Hydration}.
+ */
+public class HydrationTest extends GWTTestCase {
+  private static final int TEST_DELAY = 10000;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.injector.InjectorTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    StyleInjector.setDedupe(true);
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    StyleInjector.setDedupe(false);
+  }
+
+  /**
+   * A style from a pre-rendered snapshot is not injected again.
+   */
+  public void testHydrateStyle() {
+    // Register the marks of styles injected by earlier tests without dedupe
+    Hydration.hydrate();
+    String css = "#hydrationTestSnapshot { left: 10px; }";
+    Element snapshot = DomGlobal.document.createElement("style");
+    snapshot.textContent = css;
+    snapshot.setAttribute(Hydration.ATTRIBUTE, Hydration.idOf(css));
+    DomGlobal.document.head.appendChild(snapshot);
+
+    assertFalse(Hydration.isInjected(Hydration.idOf(css)));
+    assertEquals(1, Hydration.hydrate());
+    assertTrue(Hydration.isInjected(Hydration.idOf(css)));
+    assertEquals(0, Hydration.hydrate());
+
+    int styles = countStyles();
+    StyleInjector.inject(css, true);
+    assertEquals(styles, countStyles());
+    assertSame(snapshot, StyleInjector.injectStylesheet(css));
+    assertEquals(styles, countStyles());
+  }
+
+  /**
+   * Injected styles are marked and injected only once.
+   */
+  public void testMarkStyle() {
+    String first = "#hydrationTestFirst { left: 10px; }";
+    String second = "#hydrationTestSecond { left: 10px; }";
+    StyleInjector.inject(first);
+    StyleInjector.inject(second);
+    StyleInjector.inject(first);
+    HTMLStyleElement style = StyleInjector.injectStylesheet(second);
+
+    assertNotNull(style);
+    assertEquals(first + second, style.textContent);
+    assertEquals(Hydration.idOf(first) + " " + Hydration.idOf(second),
+        style.getAttribute(Hydration.ATTRIBUTE));
+  }
+
+  /**
+   * A kept inline script is evaluated only once.
+   */
+  public void testMarkScript() {
+    String body = "window.__hydration_test_var__ = (window.__hydration_test_var__ || 0) + 1;";
+    Object first = ScriptInjector.fromString(body).setRemoveTag(false).setDedupe(true)
+        .inject();
+    Object second = ScriptInjector.fromString(body).setRemoveTag(false).setDedupe(true)
+        .inject();
+
+    assertSame(first, second);
+    assertEquals(1, nativeGetVar());
+    assertEquals(Hydration.idOf(body), ((Element) first).getAttribute(Hydration.ATTRIBUTE));
+  }
+
+  /**
+   * A kept inline script is evaluated again unless deduped.
+   */
+  public void testKeptScriptWithoutDedupe() {
+    String body = "window.__hydration_test_kept__ = (window.__hydration_test_kept__ || 0) + 1;";
+    Object first = ScriptInjector.fromString(body).setRemoveTag(false).inject();
+    Object second = ScriptInjector.fromString(body).setRemoveTag(false).inject();
+
+    assertNotSame(first, second);
+    assertEquals(2, nativeGetKept());
+    assertFalse(Hydration.isInjected(Hydration.idOf(body)));
+  }
+
+  /**
+   * Stylesheets are only deduplicated on request.
+   */
+  public void testStyleWithoutDedupe() {
+    StyleInjector.setDedupe(false);
+    String css = "#hydrationTestNoDedupe { left: 10px; }";
+    HTMLStyleElement first = StyleInjector.injectStylesheet(css);
+    HTMLStyleElement second = StyleInjector.injectStylesheet(css);
+
+    assertNotSame(first, second);
+    assertEquals(css, second.textContent);
+    assertFalse(Hydration.isInjected(Hydration.idOf(css)));
+  }
+
+  /**
+   * A stylesheet whose element has been removed is injected again.
+   */
+  public void testRemovedStyle() {
+    String css = "#hydrationTestRemoved { left: 10px; }";
+    HTMLStyleElement first = StyleInjector.injectStylesheet(css);
+    first.parentNode.removeChild(first);
+    assertFalse(Hydration.isInjected(Hydration.idOf(css)));
+
+    HTMLStyleElement second = StyleInjector.injectStylesheet(css);
+    assertNotNull(second);
+    assertNotSame(first, second);
+    assertSame(DomGlobal.document.head, second.parentNode);
+    assertSame(second, StyleInjector.injectStylesheet(css));
+  }
+
+  /**
+   * Different content with the same ID is injected nevertheless.
+   */
+  public void testCollision() {
+    String first = ".hydrationTestCollision132789 { left: 1px; }";
+    String second = ".hydrationTestCollision729192 { left: 1px; }";
+    assertEquals(Hydration.idOf(first), Hydration.idOf(second));
+
+    HTMLStyleElement style = StyleInjector.injectStylesheet(first);
+    assertNotSame(style, StyleInjector.injectStylesheet(second));
+    assertSame(style, StyleInjector.injectStylesheet(first));
+  }
+
+  /**
+   * Scripts by URL are only deduplicated on request.
+   */
+  public void testDedupeUrl() {
+    String url = "hydration_test_dedupe.js";
+    Object first = ScriptInjector.fromUrl(url).setRemoveTag(false).inject();
+    Object second = ScriptInjector.fromUrl(url).setRemoveTag(false).inject();
+    assertNotSame(first, second);
+    assertFalse(Hydration.isInjected(Hydration.idOf(url)));
+
+    delayTestFinish(TEST_DELAY);
+    ScriptInjector.fromUrl(url).setRemoveTag(false).setDedupe(true)
+        .setCallback(new Callback<Void, Exception>() {
+          @Override
+          public void onFailure(Exception reason) {
+            fail("Dedupe load failed: " + reason);
+          }
+
+          @Override
+          public void onSuccess(Void result) {
+            Object again = ScriptInjector.fromUrl(url).setRemoveTag(false).setDedupe(true)
+                .inject();
+            assertNotNull(again);
+            assertEquals(Hydration.idOf(url),
+                ((Element) again).getAttribute(Hydration.ATTRIBUTE));
+            finishTest();
+          }
+        }).inject();
+  }
+
+  private int countStyles() {
+    return DomGlobal.document.querySelectorAll("style").length;
+  }
+
+  private native int nativeGetVar() /*-{
+    return window.__hydration_test_var__;
+  }-*/;
+
+  private native int nativeGetKept() /*-{
+    return window.__hydration_test_kept__;
+  }-*/;
+}
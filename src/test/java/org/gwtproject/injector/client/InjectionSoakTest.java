@@ -0,0 +1,174 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import com.google.gwt.junit.client.GWTTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import elemental2.dom.DomGlobal;
+import elemental2.dom.HTMLStyleElement;
+
+/**
+ * Injects many scripts and styles, as a long-running page would, and checks
+ * that the document and the bookkeeping stay bounded.
+ */
+public class InjectionSoakTest extends GWTTestCase {
+  private static final int TEST_DELAY = 60000;
+
+  private static final int RETAINED = 16;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.injector.InjectorTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    ScriptInjector.setRetainedScriptLimit(RETAINED);
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    ScriptInjector.setRetainedScriptLimit(-1);
+  }
+
+  /**
+   * Removed scripts are unregistered, so the registry stays bounded too.
+   */
+  public void testInlineScripts() {
+    int nodes = countHead();
+    Hydration.prune();
+    int registered = Hydration.size();
+    int count = 20000;
+    for (int i = 0; i < count; i++) {
+      ScriptInjector.fromString("window.__ti_soak_inline__ = " + i + ";")
+          .setRemoveTag(false).setDedupe(true).inject();
+    }
+
+    assertEquals(count - 1, nativeGetInline());
+    assertEquals(RETAINED, RetainedScripts.size());
+    assertTrue(countHead() <= nodes + RETAINED);
+    assertEquals(registered + RETAINED, Hydration.size());
+  }
+
+  /**
+   * Distinct stylesheets are batched into one element per flush. Without
+   * dedupe, they are not registered.
+   */
+  public void testStyles() {
+    int nodes = countHead();
+    Hydration.prune();
+    int registered = Hydration.size();
+    int count = 20000;
+    int flushes = 0;
+    for (int i = 0; i < count; i++) {
+      StyleInjector.inject("#injectionSoakTest" + i + " { left: 10px; }");
+      if (i % 1000 == 0) {
+        StyleInjector.flush();
+        flushes++;
+      }
+    }
+    StyleInjector.flush();
+    flushes++;
+
+    assertFalse(StyleInjector.getDefaultScope().isPending());
+    assertTrue(countHead() <= nodes + flushes);
+    assertEquals(registered, Hydration.size());
+  }
+
+  /**
+   * Deduped stylesheets are registered by ID only, and the IDs of removed
+   * elements are pruned, so the registry stays bounded by the stylesheets
+   * in the document.
+   */
+  public void testDedupedStyles() {
+    Hydration.prune();
+    int registered = Hydration.size();
+    int count = 20000;
+    int batch = 100;
+    StyleInjector.setDedupe(true);
+    try {
+      for (int i = 0; i < count; i += batch) {
+        for (int j = i; j < i + batch; j++) {
+          StyleInjector.inject("#injectionSoakTestDeduped" + j + " { left: 10px; }");
+        }
+        HTMLStyleElement style = StyleInjector.injectStylesheet(
+            "#injectionSoakTestDeduped { top: " + i + "px; }");
+        style.parentNode.removeChild(style);
+        assertTrue(Hydration.size() <= Math.max(64, 2 * (registered + batch + 1)));
+      }
+    } finally {
+      StyleInjector.setDedupe(false);
+    }
+  }
+
+  /**
+   * Loads and failures leave neither listeners nor elements behind beyond
+   * the limit.
+   */
+  public void testUrlScripts() {
+    int nodes = countHead();
+    int count = 500;
+    int[] finished = new int[1];
+    List<Injection> injections = new ArrayList<>();
+    delayTestFinish(TEST_DELAY);
+    for (int i = 0; i < count; i++) {
+      String url = (i % 10 == 0 ? "uNkNoWn_sOaK_404.js?" : "injection_soak_test.js?") + i;
+      Injection injection = ScriptInjector.fromUrl(url).setCallback(
+          new Callback<Void, Exception>() {
+            @Override
+            public void onFailure(Exception reason) {
+              done();
+            }
+
+            @Override
+            public void onSuccess(Void result) {
+              done();
+            }
+
+            private void done() {
+              if (++finished[0] == count) {
+                assertEquals(count - count / 10, nativeGetLoaded());
+                assertEquals(RETAINED, RetainedScripts.size());
+                assertTrue(countHead() <= nodes + RETAINED);
+                for (Injection injection : injections) {
+                  assertTrue(injection.isReleased());
+                }
+                finishTest();
+              }
+            }
+          }).injectCancellable();
+      assertFalse(injection.isFinished());
+      injections.add(injection);
+    }
+  }
+
+  private int countHead() {
+    return (int) DomGlobal.document.head.childElementCount;
+  }
+
+  private native int nativeGetInline() /*-{
+    return window.__ti_soak_inline__;
+  }-*/;
+
+  private native int nativeGetLoaded() /*-{
+    return window.__ti_soak_var__;
+  }-*/;
+}
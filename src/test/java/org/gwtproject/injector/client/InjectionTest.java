@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import com.google.gwt.junit.client.GWTTestCase;
+
+import elemental2.dom.HTMLScriptElement;
+
+/**
+ * Tests for {@link Injection} and {@link InjectionGroup}.
+ */
+public class InjectionTest extends GWTTestCase {
+
+  /**
+   * Counts callback invocations, expecting only cancellations.
+   */
+  private static class CancelledCallback implements Callback<Void, Exception> {
+    int cancelled;
+    int detached;
+
+    @Override
+    public void onFailure(Exception reason) {
+      CodeDownloadException.Reason cause = ((CodeDownloadException) reason).getReason();
+      if (cause == CodeDownloadException.Reason.DETACHED) {
+        detached++;
+      } else {
+        assertEquals(CodeDownloadException.Reason.TERMINATED, cause);
+        cancelled++;
+      }
+    }
+
+    @Override
+    public void onSuccess(Void result) {
+      fail("Cancelled injection unexpectedly succeeded.");
+    }
+  }
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.injector.InjectorTest";
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    LoadingPolicy.set(null);
+  }
+
+  /**
+   * An appended script may still run, so its cancellation is reported as
+   * detached.
+   */
+  public void testCancel() {
+    CancelledCallback callback = new CancelledCallback();
+    Injection injection = ScriptInjector.fromUrl("uNkNoWn_sCrIpT_404.js?cancel")
+        .setCallback(callback).injectCancellable();
+    HTMLScriptElement element = injection.getElement();
+    assertNotNull(element.parentNode);
+
+    assertTrue(injection.cancel());
+    assertFalse(injection.cancel());
+
+    assertTrue(injection.isFinished());
+    assertEquals(0, callback.cancelled);
+    assertEquals(1, callback.detached);
+    assertNull(element.parentNode);
+    assertNull(element.onload);
+  }
+
+  /**
+   * Cancelling a group also drops injections still waiting in the queue.
+   */
+  public void testCancelGroupWithQueued() {
+    LoadingPolicy.set(new LoadingPolicy("2g", false, 0, 0));
+    CancelledCallback callback = new CancelledCallback();
+    InjectionGroup group = new InjectionGroup();
+
+    Injection[] injections = new Injection[3];
+    for (int i = 0; i < injections.length; i++) {
+      injections[i] = ScriptInjector.fromUrl("uNkNoWn_sCrIpT_404.js?" + i)
+          .setGroup(group).setCallback(callback).injectCancellable();
+    }
+    HTMLScriptElement queued = injections[2].getElement();
+    assertNull("third script should wait for a free slot", queued.parentNode);
+    assertEquals(3, group.size());
+
+    group.cancelAll();
+
+    assertEquals(0, group.size());
+    assertEquals(1, callback.cancelled);
+    assertEquals(2, callback.detached);
+    assertNull(queued.parentNode);
+  }
+}
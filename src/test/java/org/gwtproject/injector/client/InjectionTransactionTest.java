@@ -0,0 +1,173 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import com.google.gwt.dom.client.DivElement;
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.junit.client.GWTTestCase;
+
+import java.util.List;
+
+import elemental2.dom.DomGlobal;
+import elemental2.dom.HTMLScriptElement;
+
+/**
+ * Tests for {@link InjectionTransaction}.
+ */
+public class InjectionTransactionTest extends GWTTestCase {
+  private static final int TEST_DELAY = 10000;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.injector.InjectorTest";
+  }
+
+  /**
+   * Nothing is injected before the commit, then styles apply at once and
+   * callbacks follow the commit.
+   */
+  public void testCommit() {
+    final DivElement elt = Document.get().createDivElement();
+    elt.setId("testTransactionCommit");
+    Document.get().getBody().appendChild(elt);
+
+    final InjectionTransaction transaction = new InjectionTransaction();
+    transaction.addStyle("#testTransactionCommit {position: absolute; left: 100px;}")
+        .addStyle("#testTransactionCommit {width: 100px;}")
+        .addScript(ScriptInjector.fromUrl("injection_transaction_test.js").setRemoveTag(true)
+            .setCallback(new Callback<Void, Exception>() {
+              @Override
+              public void onFailure(Exception reason) {
+                fail("Injection failed: " + reason.toString());
+              }
+
+              @Override
+              public void onSuccess(Void result) {
+                assertTrue(transaction.isCommitted());
+                assertEquals(1, nativeGetVar());
+                nativeCleanup();
+                finishTest();
+              }
+            }));
+
+    assertFalse(elt.getOffsetLeft() == 100);
+    delayTestFinish(TEST_DELAY);
+    List<Injection> injections = transaction.commit();
+
+    assertEquals(100, elt.getOffsetLeft());
+    assertEquals(100, elt.getClientWidth());
+    assertEquals(1, injections.size());
+    HTMLScriptElement script = injections.get(0).getElement();
+    assertNotNull(script.parentNode);
+  }
+
+  /**
+   * Callbacks completing during the commit are held back until it is done.
+   */
+  public void testCallbacksAfterCommit() {
+    final InjectionTransaction transaction = new InjectionTransaction();
+    final boolean[] called = new boolean[1];
+    LoadingPolicy.set(new LoadingPolicy("4g", true, 10, 8));
+    try {
+      transaction.addScript(ScriptInjector.fromUrl("uNkNoWn_sCrIpT_404.js?transaction")
+          .setOptional(true).setCallback(new Callback<Void, Exception>() {
+            @Override
+            public void onFailure(Exception reason) {
+              assertTrue(transaction.isCommitted());
+              called[0] = true;
+            }
+
+            @Override
+            public void onSuccess(Void result) {
+              fail("Optional script unexpectedly loaded.");
+            }
+          })).commit();
+    } finally {
+      LoadingPolicy.set(null);
+    }
+    assertTrue(called[0]);
+  }
+
+  /**
+   * Pending styles are written together with the styles of the transaction,
+   * in cascade order.
+   */
+  public void testPendingStyles() {
+    final DivElement elt = Document.get().createDivElement();
+    elt.setId("testTransactionPending");
+    Document.get().getBody().appendChild(elt);
+
+    StyleInjector.injectAtEnd("#testTransactionPending {position: absolute; left: 300px;}");
+    StyleInjector.inject("#testTransactionPending {position: absolute; left: 100px;}");
+    int styles = countStyles();
+    new InjectionTransaction()
+        .addStyle("#testTransactionPending {left: 200px; width: 100px;}")
+        .commit();
+
+    assertEquals(styles + 1, countStyles());
+    assertFalse(StyleInjector.getDefaultScope().isPending());
+    assertEquals(300, elt.getOffsetLeft());
+    assertEquals(100, elt.getClientWidth());
+  }
+
+  /**
+   * A script failing to inject does not keep back what was created before it.
+   */
+  public void testCommitFailure() {
+    final DivElement elt = Document.get().createDivElement();
+    elt.setId("testTransactionFailure");
+    Document.get().getBody().appendChild(elt);
+
+    InjectionTransaction transaction = new InjectionTransaction()
+        .addStyle("#testTransactionFailure {position: absolute; left: 100px;}")
+        .addScript(ScriptInjector.fromUrl("uNkNoWn_sCrIpT_404.js?failure")
+            .setWindow(new Object()));
+    try {
+      transaction.commit();
+      fail("Expected the window without document to fail the commit");
+    } catch (RuntimeException | AssertionError e) {
+      // expected
+    }
+
+    assertTrue(transaction.isCommitted());
+    assertEquals(100, elt.getOffsetLeft());
+  }
+
+  public void testCommitTwice() {
+    InjectionTransaction transaction = new InjectionTransaction();
+    transaction.commit();
+    try {
+      transaction.commit();
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  private int countStyles() {
+    return DomGlobal.document.querySelectorAll("style").length;
+  }
+
+  private native int nativeGetVar() /*-{
+    return window.__ti_transaction_var__;
+  }-*/;
+
+  private native void nativeCleanup() /*-{
+    delete window.__ti_transaction_var__;
+  }-*/;
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+import org.gwtproject.injector.client.IntentLoader.Intent;
+
+import com.google.gwt.junit.client.GWTTestCase;
+
+import elemental2.dom.DomGlobal;
+import elemental2.dom.Element;
+
+/**
+ * Tests for {@link IntentLoader}.
+ */
+public class IntentLoaderTest extends GWTTestCase {
+  private static final int TEST_DELAY = 10000;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.injector.InjectorTest";
+  }
+
+  /**
+   * Hovering starts the load, callbacks wait until the intent is committed.
+   */
+  public void testHoverStartsLoad() {
+    delayTestFinish(TEST_DELAY);
+    Element element = createElement();
+    boolean[] committed = new boolean[1];
+    int[] callbacks = new int[1];
+    Intent intent = new IntentLoader().setDwellTime(0).attach(element,
+        ScriptInjector.fromUrl("intent_loader_test.js").setRemoveTag(true)
+            .setCallback(new CountingCallback(committed, callbacks)));
+
+    assertFalse(intent.isStarted());
+    nativeDispatch(element, "mouseenter");
+    whenFinished(intent, () -> {
+      assertEquals(1, nativeGetCount());
+      assertEquals(0, callbacks[0]);
+
+      committed[0] = true;
+      intent.inject(new CountingCallback(committed, callbacks));
+      assertEquals(2, callbacks[0]);
+      assertEquals(1, nativeGetCount());
+      element.parentNode.removeChild(element);
+      finishTest();
+    });
+  }
+
+  /**
+   * Committing once the load started waits for it to finish.
+   */
+  public void testInjectWaitsForLoad() {
+    delayTestFinish(TEST_DELAY);
+    Element element = createElement();
+    Intent intent = new IntentLoader().attach(element,
+        ScriptInjector.fromUrl("intent_loader_test.js?wait").setRemoveTag(true));
+    nativeDispatch(element, "touchstart");
+    assertTrue(intent.isStarted());
+
+    intent.inject(new Callback<Void, Exception>() {
+      @Override
+      public void onFailure(Exception reason) {
+        fail("Injection failed: " + reason.toString());
+      }
+
+      @Override
+      public void onSuccess(Void result) {
+        assertTrue(intent.isFinished());
+        element.parentNode.removeChild(element);
+        finishTest();
+      }
+    });
+  }
+
+  /**
+   * A detached intent ignores user signals.
+   */
+  public void testDetach() {
+    Element element = createElement();
+    Intent intent = new IntentLoader().setTriggers(IntentLoader.Trigger.FOCUS)
+        .attachPreload(element, "intent_loader_test.css", PreloadHints.STYLE);
+    intent.detach();
+    nativeDispatch(element, "focusin");
+    nativeDispatch(element, "touchstart");
+    element.parentNode.removeChild(element);
+
+    assertFalse(intent.isStarted());
+    assertFalse(PreloadHints.isPreloaded("intent_loader_test.css"));
+  }
+
+  /**
+   * Counts successful callbacks, failing if one is invoked before the intent
+   * has been committed.
+   */
+  private static class CountingCallback implements Callback<Void, Exception> {
+    private final boolean[] committed;
+    private final int[] count;
+
+    CountingCallback(boolean[] committed, int[] count) {
+      this.committed = committed;
+      this.count = count;
+    }
+
+    @Override
+    public void onFailure(Exception reason) {
+      fail("Injection failed: " + reason.toString());
+    }
+
+    @Override
+    public void onSuccess(Void result) {
+      assertTrue("Callback invoked before commit", committed[0]);
+      count[0]++;
+    }
+  }
+
+  private void whenFinished(Intent intent, Runnable then) {
+    if (intent.isFinished()) {
+      then.run();
+    } else {
+      DomGlobal.setTimeout(ignored -> whenFinished(intent, then), 50);
+    }
+  }
+
+  private Element createElement() {
+    Element element = DomGlobal.document.createElement("div");
+    DomGlobal.document.body.appendChild(element);
+    return element;
+  }
+
+  private native void nativeDispatch(Element element, String type) /*-{
+    var event = $doc.createEvent("Event");
+    event.initEvent(type, false, false);
+    element.dispatchEvent(event);
+  }-*/;
+
+  private native int nativeGetCount() /*-{
+    return window["__intent_loader_count__"] || 0;
+  }-*/;
+}
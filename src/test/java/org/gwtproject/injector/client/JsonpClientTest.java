@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import com.google.gwt.junit.client.GWTTestCase;
+
+import jsinterop.base.Js;
+import jsinterop.base.JsPropertyMap;
+
+/**
+ * Tests for {@link JsonpClient}.
+ */
+public class JsonpClientTest extends GWTTestCase {
+  private static final int TEST_DELAY = 10000;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.injector.InjectorTest";
+  }
+
+  /**
+   * Two identical requests share one script and both get the response.
+   */
+  public void testRequestCollapsed() {
+    delayTestFinish(TEST_DELAY);
+    JsonpClient client = new JsonpClient();
+    int[] received = new int[1];
+    Callback<JsPropertyMap<Object>, Exception> callback =
+        new Callback<JsPropertyMap<Object>, Exception>() {
+          @Override
+          public void onFailure(Exception reason) {
+            fail("Request failed: " + reason.toString());
+          }
+
+          @Override
+          public void onSuccess(JsPropertyMap<Object> result) {
+            assertEquals(42, Js.asInt(result.get("value")));
+            if (++received[0] == 2) {
+              assertEquals(1, nativeGetTestCount());
+              finishTest();
+            }
+          }
+        };
+    client.request("jsonp_test.js", callback);
+    client.request("jsonp_test.js", callback);
+  }
+
+  /**
+   * A missing endpoint fails the request.
+   */
+  public void testRequestFail() {
+    delayTestFinish(TEST_DELAY);
+    new JsonpClient().request("uNkNoWn_jSoNp_404.js", new Callback<Object, Exception>() {
+      @Override
+      public void onFailure(Exception reason) {
+        assertTrue(reason instanceof CodeDownloadException);
+        finishTest();
+      }
+
+      @Override
+      public void onSuccess(Object result) {
+        fail("Request unexpectedly succeeded.");
+      }
+    });
+  }
+
+  /**
+   * A script that never invokes the callback fails the request.
+   */
+  public void testRequestWithoutCallback() {
+    delayTestFinish(TEST_DELAY);
+    new JsonpClient().request("script_injector_test4.js", new Callback<Object, Exception>() {
+      @Override
+      public void onFailure(Exception reason) {
+        assertTrue(reason instanceof CodeDownloadException);
+        nativeCleanupTest4();
+        finishTest();
+      }
+
+      @Override
+      public void onSuccess(Object result) {
+        fail("Request unexpectedly succeeded.");
+      }
+    });
+  }
+
+  private native int nativeGetTestCount() /*-{
+    return window["__jsonp_test_count__"] || 0;
+  }-*/;
+
+  private native void nativeCleanupTest4() /*-{
+    delete window["__ti4_var__"];
+  }-*/;
+}
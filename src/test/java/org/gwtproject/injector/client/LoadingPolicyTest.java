@@ -0,0 +1,164 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import com.google.gwt.junit.client.GWTTestCase;
+
+/**
+ * Tests for {@link LoadingPolicy} and its use in {@link ScriptInjector}.
+ */
+public class LoadingPolicyTest extends GWTTestCase {
+  private static final int TEST_DELAY = 10000;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.injector.InjectorTest";
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    LoadingPolicy.set(null);
+  }
+
+  public void testDecisions() {
+    LoadingPolicy fast = new LoadingPolicy("4g", false, 10, 8);
+    assertFalse(fast.preferLite());
+    assertFalse(fast.deferOptional());
+    assertFalse(fast.dropOptional());
+    assertEquals(Integer.MAX_VALUE, fast.getMaxConcurrentDownloads());
+
+    LoadingPolicy slow = new LoadingPolicy("3g", false, 0, 0);
+    assertTrue(slow.preferLite());
+    assertTrue(slow.deferOptional());
+    assertFalse(slow.dropOptional());
+    assertEquals(2, slow.getMaxConcurrentDownloads());
+
+    LoadingPolicy lowMemory = new LoadingPolicy(null, false, 0, 0.5);
+    assertTrue(lowMemory.preferLite());
+    assertEquals(Integer.MAX_VALUE, lowMemory.getMaxConcurrentDownloads());
+
+    assertTrue(new LoadingPolicy("4g", true, 10, 8).dropOptional());
+    assertNotNull(LoadingPolicy.fromNavigator());
+  }
+
+  /**
+   * With save-data on, optional scripts are skipped.
+   */
+  public void testOptionalDropped() {
+    LoadingPolicy.set(new LoadingPolicy("4g", true, 10, 8));
+    boolean[] failed = new boolean[1];
+    Object element = ScriptInjector.fromUrl("uNkNoWn_sCrIpT_404.js").setOptional(true)
+        .setCallback(new Callback<Void, Exception>() {
+          @Override
+          public void onFailure(Exception reason) {
+            assertEquals(CodeDownloadException.Reason.SKIPPED,
+                ((CodeDownloadException) reason).getReason());
+            failed[0] = true;
+          }
+
+          @Override
+          public void onSuccess(Void result) {
+            fail("Optional script unexpectedly loaded.");
+          }
+        }).inject();
+
+    assertNull(element);
+    assertTrue(failed[0]);
+  }
+
+  /**
+   * On a slow connection the lite variant is loaded.
+   */
+  public void testLiteUrl() {
+    LoadingPolicy.set(new LoadingPolicy("2g", false, 0.2, 0));
+    delayTestFinish(TEST_DELAY);
+    ScriptInjector.fromUrl("uNkNoWn_sCrIpT_404.js").setLiteUrl("loading_policy_test_lite.js")
+        .setRemoveTag(true).setCallback(new Callback<Void, Exception>() {
+          @Override
+          public void onFailure(Exception reason) {
+            fail("Injection failed: " + reason.toString());
+          }
+
+          @Override
+          public void onSuccess(Void result) {
+            assertTrue(nativeLiteLoaded());
+            finishTest();
+          }
+        }).inject();
+  }
+
+  /**
+   * A download which neither loads nor fails releases its slot after the
+   * timeout.
+   */
+  public void testHungDownload() {
+    LoadingPolicy.set(new SingleDownloadPolicy());
+    boolean[] started = new boolean[1];
+    Runnable hung = () -> { };
+    Runnable next = () -> {
+      started[0] = true;
+      finishTest();
+    };
+    delayTestFinish(TEST_DELAY);
+    DownloadQueue.get().add(hung);
+    DownloadQueue.get().add(next);
+    assertFalse(started[0]);
+  }
+
+  /**
+   * A download failing to start does not keep its slot.
+   */
+  public void testFailingStart() {
+    LoadingPolicy.set(new SingleDownloadPolicy());
+    Runnable failing = () -> {
+      throw new IllegalStateException("failed to start");
+    };
+    try {
+      DownloadQueue.get().add(failing);
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    boolean[] started = new boolean[1];
+    Runnable next = () -> started[0] = true;
+    DownloadQueue.get().add(next);
+    assertTrue(started[0]);
+    DownloadQueue.get().finished(next);
+  }
+
+  private static class SingleDownloadPolicy extends LoadingPolicy {
+    SingleDownloadPolicy() {
+      super("4g", false, 10, 8);
+    }
+
+    @Override
+    public int getMaxConcurrentDownloads() {
+      return 1;
+    }
+
+    @Override
+    public int getDownloadSlotTimeout() {
+      return 100;
+    }
+  }
+
+  private native boolean nativeLiteLoaded() /*-{
+    return !!window["__loading_policy_lite__"];
+  }-*/;
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import com.google.gwt.junit.client.GWTTestCase;
+
+import elemental2.dom.DomGlobal;
+import elemental2.dom.Window;
+import jsinterop.base.Js;
+
+/**
+ * Tests for {@link SandboxPool} and {@link Sandbox}.
+ */
+public class SandboxPoolTest extends GWTTestCase {
+  private static final int TEST_DELAY = 10000;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.injector.InjectorTest";
+  }
+
+  /**
+   * Globals of a sandboxed script stay in the frame, which is gone after
+   * release.
+   */
+  public void testLeaseAndRelease() {
+    SandboxPool pool = new SandboxPool(0);
+    int frames = countFrames();
+    Sandbox sandbox = pool.lease();
+    Window window = sandbox.getWindow();
+    assertEquals(frames + 1, countFrames());
+    assertNotSame(ScriptInjector.currentWindow(), window);
+
+    sandbox.fromString("window.__ti_sandbox_var__ = 1;").inject();
+    assertEquals(1.0, Js.asPropertyMap(window).get("__ti_sandbox_var__"));
+    assertNull(Js.asPropertyMap(ScriptInjector.currentWindow()).get("__ti_sandbox_var__"));
+
+    sandbox.release();
+    assertTrue(sandbox.isReleased());
+    assertEquals(frames, countFrames());
+    try {
+      sandbox.fromString("window.__ti_sandbox_var__ = 2;");
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    sandbox.release();
+  }
+
+  /**
+   * Pending downloads are cancelled on release. Without a loading policy the
+   * script is appended right away, so it is reported as detached.
+   */
+  public void testReleaseCancels() {
+    Sandbox sandbox = new SandboxPool(0).lease();
+    boolean[] cancelled = new boolean[1];
+    sandbox.fromUrl("script_injector_test4.js?sandbox").setCallback(
+        new Callback<Void, Exception>() {
+          @Override
+          public void onFailure(Exception reason) {
+            cancelled[0] = ((CodeDownloadException) reason).getReason()
+                == CodeDownloadException.Reason.DETACHED;
+          }
+
+          @Override
+          public void onSuccess(Void result) {
+            fail("Script unexpectedly loaded.");
+          }
+        }).inject();
+    sandbox.release();
+    assertTrue(cancelled[0]);
+  }
+
+  /**
+   * Evaluations still pending because of time slicing are dropped on release.
+   */
+  public void testReleaseDropsPendingEvaluation() {
+    Sandbox sandbox = new SandboxPool(0).lease();
+    Window window = sandbox.getWindow();
+    TimeSlicing.setBudget(1);
+    delayTestFinish(TEST_DELAY);
+    try {
+      sandbox.fromString("window.__ti_sandbox_sliced__ = 1;").setDeferred(true).setCallback(
+          new Callback<Void, Exception>() {
+            @Override
+            public void onFailure(Exception reason) {
+              assertEquals(CodeDownloadException.Reason.TERMINATED,
+                  ((CodeDownloadException) reason).getReason());
+              assertNull(Js.asPropertyMap(window).get("__ti_sandbox_sliced__"));
+              finishTest();
+            }
+
+            @Override
+            public void onSuccess(Void result) {
+              fail("Script unexpectedly evaluated after release.");
+            }
+          }).inject();
+    } finally {
+      TimeSlicing.setBudget(0);
+    }
+    sandbox.release();
+  }
+
+  public void testPrewarm() {
+    SandboxPool pool = new SandboxPool(2);
+    assertEquals(0, pool.getIdleCount());
+    delayTestFinish(TEST_DELAY);
+    waitForIdleFrames(pool, () -> {
+      Sandbox sandbox = pool.lease();
+      assertEquals(1, pool.getIdleCount());
+      sandbox.release();
+      waitForIdleFrames(pool, () -> {
+        pool.dispose();
+        assertEquals(0, pool.getIdleCount());
+        finishTest();
+      });
+    });
+  }
+
+  private void waitForIdleFrames(SandboxPool pool, Runnable then) {
+    if (pool.getIdleCount() == 2) {
+      then.run();
+    } else {
+      DomGlobal.setTimeout(ignored -> waitForIdleFrames(pool, then), 50);
+    }
+  }
+
+  private int countFrames() {
+    return DomGlobal.document.querySelectorAll("iframe").length;
+  }
+}
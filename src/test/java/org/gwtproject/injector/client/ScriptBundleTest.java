@@ -0,0 +1,156 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import com.google.gwt.junit.client.GWTTestCase;
+
+/**
+ * Tests for {@link ScriptBundle}.
+ */
+public class ScriptBundleTest extends GWTTestCase {
+  private static final int TEST_DELAY = 10000;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.injector.InjectorTest";
+  }
+
+  public void testParse() {
+    ScriptBundle bundle = ScriptBundle.parse("ignored;\n"
+        + "//# module a\nvar x = '//# module not-a-header';\n"
+        + "//# module b a\n"
+        + "//# module c");
+
+    assertEquals("[a, b, c]", bundle.getModuleNames().toString());
+    assertFalse(bundle.contains("not-a-header"));
+    assertFalse(bundle.isEvaluated("a"));
+  }
+
+  public void testRequireUnknown() {
+    try {
+      ScriptBundle.parse("").require("missing");
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+
+  /**
+   * A module with an unknown dependency is neither evaluated nor marked as
+   * evaluated, and neither are its known dependencies.
+   */
+  public void testRequireUnknownDependency() {
+    ScriptBundle bundle = ScriptBundle.parse("//# module known\n"
+        + "window.__tb_known__ = 1;\n"
+        + "//# module broken known missing\n"
+        + "window.__tb_broken__ = 1;\n");
+    try {
+      bundle.require("broken");
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+    assertFalse(bundle.isEvaluated("broken"));
+    assertFalse(bundle.isEvaluated("known"));
+    assertEquals(0, nativeGetVar("__tb_broken__"));
+    assertEquals(0, nativeGetVar("__tb_known__"));
+  }
+
+  /**
+   * Modules depending on each other are evaluated once each, dependencies
+   * first as far as the cycle allows.
+   */
+  public void testRequireCycle() {
+    ScriptBundle bundle = ScriptBundle.parse("//# module first second\n"
+        + "window.__tb_cycle__ = (window.__tb_cycle__ || 0) + 1;\n"
+        + "//# module second first\n"
+        + "window.__tb_cycle__ = (window.__tb_cycle__ || 0) + 10;\n");
+    bundle.require("first");
+    assertTrue(bundle.isEvaluated("first"));
+    assertTrue(bundle.isEvaluated("second"));
+    bundle.require("second");
+    assertEquals(11, nativeGetVar("__tb_cycle__"));
+  }
+
+  /**
+   * Required modules are available right away, even with time slicing.
+   */
+  public void testRequireSynchronous() {
+    TimeSlicing.setBudget(1);
+    try {
+      ScriptBundle bundle = ScriptBundle.parse("//# module sync\n"
+          + "window.__tb_sync__ = (window.__tb_sync__ || 0) + 1;\n");
+      bundle.require("sync");
+      assertEquals(1, nativeGetVar("__tb_sync__"));
+    } finally {
+      TimeSlicing.setBudget(0);
+    }
+  }
+
+  /**
+   * Load a bundle, evaluate a module with its dependency and leave the rest.
+   */
+  public void testLoadAndRequire() {
+    delayTestFinish(TEST_DELAY);
+    ScriptBundle.load("script_bundle_test.js", new Callback<ScriptBundle, Exception>() {
+      @Override
+      public void onFailure(Exception reason) {
+        fail("Bundle load failed: " + reason.toString());
+      }
+
+      @Override
+      public void onSuccess(ScriptBundle bundle) {
+        assertEquals(0, nativeGetVar("__tb_base__"));
+
+        bundle.require("derived");
+        bundle.require("derived");
+        bundle.require("base");
+
+        assertTrue(bundle.isEvaluated("base"));
+        assertFalse(bundle.isEvaluated("unused"));
+        assertEquals(1, nativeGetVar("__tb_base__"));
+        assertEquals(10, nativeGetVar("__tb_derived__"));
+        assertEquals(0, nativeGetVar("__tb_unused__"));
+        finishTest();
+      }
+    });
+  }
+
+  /**
+   * A missing bundle should fire the onFailure callback.
+   */
+  public void testLoadFail() {
+    delayTestFinish(TEST_DELAY);
+    ScriptBundle.load("uNkNoWn_bUnDlE_404.js", new Callback<ScriptBundle, Exception>() {
+      @Override
+      public void onFailure(Exception reason) {
+        assertTrue(reason instanceof CodeDownloadException);
+        finishTest();
+      }
+
+      @Override
+      public void onSuccess(ScriptBundle bundle) {
+        fail("Bundle load unexpectedly succeeded.");
+      }
+    });
+  }
+
+  private native int nativeGetVar(String name) /*-{
+    return window[name] ? window[name] : 0;
+  }-*/;
+}
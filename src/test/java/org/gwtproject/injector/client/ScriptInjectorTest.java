@@ -24,6 +24,12 @@ import com.google.gwt.core.client.Scheduler;
 import com.google.gwt.core.client.Scheduler.RepeatingCommand;
 import com.google.gwt.junit.client.GWTTestCase;
 
+import elemental2.dom.DomGlobal;
+import elemental2.dom.HTMLScriptElement;
+import elemental2.promise.IThenable;
+import elemental2.promise.Promise;
+import jsinterop.base.Js;
+
 /**
  * Tests for {@link ScriptInjector}
  */
@@ -334,6 +340,249 @@ public class ScriptInjectorTest extends GWTTestCase {
     assertNotNull(injectedElement);
   }
 
+  /**
+   * Compile and instantiate a WebAssembly module, twice to hit the cache.
+   */
+  public void testInjectWasmUrl() {
+    if (!nativeWasmSupported()) {
+      return;
+    }
+    delayTestFinish(TEST_DELAY);
+    final String wasmUrl = "script_injector_test.wasm";
+    ScriptInjector.fromWasmUrl(wasmUrl).setCallback(new Callback<WasmInstance, Exception>() {
+      @Override
+      public void onFailure(Exception reason) {
+        fail("Injection failed: " + reason.toString());
+      }
+
+      @Override
+      public void onSuccess(WasmInstance first) {
+        assertNotNull(first);
+        ScriptInjector.fromWasmUrl(wasmUrl).setCallback(new Callback<WasmInstance, Exception>() {
+          @Override
+          public void onFailure(Exception reason) {
+            fail("Cached injection failed: " + reason.toString());
+          }
+
+          @Override
+          public void onSuccess(WasmInstance second) {
+            assertNotNull(second);
+            assertNotSame(first, second);
+            finishTest();
+          }
+        }).inject();
+      }
+    }).inject();
+  }
+
+  /**
+   * A missing WebAssembly module should fire the onFailure callback.
+   */
+  public void testInjectWasmUrlFail() {
+    if (!nativeWasmSupported()) {
+      return;
+    }
+    delayTestFinish(TEST_DELAY);
+    ScriptInjector.fromWasmUrl("uNkNoWn_mOdUlE_404.wasm").setCallback(
+        new Callback<WasmInstance, Exception>() {
+          @Override
+          public void onFailure(Exception reason) {
+            assertTrue(reason instanceof CodeDownloadException);
+            finishTest();
+          }
+
+          @Override
+          public void onSuccess(WasmInstance result) {
+            fail("Injection unexpectedly succeeded.");
+          }
+        }).inject();
+  }
+
+  /**
+   * Load two scripts in parallel through promises.
+   */
+  public void testInjectUrlAsync() {
+    if (!nativePromiseSupported()) {
+      return;
+    }
+    delayTestFinish(TEST_DELAY);
+    IThenable<?>[] injections = {
+        ScriptInjector.fromUrl("script_injector_test_absolute.js").setRemoveTag(true)
+            .injectAsync(),
+        ScriptInjector.fromString("__ti_async_var__ = 1;").injectAsync()};
+    Promise.all(injections).then(results -> {
+      assertTrue(nativeInjectUrlAbsoluteWorked());
+      cleanupThisWindow("__tiabsolute_var__", null);
+      cleanupThisWindow("__ti_async_var__", null);
+      finishTest();
+      return null;
+    }, error -> {
+      fail("Injection failed: " + error);
+      return null;
+    });
+  }
+
+  /**
+   * Compressed scripts are evaluated in injection order.
+   */
+  public void testInjectCompressed() {
+    if (!nativePromiseSupported()) {
+      return;
+    }
+    delayTestFinish(TEST_DELAY);
+    // window.__ti_compressed_var__ = (window.__ti_compressed_var__ || '') + 'a';
+    Promise<Void> first = ScriptInjector.fromString("eNorz8xLyS/Xi48vyYxPzs8tKEotLk5NiS9LL"
+        + "IqPV7BV0CjHJ19To6CurqmgraCeqG4NACfSGmA=").setCompression(CompressedPayload.DEFLATE)
+        .injectAsync();
+    // window.__ti_compressed_var__ = (window.__ti_compressed_var__ || '') + 'b';
+    Promise<Void> second = ScriptInjector.fromString("K8/MS8kv14uPL8mMT87PLShKLS5OTYkvSyyKj"
+        + "1ewVdAoxydfU6Ogrq6poK2gnqRuDQA=").setCompression(CompressedPayload.DEFLATE_RAW)
+        .injectAsync();
+    IThenable<?>[] injections = {first, second};
+    Promise.all(injections).then(results -> {
+      assertEquals("ab", nativeGetCompressedVar());
+      cleanupThisWindow("__ti_compressed_var__", null);
+      finishTest();
+      return null;
+    }, error -> {
+      fail("Injection failed: " + error);
+      return null;
+    });
+  }
+
+  /**
+   * A malformed compressed script is reported to the callback instead of
+   * throwing.
+   */
+  public void testInjectCompressedInvalid() {
+    delayTestFinish(TEST_DELAY);
+    try {
+      ScriptInjector.fromString("not base64!").setCompression(CompressedPayload.GZIP)
+          .setCallback(new Callback<Void, Exception>() {
+            @Override
+            public void onFailure(Exception reason) {
+              finishTest();
+            }
+
+            @Override
+            public void onSuccess(Void result) {
+              fail("Malformed payload was evaluated");
+            }
+          }).inject();
+    } catch (RuntimeException e) {
+      fail("The malformed payload threw: " + e);
+    }
+  }
+
+  /**
+   * The promise settles even if the callback of the builder throws.
+   */
+  public void testInjectAsyncThrowingCallback() {
+    if (!nativePromiseSupported()) {
+      return;
+    }
+    delayTestFinish(TEST_DELAY);
+    Promise<Void> promise;
+    try {
+      promise = ScriptInjector.fromString("__ti_async_throwing_var__ = 1;")
+          .setCallback(new Callback<Void, Exception>() {
+            @Override
+            public void onFailure(Exception reason) {
+              fail("Injection failed: " + reason);
+            }
+
+            @Override
+            public void onSuccess(Void result) {
+              throw new IllegalStateException("callback failed");
+            }
+          }).injectAsync();
+    } catch (IllegalStateException e) {
+      fail("The exception escaped the promise: " + e);
+      return;
+    }
+    promise.then(result -> {
+      cleanupThisWindow("__ti_async_throwing_var__", null);
+      finishTest();
+      return null;
+    }, error -> {
+      fail("Promise rejected: " + error);
+      return null;
+    });
+  }
+
+  /**
+   * A failing load rejects the promise.
+   */
+  public void testInjectUrlAsyncFail() {
+    if (!nativePromiseSupported()) {
+      return;
+    }
+    delayTestFinish(TEST_DELAY);
+    ScriptInjector.fromUrl("uNkNoWn_sCrIpT_404.js").injectAsync().then(result -> {
+      fail("Injection unexpectedly succeeded.");
+      return null;
+    }, error -> {
+      assertTrue(error instanceof CodeDownloadException);
+      finishTest();
+      return null;
+    });
+  }
+
+  /**
+   * The primary URL fails, the mirror wins and is executed once.
+   */
+  public void testInjectUrlMirrors() {
+    if (!MirrorRace.isSupported(DomGlobal.document)) {
+      return;
+    }
+    delayTestFinish(TEST_DELAY);
+    ScriptInjector.fromUrl("uNkNoWn_sCrIpT_404.js")
+        .setMirrors("uNkNoWn_mIrRoR_404.js", "script_injector_test_mirror.js")
+        .setHedgingDelay(50).setRemoveTag(true).setCallback(new Callback<Void, Exception>() {
+          @Override
+          public void onFailure(Exception reason) {
+            fail("Injection failed: " + reason.toString());
+          }
+
+          @Override
+          public void onSuccess(Void result) {
+            assertEquals(1, nativeGetMirrorVar());
+            cleanupThisWindow("__ti_mirror_var__", null);
+            finishTest();
+          }
+        }).inject();
+  }
+
+  /**
+   * Attributes are set before the element is appended.
+   */
+  public void testInjectUrlAttributes() {
+    delayTestFinish(TEST_DELAY);
+    HTMLScriptElement[] element = new HTMLScriptElement[1];
+    element[0] = ScriptInjector.fromUrl("script_injector_test_absolute.js")
+        .setAsync(false).setCrossOrigin("anonymous").setFetchPriority("high")
+        .setReferrerPolicy("no-referrer").setAttribute("data-test", "attributes")
+        .setCallback(new Callback<Void, Exception>() {
+          @Override
+          public void onFailure(Exception reason) {
+            fail("Injection failed: " + reason.toString());
+          }
+
+          @Override
+          public void onSuccess(Void result) {
+            cleanupThisWindow("__tiabsolute_var__", Js.uncheckedCast(element[0]));
+            finishTest();
+          }
+        }).inject();
+
+    assertEquals("anonymous", element[0].getAttribute("crossorigin"));
+    assertEquals("high", element[0].getAttribute("fetchpriority"));
+    assertEquals("no-referrer", element[0].getAttribute("referrerpolicy"));
+    assertEquals("attributes", element[0].getAttribute("data-test"));
+    // HtmlUnit reflects the property as a string
+    assertEquals("false", String.valueOf(Js.asPropertyMap(element[0]).get("async")));
+  }
+
   private void cleanupThisWindow(String property, JavaScriptObject scriptElement) {
     cleanupWindow(nativeThisWindow(), property, scriptElement);
   }
@@ -397,6 +646,10 @@ public class ScriptInjectorTest extends GWTTestCase {
     return !!window["__tiabsolute_var__"] && window["__tiabsolute_var__"] == 101;
   }-*/;
 
+  private native String nativeGetCompressedVar() /*-{
+    return window["__ti_compressed_var__"];
+  }-*/;
+
   private native boolean nativeTest1Worked() /*-{
     return !!window["__ti1_var__"] && window["__ti1_var__"] == 1;
   }-*/;
@@ -429,6 +682,18 @@ public class ScriptInjectorTest extends GWTTestCase {
     return $wnd["__ti_utf8_var__"] || "";
   }-*/;
 
+  private native int nativeGetMirrorVar() /*-{
+    return window["__ti_mirror_var__"] || 0;
+  }-*/;
+
+  private native boolean nativePromiseSupported() /*-{
+    return typeof Promise === "function" && typeof Promise.all === "function";
+  }-*/;
+
+  private native boolean nativeWasmSupported() /*-{
+    return typeof WebAssembly === "object" && typeof fetch === "function";
+  }-*/;
+
   private native JavaScriptObject nativeThisWindow() /*-{
     return window;
   }-*/;
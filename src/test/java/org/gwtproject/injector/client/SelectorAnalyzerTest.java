@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import com.google.gwt.junit.client.GWTTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link SelectorAnalyzer}.
+ */
+public class SelectorAnalyzerTest extends GWTTestCase {
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.injector.InjectorTest";
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    StyleInjector.setSelectorAnalyzer(null);
+  }
+
+  public void testScore() {
+    assertEquals(0, SelectorAnalyzer.score(".a"));
+    assertEquals(0, SelectorAnalyzer.score("#a"));
+    assertEquals(SelectorAnalyzer.TAG_KEY, SelectorAnalyzer.score("div"));
+    assertEquals(SelectorAnalyzer.DESCENDANT, SelectorAnalyzer.score(".a .b"));
+    assertEquals(1, SelectorAnalyzer.score(".a > .b"));
+    assertEquals(SelectorAnalyzer.DESCENDANT + SelectorAnalyzer.UNIVERSAL_KEY,
+        SelectorAnalyzer.score(".a *"));
+    assertEquals(SelectorAnalyzer.HAS, SelectorAnalyzer.score(".a:has(.b)"));
+    assertEquals(SelectorAnalyzer.SUBSTRING + SelectorAnalyzer.TAG_KEY,
+        SelectorAnalyzer.score("a[href*=\"x\"]"));
+  }
+
+  /**
+   * Expensive selectors are reported on flush, worst first.
+   */
+  public void testAnalyzeOnFlush() {
+    List<SelectorAnalyzer.Offender> reported = new ArrayList<>();
+    StyleInjector.setSelectorAnalyzer(new SelectorAnalyzer(10, 5, reported::addAll));
+
+    String css = ".selectorAnalyzerTest * { left: 10px; }"
+        + ".selectorAnalyzerTestCheap, .selectorAnalyzerTest:has(p) { left: 10px; }";
+    StyleInjector.injectAtEnd(css, true);
+
+    assertEquals(2, reported.size());
+    assertEquals(".selectorAnalyzerTest:has(p)", reported.get(0).getSelector());
+    assertEquals(".selectorAnalyzerTest *", reported.get(1).getSelector());
+    assertEquals("injectAtEnd", reported.get(1).getSource());
+    assertEquals(Hydration.idOf(css), reported.get(1).getStylesheetId());
+  }
+
+  public void testLimit() {
+    List<List<SelectorAnalyzer.Offender>> reports = new ArrayList<>();
+    StyleInjector.setSelectorAnalyzer(new SelectorAnalyzer(1, 1, reports::add));
+
+    StyleInjector.inject(".selectorAnalyzerTestLimit div { left: 10px; }"
+        + ".selectorAnalyzerTestLimit p span { left: 10px; }");
+    StyleInjector.inject(".selectorAnalyzerTestLimitCheap { left: 10px; }");
+    StyleInjector.flush();
+
+    assertEquals(1, reports.size());
+    assertEquals(1, reports.get(0).size());
+    assertEquals(".selectorAnalyzerTestLimit p span", reports.get(0).get(0).getSelector());
+
+    StyleInjector.inject(".selectorAnalyzerTestLimitCheap2 { left: 10px; }", true);
+    assertEquals(1, reports.size());
+  }
+}
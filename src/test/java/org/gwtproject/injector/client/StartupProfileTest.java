@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import com.google.gwt.junit.client.GWTTestCase;
+
+import elemental2.core.JsArray;
+import elemental2.dom.DomGlobal;
+import elemental2.dom.Element;
+import jsinterop.base.JsPropertyMap;
+
+/**
+ * Tests for {@link StartupProfile}.
+ */
+public class StartupProfileTest extends GWTTestCase {
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.injector.InjectorTest";
+  }
+
+  public void testContentHash() {
+    assertEquals(ContentHash.of("a { color: red; }"), ContentHash.of("a { color: red; }"));
+    assertFalse(ContentHash.of("a { color: red; }").equals(ContentHash.of("a { color: blue; }")));
+  }
+
+  public void testRecordAndPrewarm() {
+    WebStorage storage = WebStorage.local();
+    if (storage == null) {
+      return;
+    }
+    storage.removeItem(StartupProfile.STORAGE_PREFIX + "test");
+
+    StartupProfile profile = StartupProfile.start("test", 10000);
+    assertTrue(profile.isRecording());
+    ScriptInjector.fromUrl("uNkNoWn_sCrIpT_404.js?profile").setStartup(true)
+        .setCrossOrigin("anonymous").inject();
+    // Scripts not marked as part of the startup, e.g. JSONP, are skipped
+    ScriptInjector.fromUrl("uNkNoWn_sCrIpT_404.js?notStartup").inject();
+    StyleInjector.inject(".startupProfileTest { color: red; }", true);
+    profile.stop();
+    assertFalse(profile.isRecording());
+
+    JsArray<JsPropertyMap<Object>> entries = profile.getEntries();
+    assertEquals(2, entries.length);
+    assertEquals("script", entries.getAt(0).get("type"));
+    assertEquals("uNkNoWn_sCrIpT_404.js?profile", entries.getAt(0).get("url"));
+    assertEquals("anonymous", entries.getAt(0).get("crossorigin"));
+    assertEquals("style", entries.getAt(1).get("type"));
+    assertEquals(ContentHash.of(".startupProfileTest { color: red; }"),
+        entries.getAt(1).get("hash"));
+    assertNotNull(storage.getItem(StartupProfile.STORAGE_PREFIX + "test"));
+
+    // Nothing is recorded once stopped
+    StyleInjector.inject(".startupProfileTest { color: blue; }", true);
+    assertEquals(2, entries.length);
+
+    // The next boot pre-warms the recorded script
+    StartupProfile.start("test", 10000).stop();
+    assertTrue(PreloadHints.isPreloaded("uNkNoWn_sCrIpT_404.js?profile"));
+    assertFalse(PreloadHints.isPreloaded("uNkNoWn_sCrIpT_404.js?notStartup"));
+    Element hint = DomGlobal.document.querySelector(
+        "link[rel=preload][href=\"uNkNoWn_sCrIpT_404.js?profile\"]");
+    assertEquals("anonymous", hint.getAttribute("crossorigin"));
+    storage.removeItem(StartupProfile.STORAGE_PREFIX + "test");
+  }
+}
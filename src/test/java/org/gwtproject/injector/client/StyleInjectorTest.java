@@ -15,12 +15,14 @@
  */
 package org.gwtproject.injector.client;
 
+import com.google.gwt.core.client.GWT;
 import com.google.gwt.dom.client.DivElement;
 import com.google.gwt.dom.client.Document;
 import com.google.gwt.junit.client.GWTTestCase;
 import com.google.gwt.user.client.Command;
 import com.google.gwt.user.client.DeferredCommand;
 
+import elemental2.dom.HTMLLinkElement;
 import elemental2.dom.HTMLStyleElement;
 
 /**
@@ -96,6 +98,121 @@ public class StyleInjectorTest extends GWTTestCase {
     });
   }
 
+  /**
+   * The promise resolves once batched styles are in the document.
+   */
+  public void testWhenInjected() {
+    if (!nativePromiseSupported()) {
+      return;
+    }
+    final DivElement elt = Document.get().createDivElement();
+    elt.setId("testWhenInjected");
+    Document.get().getBody().appendChild(elt);
+
+    delayTestFinish(TEST_DELAY);
+    StyleInjector.inject("#testWhenInjected {position: absolute; left: 100px;}");
+    StyleInjector.whenInjected().then(result -> {
+      assertEquals(100, elt.getOffsetLeft());
+      finishTest();
+      return null;
+    });
+  }
+
+  /**
+   * A linked stylesheet applies and is linked only once.
+   */
+  public void testInjectLink() {
+    final DivElement elt = Document.get().createDivElement();
+    elt.setId("testInjectLink");
+    Document.get().getBody().appendChild(elt);
+
+    final String href = GWT.getModuleBaseForStaticFiles() + "style_injector_test.css";
+    final HTMLLinkElement link = StyleInjector.injectLink(href);
+    assertSame(link, StyleInjector.injectLink(href));
+
+    if (elt.getOffsetLeft() == 100) {
+      // loaded synchronously when appended, e.g. by HtmlUnit
+      return;
+    }
+    delayTestFinish(TEST_DELAY);
+    link.onload = event -> {
+      assertEquals(100, elt.getOffsetLeft());
+      finishTest();
+      return null;
+    };
+  }
+
+  /**
+   * A compressed stylesheet is decompressed and injected.
+   */
+  public void testInjectCompressed() {
+    if (!nativePromiseSupported()) {
+      return;
+    }
+    final DivElement elt = Document.get().createDivElement();
+    elt.setId("testInjectCompressed");
+    Document.get().getBody().appendChild(elt);
+
+    delayTestFinish(TEST_DELAY);
+    // #testInjectCompressed {position: absolute; left: 100px;}
+    StyleInjector.injectCompressed("H4sIAAAAAAAA/1MuSS0u8czLSk0ucc7PLShKLS5OTVGoLsgvzizJzM+zUkhMKs7PKS1JtVbI"
+        + "SU0rsVIwNDAoqLCuBQDvBcV3OAAAAA==", CompressedPayload.GZIP).then(result -> {
+          assertEquals(100, elt.getOffsetLeft());
+          finishTest();
+          return null;
+        });
+  }
+
+  /**
+   * A malformed compressed stylesheet rejects, and does not hold back the
+   * stylesheets injected after it.
+   */
+  public void testInjectCompressedInvalid() {
+    if (!nativePromiseSupported()) {
+      return;
+    }
+    delayTestFinish(TEST_DELAY);
+    StyleInjector.injectCompressed("not base64!", CompressedPayload.GZIP).then(result -> {
+      fail("Malformed payload was injected");
+      return null;
+    }, error -> {
+      StyleInjector.inject("#testInjectCompressedInvalid { left: 10px; }");
+      StyleInjector.whenInjected().then(ignored -> {
+        assertFalse(StyleInjector.getDefaultScope().isPending());
+        finishTest();
+        return null;
+      });
+      return null;
+    });
+  }
+
+  /**
+   * Fonts and images of visible elements are hinted before injection.
+   */
+  public void testPreloadAssets() {
+    final DivElement elt = Document.get().createDivElement();
+    elt.setId("testPreloadAssets");
+    Document.get().getBody().appendChild(elt);
+
+    StyleInjector.setPreloadAssets(true);
+    try {
+      StyleInjector.inject("/* url(comment.png) */\n"
+          + "@font-face { font-family: Test; src: url(preload_test.woff) format('woff'),"
+          + " url('preload_test.woff2') format('woff2'); }\n"
+          + "#testPreloadAssets { background: #fff url(\"preload_test_visible.png\") no-repeat; }\n"
+          + "#testPreloadAssetsMissing { background-image: url(preload_test_hidden.png); }\n"
+          + ".inline { background-image: url(data:image/png;base64,AAAA); }", true);
+    } finally {
+      StyleInjector.setPreloadAssets(false);
+    }
+
+    assertTrue(PreloadHints.isPreloaded("preload_test.woff2"));
+    assertFalse(PreloadHints.isPreloaded("preload_test.woff"));
+    assertTrue(PreloadHints.isPreloaded("preload_test_visible.png"));
+    assertFalse(PreloadHints.isPreloaded("preload_test_hidden.png"));
+    assertFalse(PreloadHints.isPreloaded("comment.png"));
+  }
+
   /*
    * Tests against issue #879: Ensure that empty history tokens do not add
    * additional characters after the '#' symbol in the URL.
@@ -143,4 +260,8 @@ public class StyleInjectorTest extends GWTTestCase {
       delayTestFinish(TEST_DELAY);
     }
   }
+
+  private native boolean nativePromiseSupported() /*-{
+    return typeof Promise === "function" && typeof Promise.all === "function";
+  }-*/;
 }
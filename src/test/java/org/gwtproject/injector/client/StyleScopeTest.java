@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import com.google.gwt.junit.client.GWTTestCase;
+
+import elemental2.dom.DomGlobal;
+import elemental2.dom.Element;
+import elemental2.dom.HTMLStyleElement;
+
+/**
+ * Tests for {@link StyleScope}.
+ */
+public class StyleScopeTest extends GWTTestCase {
+
+  private static final int TEST_DELAY = 10000;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.injector.InjectorTest";
+  }
+
+  /**
+   * Flushing one scope leaves the stylesheets of another scope batched.
+   */
+  public void testIndependentFlush() {
+    Element first = createContainer();
+    Element second = createContainer();
+    StyleScope firstScope = new StyleScope(first);
+    StyleScope secondScope = new StyleScope(second);
+
+    firstScope.inject("#styleScopeTestFirst { left: 10px; }");
+    secondScope.inject("#styleScopeTestSecond { left: 10px; }");
+    firstScope.flush();
+
+    assertEquals(1, countStyles(first));
+    assertEquals(0, countStyles(second));
+    assertFalse(firstScope.isPending());
+    assertTrue(secondScope.isPending());
+
+    secondScope.flush();
+    assertEquals(1, countStyles(second));
+    assertFalse(secondScope.isPending());
+  }
+
+  /**
+   * The default scope is not flushed with another scope and vice versa.
+   */
+  public void testDefaultScope() {
+    StyleScope scope = new StyleScope(createContainer());
+    StyleScope defaultScope = StyleInjector.getDefaultScope();
+
+    StyleInjector.inject("#styleScopeTestDefault { left: 10px; }");
+    scope.inject("#styleScopeTestScoped { left: 10px; }");
+    scope.flush();
+    assertTrue(defaultScope.isPending());
+
+    scope.inject("#styleScopeTestScopedAgain { left: 10px; }");
+    StyleInjector.flush();
+    assertFalse(defaultScope.isPending());
+    assertTrue(scope.isPending());
+  }
+
+  /**
+   * The same stylesheet is injected once into each container, in order.
+   */
+  public void testInjectPerContainer() {
+    String css = "#styleScopeTestShared { left: 10px; }";
+    String start = "#styleScopeTestStart { left: 10px; }";
+    Element first = createContainer();
+    Element second = createContainer();
+    StyleScope firstScope = new StyleScope(first);
+    StyleScope secondScope = new StyleScope(second);
+    firstScope.setDedupe(true);
+    secondScope.setDedupe(true);
+
+    HTMLStyleElement style = firstScope.injectStylesheet(css);
+    assertSame(first, style.parentNode);
+    assertSame(style, firstScope.injectStylesheet(css));
+    assertSame(second, secondScope.injectStylesheet(css).parentNode);
+
+    firstScope.injectAtStart(start, true);
+    assertEquals(2, countStyles(first));
+    assertEquals(start, first.firstElementChild.textContent);
+  }
+
+  /**
+   * The promise of a scope resolves with its own flush.
+   */
+  public void testWhenInjected() {
+    if (!nativePromiseSupported()) {
+      return;
+    }
+    Element container = createContainer();
+    StyleScope scope = new StyleScope(container);
+    scope.inject("#styleScopeTestPromise { left: 10px; }");
+    delayTestFinish(TEST_DELAY);
+    scope.whenInjected().then(ignored -> {
+      assertEquals(1, countStyles(container));
+      finishTest();
+      return null;
+    });
+  }
+
+  private Element createContainer() {
+    Element container = DomGlobal.document.createElement("div");
+    DomGlobal.document.body.appendChild(container);
+    return container;
+  }
+
+  private int countStyles(Element container) {
+    return container.querySelectorAll("style").length;
+  }
+
+  private native boolean nativePromiseSupported() /*-{
+    return typeof Promise === "function" && typeof Promise.all === "function";
+  }-*/;
+}
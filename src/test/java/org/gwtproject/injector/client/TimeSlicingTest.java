@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import com.google.gwt.dom.client.DivElement;
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.junit.client.GWTTestCase;
+
+/**
+ * Tests for {@link TimeSlicing}.
+ */
+public class TimeSlicingTest extends GWTTestCase {
+  private static final int TEST_DELAY = 10000;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.injector.InjectorTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    TimeSlicing.setBudget(1);
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    TimeSlicing.setBudget(0);
+  }
+
+  /**
+   * Deferred scripts are evaluated later, in order.
+   */
+  public void testScriptsInOrder() {
+    delayTestFinish(TEST_DELAY);
+    assertNull(ScriptInjector.fromString("window.__ti_sliced_var__ = 'a';").setDeferred(true)
+        .inject());
+    ScriptInjector.fromString("window.__ti_sliced_var__ += 'b';").setDeferred(true).inject();
+    ScriptInjector.fromString("window.__ti_sliced_var__ += 'c';").setDeferred(true)
+        .setCallback(new Callback<Void, Exception>() {
+          @Override
+          public void onFailure(Exception reason) {
+            fail("Injection failed: " + reason.toString());
+          }
+
+          @Override
+          public void onSuccess(Void result) {
+            assertEquals("abc", nativeGetVar());
+            nativeCleanup();
+            finishTest();
+          }
+        }).inject();
+    assertNull(nativeGetVar());
+  }
+
+  /**
+   * Scripts which are not deferred are evaluated right away despite the
+   * budget.
+   */
+  public void testNotDeferred() {
+    assertNotNull(ScriptInjector.fromString("window.__ti_sliced_var__ = 'now';").inject());
+    assertEquals("now", nativeGetVar());
+    nativeCleanup();
+  }
+
+  /**
+   * A synchronous injection is evaluated right away nevertheless.
+   */
+  public void testSynchronous() {
+    assertNotNull(ScriptInjector.fromString("window.__ti_sliced_var__ = 'sync';")
+        .setDeferred(true).setSynchronous(true).inject());
+    assertEquals("sync", nativeGetVar());
+    nativeCleanup();
+  }
+
+  /**
+   * Large batches are split into several elements with the same cascade
+   * order as a single flush.
+   */
+  public void testStylesInOrder() {
+    if (!nativePromiseSupported()) {
+      return;
+    }
+    final DivElement elt = Document.get().createDivElement();
+    elt.setId("testSlicedStyles");
+    Document.get().getBody().appendChild(elt);
+
+    StringBuilder padding = new StringBuilder("/*");
+    for (int i = 0; i < 40 * 1024; i++) {
+      padding.append(' ');
+    }
+    padding.append("*/");
+
+    StyleInjector.injectAtStart(padding + "#testSlicedStyles {width: 30px;}");
+    StyleInjector.injectAtStart(padding + "#testSlicedStyles {width: 20px; height: 20px;}");
+    StyleInjector.injectAtEnd(padding + "#testSlicedStyles {position: absolute; left: 100px;}");
+    StyleInjector.inject(padding + "#testSlicedStyles {position: absolute; left: 50px;}");
+    StyleInjector.inject(padding + "#testSlicedStyles {height: 40px;}");
+
+    delayTestFinish(TEST_DELAY);
+    StyleInjector.whenInjected().then(result -> {
+      assertEquals(100, elt.getOffsetLeft());
+      assertEquals(30, elt.getClientWidth());
+      assertEquals(40, elt.getClientHeight());
+      finishTest();
+      return null;
+    });
+  }
+
+  private native String nativeGetVar() /*-{
+    return window.__ti_sliced_var__ || null;
+  }-*/;
+
+  private native void nativeCleanup() /*-{
+    delete window.__ti_sliced_var__;
+  }-*/;
+
+  private native boolean nativePromiseSupported() /*-{
+    return typeof Promise === "function";
+  }-*/;
+}
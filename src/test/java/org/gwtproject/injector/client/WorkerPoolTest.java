@@ -0,0 +1,342 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.client;
+
+import org.gwtproject.callback.shared.Callback;
+
+import com.google.gwt.junit.client.GWTTestCase;
+
+import elemental2.core.JsArray;
+import elemental2.dom.Worker;
+
+/**
+ * Tests for {@link WorkerPool} and worker injection in {@link ScriptInjector}.
+ */
+public class WorkerPoolTest extends GWTTestCase {
+  private static final int TEST_DELAY = 10000;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.injector.InjectorTest";
+  }
+
+  /**
+   * Load a script by URL into a worker.
+   */
+  public void testInjectUrlWorker() {
+    if (!WorkerPool.isSupported()) {
+      return;
+    }
+    delayTestFinish(TEST_DELAY);
+    ScriptInjector.fromUrl("script_injector_test4.js").setWorker(new WorkerPool(1))
+        .setCallback(new Callback<Void, Exception>() {
+          @Override
+          public void onFailure(Exception reason) {
+            fail("Injection failed: " + reason.toString());
+          }
+
+          @Override
+          public void onSuccess(Void result) {
+            assertFalse("script leaked into this window", nativeTest4Worked());
+            finishTest();
+          }
+        }).inject();
+  }
+
+  /**
+   * Loading a missing script into a worker should fire the onFailure callback.
+   */
+  public void testInjectUrlWorkerFail() {
+    if (!WorkerPool.isSupported()) {
+      return;
+    }
+    delayTestFinish(TEST_DELAY);
+    ScriptInjector.fromUrl("uNkNoWn_sCrIpT_404.js").setWorker(new WorkerPool(1))
+        .setCallback(new Callback<Void, Exception>() {
+          @Override
+          public void onFailure(Exception reason) {
+            assertTrue(reason instanceof CodeDownloadException);
+            finishTest();
+          }
+
+          @Override
+          public void onSuccess(Void result) {
+            fail("Injection unexpectedly succeeded.");
+          }
+        }).inject();
+  }
+
+  /**
+   * Evaluate script bodies in a worker, the second one depends on the first.
+   */
+  public void testInjectDirectWorker() {
+    if (!WorkerPool.isSupported()) {
+      return;
+    }
+    delayTestFinish(TEST_DELAY);
+    WorkerPool pool = new WorkerPool(1);
+    ScriptInjector.fromString("self.__tw1_var__ = 1;").setWorker(pool).inject();
+    ScriptInjector.fromString("if (self.__tw1_var__ != 1) throw 'not shared';")
+        .setWorker(pool).setCallback(new Callback<Void, Exception>() {
+          @Override
+          public void onFailure(Exception reason) {
+            fail("Evaluation failed: " + reason.toString());
+          }
+
+          @Override
+          public void onSuccess(Void result) {
+            finishTest();
+          }
+        }).inject();
+  }
+
+  /**
+   * A throwing script body should fire the onFailure callback.
+   */
+  public void testInjectDirectWorkerFail() {
+    if (!WorkerPool.isSupported()) {
+      return;
+    }
+    delayTestFinish(TEST_DELAY);
+    ScriptInjector.fromString("throw 'expected';").setWorker(new WorkerPool(1))
+        .setCallback(new Callback<Void, Exception>() {
+          @Override
+          public void onFailure(Exception reason) {
+            assertEquals("expected", reason.getMessage());
+            finishTest();
+          }
+
+          @Override
+          public void onSuccess(Void result) {
+            fail("Evaluation unexpectedly succeeded.");
+          }
+        }).inject();
+  }
+
+  /**
+   * Terminating the pool fails pending injections.
+   */
+  public void testTerminate() {
+    if (!WorkerPool.isSupported()) {
+      return;
+    }
+    delayTestFinish(TEST_DELAY);
+    WorkerPool pool = new WorkerPool(2);
+    pool.evaluate("for (;;) {}", new Callback<Void, Exception>() {
+      @Override
+      public void onFailure(Exception reason) {
+        assertEquals(CodeDownloadException.Reason.TERMINATED,
+            ((CodeDownloadException) reason).getReason());
+        finishTest();
+      }
+
+      @Override
+      public void onSuccess(Void result) {
+        fail("Evaluation unexpectedly succeeded.");
+      }
+    });
+    pool.terminate();
+  }
+
+  /**
+   * Terminating the pool skips injections without callback, fails the others
+   * and leaves the pool usable.
+   */
+  public void testTerminateWithoutCallback() {
+    JsArray<Object> workers = new JsArray<>();
+    WorkerPool pool = new WorkerPool(1, () -> fakeWorker(workers));
+    Exception[] failure = new Exception[1];
+    pool.evaluate("for (;;) {}", null);
+    pool.evaluate("for (;;) {}", new Callback<Void, Exception>() {
+      @Override
+      public void onFailure(Exception reason) {
+        failure[0] = reason;
+      }
+
+      @Override
+      public void onSuccess(Void result) {
+        fail("Evaluation unexpectedly succeeded.");
+      }
+    });
+    pool.terminate();
+
+    assertEquals(1, workers.length);
+    assertTrue(isTerminated(workers.getAt(0)));
+    assertEquals(CodeDownloadException.Reason.TERMINATED,
+        ((CodeDownloadException) failure[0]).getReason());
+
+    pool.evaluate("1;", null);
+    assertEquals(2, workers.length);
+    assertEquals(1, countPosted(workers.getAt(1)));
+  }
+
+  /**
+   * Injections go to the least busy worker, creating workers up to the size
+   * of the pool.
+   */
+  public void testLeastBusy() {
+    JsArray<Object> workers = new JsArray<>();
+    WorkerPool pool = new WorkerPool(2, () -> fakeWorker(workers));
+    pool.evaluate("1;", null);
+    pool.evaluate("2;", null);
+    pool.evaluate("3;", null);
+    assertEquals(2, workers.length);
+    assertEquals(2, countPosted(workers.getAt(0)));
+    assertEquals(1, countPosted(workers.getAt(1)));
+
+    reply(workers.getAt(0), 0, null);
+    reply(workers.getAt(0), 1, null);
+    pool.evaluate("4;", null);
+    assertEquals(3, countPosted(workers.getAt(0)));
+  }
+
+  /**
+   * Injections with the same affinity key go to the same worker, however
+   * busy it is, until it is terminated.
+   */
+  public void testAffinity() {
+    JsArray<Object> workers = new JsArray<>();
+    WorkerPool pool = new WorkerPool(2, () -> fakeWorker(workers));
+    pool.evaluate("var lib = 1;", "lib", null);
+    pool.evaluate("other();", null);
+    pool.evaluate("lib;", "lib", null);
+    assertEquals(2, workers.length);
+    assertEquals(2, countPosted(workers.getAt(0)));
+    assertEquals(1, countPosted(workers.getAt(1)));
+
+    ScriptInjector.fromString("lib.use();").setWorker(pool).setWorkerAffinity("lib").inject();
+    assertEquals(3, countPosted(workers.getAt(0)));
+
+    pool.setSize(1);
+    pool.terminate();
+    pool.evaluate("var lib = 2;", "lib", null);
+    assertEquals(3, workers.length);
+    assertEquals(1, countPosted(workers.getAt(2)));
+  }
+
+  /**
+   * Responses of the worker complete the callbacks of their injection.
+   */
+  public void testResponses() {
+    JsArray<Object> workers = new JsArray<>();
+    WorkerPool pool = new WorkerPool(1, () -> fakeWorker(workers));
+    String[] results = new String[2];
+    pool.evaluate("1;", new Callback<Void, Exception>() {
+      @Override
+      public void onFailure(Exception reason) {
+        fail("Evaluation failed: " + reason);
+      }
+
+      @Override
+      public void onSuccess(Void result) {
+        results[0] = "ok";
+      }
+    });
+    pool.evaluate("throw 'expected';", new Callback<Void, Exception>() {
+      @Override
+      public void onFailure(Exception reason) {
+        results[1] = reason.getMessage();
+      }
+
+      @Override
+      public void onSuccess(Void result) {
+        fail("Evaluation unexpectedly succeeded.");
+      }
+    });
+
+    reply(workers.getAt(0), 1, "expected");
+    reply(workers.getAt(0), 0, null);
+    assertEquals("ok", results[0]);
+    assertEquals("expected", results[1]);
+  }
+
+  /**
+   * An error thrown later by an injected script leaves the worker and other
+   * injections alone.
+   */
+  public void testAsyncErrorKeepsWorker() {
+    if (!WorkerPool.isSupported()) {
+      return;
+    }
+    delayTestFinish(TEST_DELAY);
+    WorkerPool pool = new WorkerPool(1);
+    pool.evaluate("setTimeout(function() { throw new Error('async'); }, 0);",
+        new Callback<Void, Exception>() {
+          @Override
+          public void onFailure(Exception reason) {
+            fail("Evaluation failed: " + reason);
+          }
+
+          @Override
+          public void onSuccess(Void result) {
+            pool.evaluate("var start = Date.now(); while (Date.now() - start < 200) {}",
+                new Callback<Void, Exception>() {
+                  @Override
+                  public void onFailure(Exception reason) {
+                    fail("Unrelated evaluation failed: " + reason);
+                  }
+
+                  @Override
+                  public void onSuccess(Void result) {
+                    pool.terminate();
+                    finishTest();
+                  }
+                });
+          }
+        });
+  }
+
+  /**
+   * Creates a stand-in for a worker, which records the messages posted to it.
+   */
+  private static native Worker fakeWorker(JsArray<Object> workers) /*-{
+    var worker = {
+      posted: [],
+      terminated: false,
+      postMessage: function(message) {
+        this.posted.push(message);
+      },
+      terminate: function() {
+        this.terminated = true;
+      }
+    };
+    workers.push(worker);
+    return worker;
+  }-*/;
+
+  private static native int countPosted(Object worker) /*-{
+    return worker.posted.length;
+  }-*/;
+
+  private static native boolean isTerminated(Object worker) /*-{
+    return worker.terminated;
+  }-*/;
+
+  /**
+   * Responds to a posted message like the bootstrap script of a worker.
+   */
+  private static native void reply(Object worker, int index, String error) /*-{
+    var data = {id: worker.posted[index].id};
+    if (error != null) {
+      data.error = error;
+    }
+    worker.onmessage({data: data});
+  }-*/;
+
+  private native boolean nativeTest4Worked() /*-{
+    return !!window["__ti4_var__"];
+  }-*/;
+}
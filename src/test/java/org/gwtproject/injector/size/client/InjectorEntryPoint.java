@@ -0,0 +1,37 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.size.client;
+
+import org.gwtproject.injector.client.ScriptInjector;
+import org.gwtproject.injector.client.StyleInjector;
+
+import com.google.gwt.core.client.EntryPoint;
+
+import elemental2.dom.DomGlobal;
+
+/**
+ * Minimal entry point injecting a stylesheet and a script, measured by
+ * {@link org.gwtproject.injector.InjectorSizeTest}.
+ */
+public class InjectorEntryPoint implements EntryPoint {
+
+  @Override
+  public void onModuleLoad() {
+    DomGlobal.document.title = "injector";
+    StyleInjector.inject(".size { color: red; }");
+    ScriptInjector.fromUrl("size.js").setRemoveTag(true).inject();
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link AssetManifestGenerator}.
+ */
+public class AssetManifestGeneratorTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testHashedPath() {
+    assertEquals("js/widget.0123.js", AssetManifestGenerator.hashedPath("js/widget.js", "0123"));
+    assertEquals("a.b/LICENSE.0123", AssetManifestGenerator.hashedPath("a.b/LICENSE", "0123"));
+    assertEquals(".htaccess.0123", AssetManifestGenerator.hashedPath(".htaccess", "0123"));
+  }
+
+  @Test
+  public void testToJson() {
+    Map<String, String> manifest = new LinkedHashMap<>();
+    manifest.put("a.js", "x/a.1.js");
+    manifest.put("q\"\\.js", "x/q.2.js");
+    assertEquals("{\n  \"a.js\": \"x/a.1.js\",\n  \"q\\\"\\\\.js\": \"x/q.2.js\"\n}\n",
+        AssetManifestGenerator.toJson(manifest));
+    assertEquals("{\n}\n", AssetManifestGenerator.toJson(new LinkedHashMap<>()));
+  }
+
+  @Test
+  public void testGenerate() throws IOException {
+    Path assets = folder.newFolder("assets").toPath();
+    Path out = folder.getRoot().toPath().resolve("out");
+    byte[] widget = "widget();".getBytes(StandardCharsets.UTF_8);
+    Files.createDirectories(assets.resolve("js"));
+    Files.write(assets.resolve("js/widget.js"), widget);
+    Files.write(assets.resolve("app.js"), "app();".getBytes(StandardCharsets.UTF_8));
+
+    Map<String, String> manifest = new AssetManifestGenerator(out, "assets/").generate(assets);
+
+    String hashed = "js/widget." + AssetManifestGenerator.hash(widget) + ".js";
+    assertEquals(2, manifest.size());
+    assertEquals("assets/" + hashed, manifest.get("js/widget.js"));
+    assertArrayEquals(widget, Files.readAllBytes(out.resolve(hashed)));
+    assertEquals(AssetManifestGenerator.toJson(manifest), new String(
+        Files.readAllBytes(out.resolve(AssetManifestGenerator.MANIFEST)), StandardCharsets.UTF_8));
+
+    // only the changed asset gets a new URL
+    Files.write(assets.resolve("js/widget.js"), "widget(2);".getBytes(StandardCharsets.UTF_8));
+    Map<String, String> updated = new AssetManifestGenerator(out, "assets/").generate(assets);
+    assertNotEquals(manifest.get("js/widget.js"), updated.get("js/widget.js"));
+    assertEquals(manifest.get("app.js"), updated.get("app.js"));
+  }
+}
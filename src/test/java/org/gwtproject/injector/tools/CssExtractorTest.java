@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link CssExtractor}.
+ */
+public class CssExtractorTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testMinify() {
+    assertEquals(".a>.b,.c{color:red;margin:0 auto}",
+        CssExtractor.minify("/* header */\n.a > .b, .c {\n  color: red;\n  margin: 0  auto;\n}\n"));
+    assertEquals("a :hover{content:\"  x  \"}",
+        CssExtractor.minify("a :hover { content: \"  x  \"; }"));
+  }
+
+  @Test
+  public void testProcess() throws IOException {
+    Path cssDir = folder.getRoot().toPath().resolve("css");
+    CssExtractor extractor = new CssExtractor(cssDir, "css/");
+    String source = "class A {\n"
+        + "  void f(String dynamic) {\n"
+        + "    /* @ExtractCss */ StyleInjector.inject(\".a { color: red; }\\n\"\n"
+        + "        + \".b { color: blue; }\");\n"
+        + "    /*@ExtractCss*/\n"
+        + "    StyleInjector.inject(\".a {color:red}.b {color:blue}\", false);\n"
+        + "    StyleInjector.inject(\".f { color: red; }\");\n"
+        + "    /* @ExtractCss */ StyleInjector.inject(dynamic);\n"
+        + "    StyleInjector.injectAtStart(\".c { color: red; }\");\n"
+        + "    StyleInjector.injectAtEnd(\".d { color: red; }\");\n"
+        + "    StyleInjector.inject(\".e { color: red; }\", true);\n"
+        + "  }\n"
+        + "}\n";
+
+    String css = ".a{color:red}.b{color:blue}";
+    String link = "StyleInjector.injectLink(\"css/" + CssExtractor.hash(css) + ".css\")";
+    String expected = "class A {\n"
+        + "  void f(String dynamic) {\n"
+        + "    " + link + ";\n"
+        + "    " + link + ";\n"
+        + "    StyleInjector.inject(\".f { color: red; }\");\n"
+        + "    /* @ExtractCss */ StyleInjector.inject(dynamic);\n"
+        + "    StyleInjector.injectAtStart(\".c { color: red; }\");\n"
+        + "    StyleInjector.injectAtEnd(\".d { color: red; }\");\n"
+        + "    StyleInjector.inject(\".e { color: red; }\", true);\n"
+        + "  }\n"
+        + "}\n";
+    assertEquals(expected, extractor.process(source));
+
+    assertEquals(1, extractor.getStylesheets().size());
+    Path file = cssDir.resolve(CssExtractor.hash(css) + ".css");
+    assertTrue(Files.exists(file));
+    assertEquals(css, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testProcessSkipsCommentsAndStrings() throws IOException {
+    CssExtractor extractor = new CssExtractor(folder.getRoot().toPath(), "");
+    String source = "// /* @ExtractCss */ StyleInjector.inject(\".a {}\");\n"
+        + "/* StyleInjector.inject(\".b {}\"); */\n"
+        + "String s = \"StyleInjector.inject(\\\".c {}\\\")\";\n"
+        + "char q = '\"'; String t = \"StyleInjector.inject(\";\n";
+    assertEquals(source, extractor.process(source));
+    assertTrue(extractor.getStylesheets().isEmpty());
+  }
+
+  @Test
+  public void testProcessUnescapes() throws IOException {
+    CssExtractor extractor = new CssExtractor(folder.getRoot().toPath(), "");
+    extractor.process(CssExtractor.MARKER + " StyleInjector.inject(\".a:after { content: \\\"\\\\2014\\\"; }\");");
+    assertEquals(".a:after{content:\"\\2014\"}",
+        extractor.getStylesheets().values().iterator().next());
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gwtproject.injector.tools;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.gwtproject.injector.client.CompressedPayload;
+import org.junit.Test;
+
+/**
+ * Tests {@link PayloadCompressor} against the decoder used by the injectors.
+ */
+public class PayloadCompressorTest {
+
+  private static final String[] FORMATS = {
+      CompressedPayload.GZIP, CompressedPayload.DEFLATE, CompressedPayload.DEFLATE_RAW};
+
+  @Test
+  public void testRoundTrip() {
+    StringBuilder css = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      css.append(".rule").append(i).append(" { color: #").append(Integer.toHexString(i * 7919))
+          .append("; content: \"—é\"; }\n");
+    }
+    StringBuilder noise = new StringBuilder();
+    Random random = new Random(42);
+    for (int i = 0; i < 5000; i++) {
+      noise.append((char) (' ' + random.nextInt(95)));
+    }
+
+    for (String format : FORMATS) {
+      for (String text : new String[] {"", "a", css.toString(), noise.toString()}) {
+        assertEquals(format, text,
+            CompressedPayload.decodeSync(PayloadCompressor.compress(text, format), format));
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrongFormat() {
+    CompressedPayload.decodeSync(PayloadCompressor.compress("a { }", "deflate"), "gzip");
+  }
+
+  @Test
+  public void testToConstant() {
+    assertEquals("public static final String CSS =\n    \"abc\";",
+        PayloadCompressor.toConstant("CSS", "abc"));
+  }
+}
@@ -0,0 +1 @@
+window.__ti_asset_manifest_var__ = (window.__ti_asset_manifest_var__ || 0) + 1;
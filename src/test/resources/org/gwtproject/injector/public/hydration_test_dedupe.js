@@ -0,0 +1 @@
+window.__hydration_test_dedupe__ = (window.__hydration_test_dedupe__ || 0) + 1;
@@ -0,0 +1 @@
+window.__ti_soak_var__ = (window.__ti_soak_var__ || 0) + 1;
@@ -0,0 +1 @@
+window.__ti_transaction_var__ = (window.__ti_transaction_var__ || 0) + 1;
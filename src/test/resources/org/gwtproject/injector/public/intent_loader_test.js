@@ -0,0 +1 @@
+window.__intent_loader_count__ = (window.__intent_loader_count__ || 0) + 1;
@@ -0,0 +1,12 @@
+(function() {
+  window.__jsonp_test_count__ = (window.__jsonp_test_count__ || 0) + 1;
+  var scripts = document.getElementsByTagName("script");
+  for (var i = scripts.length - 1; i >= 0; i--) {
+    var match = /[?&]callback=([^&]*)/.exec(scripts[i].src);
+    if (match && scripts[i].src.indexOf("jsonp_test.js") >= 0) {
+      var path = match[1].split(".");
+      window[path[0]][path[1]]({"value": 42});
+      return;
+    }
+  }
+})();
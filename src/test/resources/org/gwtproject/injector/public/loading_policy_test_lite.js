@@ -0,0 +1 @@
+window.__loading_policy_lite__ = 1;
@@ -0,0 +1,7 @@
+// Bundle used by ScriptBundleTest
+//# module base
+window.__tb_base__ = (window.__tb_base__ || 0) + 1;
+//# module derived base
+window.__tb_derived__ = window.__tb_base__ * 10;
+//# module unused
+window.__tb_unused__ = true;
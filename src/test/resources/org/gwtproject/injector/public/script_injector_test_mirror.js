@@ -0,0 +1 @@
+window.__ti_mirror_var__ = (window.__ti_mirror_var__ || 0) + 1;